@@ -0,0 +1,87 @@
+package agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * AbortSignal.java
+ * Ends the model requests of a call which nobody waits for any more. The requests started
+ * within withSignal, on the calling thread or from the callbacks of its streams, register
+ * how to abort them; abort then runs those actions at once, so a stream that stopped
+ * sending tokens gives its model slot back without waiting for the HTTP timeout.
+ */
+public final class AbortSignal {
+
+    private static final ThreadLocal<AbortSignal> CURRENT = new ThreadLocal<>();
+
+    private final List<Runnable> actions = new ArrayList<>();
+    private boolean aborted;
+
+    /**
+     * Runs a call with its model requests bound to a signal.
+     *
+     * @param signal The signal aborting the requests, or null for none.
+     * @param call The call making the requests, on the calling thread.
+     * @param <T> The type of the result.
+     * @return The result of the call.
+     */
+    public static <T> T withSignal(AbortSignal signal, Supplier<T> call) {
+        AbortSignal previous = CURRENT.get();
+        CURRENT.set(signal);
+        try {
+            return call.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Returns the signal bound to the calling thread.
+     *
+     * @return The signal, or null if the requests of this thread cannot be aborted.
+     */
+    static AbortSignal current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Registers the abort of a request, run at once if the signal was already given.
+     *
+     * @param action Aborts the request; it must tolerate a request already over.
+     */
+    void onAbort(Runnable action) {
+        synchronized (this) {
+            if (!aborted) {
+                actions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Aborts the requests registered so far, and those registered later.
+     */
+    public void abort() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (aborted) {
+                return;
+            }
+            aborted = true;
+            pending = List.copyOf(actions);
+            actions.clear();
+        }
+        pending.forEach(Runnable::run);
+    }
+
+    /**
+     * Tells whether the signal was given.
+     *
+     * @return True once abort was called.
+     */
+    public synchronized boolean aborted() {
+        return aborted;
+    }
+}
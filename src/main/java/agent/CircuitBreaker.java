@@ -0,0 +1,107 @@
+package agent;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * CircuitBreaker.java
+ * Stops calling the lore backend while it is unhealthy.
+ * After a number of consecutive failures the circuit opens: requests are refused at once,
+ * so the narrator gets its fallback message immediately instead of waiting for timeouts.
+ * Once the open period has elapsed, a single trial request is let through ("half-open");
+ * its success closes the circuit again, its failure reopens it.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of the circuit.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * Creates a circuit breaker using the system monotonic clock.
+     *
+     * @param failureThreshold Number of consecutive failures opening the circuit.
+     * @param openDuration Time the circuit stays open before a trial request.
+     */
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    /**
+     * Creates a circuit breaker with a custom clock (used by tests).
+     *
+     * @param failureThreshold Number of consecutive failures opening the circuit.
+     * @param openDuration Time the circuit stays open before a trial request.
+     * @param clock Source of nanosecond timestamps.
+     */
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Tells whether a request may be sent now. In the half-open state, only the first
+     * caller is allowed, as the trial request.
+     *
+     * @return True if the request may be sent, false if it must fail fast.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                boolean allowed = !trialInFlight;
+                trialInFlight = true;
+                yield allowed;
+            }
+        };
+    }
+
+    /**
+     * Records a request answered by the backend, closing the circuit.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed request (network error, timeout or server error).
+     */
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * Returns the current state, without moving an open circuit to half-open.
+     *
+     * @return The state of the circuit.
+     */
+    public synchronized State state() {
+        return state;
+    }
+}
@@ -0,0 +1,66 @@
+package agent;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import java.util.List;
+
+/**
+ * ConversationSummarizer.java
+ * Folds old turns of the adventure into a short rolling summary, so the narrator keeps
+ * track of what happened without the whole conversation being sent with every prompt.
+ * Only the player inputs and the narrations are summarized: lore tool results can be
+ * looked up again and would only crowd the summary.
+ */
+public class ConversationSummarizer {
+
+    private static final String INSTRUCTIONS = """
+            You keep the memory of a Dungeons & Dragons adventure for its narrator.
+            Merge the previous summary and the new events into ONE updated summary.
+            Keep the names of characters, places, monsters and items, the player's
+            decisions, the wounds and rewards, and the open quests. Drop the descriptions.
+            Write at most %d words of plain prose. Answer with the summary only.
+            """;
+
+    private final ChatLanguageModel model;
+    private final int maxWords;
+
+    /**
+     * Creates a summarizer.
+     *
+     * @param model The model writing the summaries.
+     * @param maxWords The length asked for the summary, in words.
+     */
+    public ConversationSummarizer(ChatLanguageModel model, int maxWords) {
+        this.model = model;
+        this.maxWords = maxWords;
+    }
+
+    /**
+     * Returns the summary updated with the given turns. This calls the model, so it
+     * should not be done on the narration path.
+     *
+     * @param previousSummary The current summary, or null if there is none yet.
+     * @param turns The messages to fold into it, oldest first.
+     * @return The new summary.
+     */
+    public String summarize(String previousSummary, List<ChatMessage> turns) {
+        StringBuilder prompt = new StringBuilder("Previous summary:\n")
+                .append(previousSummary == null ? "(none)" : previousSummary)
+                .append("\n\nNew events:\n");
+        for (ChatMessage message : turns) {
+            if (message instanceof UserMessage user && user.hasSingleText()) {
+                prompt.append("Player: ").append(user.singleText()).append('\n');
+            } else if (message instanceof AiMessage ai && ai.text() != null
+                    && !ai.text().isBlank()) {
+                prompt.append("Narrator: ").append(ai.text()).append('\n');
+            }
+        }
+        AiMessage summary = model.generate(List.of(
+                SystemMessage.from(INSTRUCTIONS.formatted(maxWords)),
+                UserMessage.from(prompt.toString()))).content();
+        return summary.text().strip();
+    }
+}
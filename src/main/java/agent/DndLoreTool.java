@@ -2,11 +2,32 @@ package agent;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -14,8 +35,12 @@ import org.jetbrains.annotations.NotNull;
  * DndLoreTool.java
  * Tool for retrieving lore information from the D&D 5E API.
  * Provides methods to search for monsters, spells, and magic items.
- * Uses Java HttpClient for API requests and Jackson for JSON parsing.
+ * Uses Java HttpClient for API requests and Jackson for JSON parsing
+ * (streamed by LoreJsonExtractor, which keeps only the displayed fields).
  * Handles errors gracefully and returns formatted strings.
+ * Results are kept in a LoreCache so repeated lookups skip the network,
+ * and optionally in a LoreStore so they survive restarts.
+ * Lookups run asynchronously; the tools block on top of that path.
  * author: Meryem Mellagui & Florian Mordohai with LLM assistance
  */
 public class DndLoreTool {
@@ -25,17 +50,134 @@ public class DndLoreTool {
      * This is the root URL for all API requests.
      */
     private static final String API_BASE = "https://www.dnd5eapi.co/api/2014"; 
+
+    /**
+     * Cache sizing: lore documents are small and a session only meets a few hundred names.
+     * Unknown names are kept for a shorter time, in case the API gains them.
+     */
+    private static final int CACHE_MAX_ENTRIES = 512;
+    private static final Duration CACHE_TTL = Duration.ofHours(6);
+    private static final Duration CACHE_NOT_FOUND_TTL = Duration.ofMinutes(10);
+
+    /**
+     * The SRD data behind the API rarely changes: stored documents are kept for a month.
+     */
+    private static final Duration STORE_TTL = Duration.ofDays(30);
+
+    /**
+     * Store key prefix of the API lists used to build the name index.
+     */
+    private static final String NAME_INDEX_PREFIX = "index/";
+
+    /**
+     * Runs of whitespace in a requested name, replaced by dashes to build the slug.
+     */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Maximum number of names resolved by one batch search.
+     */
+    private static final int BATCH_MAX_NAMES = 12;
+
+    /**
+     * Default timeouts of the API, overridden by APP_LORE_CONNECT_TIMEOUT_MS and
+     * APP_LORE_REQUEST_TIMEOUT_MS. Past them the narrator gets the "unavailable" message.
+     */
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(3);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(8);
+
+    /**
+     * Hedged requests: once enough latencies are known, a request still unanswered after
+     * the observed p95 (but never before HEDGE_MIN_DELAY) is sent a second time.
+     */
+    private static final int LATENCY_WINDOW = 128;
+    private static final int LATENCY_MIN_SAMPLES = 20;
+    private static final Duration HEDGE_MIN_DELAY = Duration.ofMillis(50);
+
+    /**
+     * Circuit breaker: after this many failed requests in a row, the API is left alone
+     * for a while and lookups fail fast.
+     */
+    private static final int BREAKER_FAILURES = 5;
+    private static final Duration BREAKER_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final String apiBase;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final LoreJsonExtractor extractor;
+    private final LoreCache cache;
+    private final LoreStore store;
+    private final boolean offline;
+    private final Duration requestTimeout;
+    private final LatencyTracker latency =
+            new LatencyTracker(LATENCY_WINDOW, LATENCY_MIN_SAMPLES, HEDGE_MIN_DELAY);
+    private final CircuitBreaker breaker =
+            new CircuitBreaker(BREAKER_FAILURES, BREAKER_OPEN_DURATION);
+    private final LoreNameResolver resolver = new LoreNameResolver();
+    private final Map<LoreCategoryEnum, CompletableFuture<Void>> nameIndexes =
+            new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor initializes HttpClient, ObjectMapper and the lore cache.
+     * When the APP_LORE_STORE environment variable names a file, fetched documents
+     * are also kept there so they survive restarts. When APP_LORE_OFFLINE is "true",
+     * lookups are served from that store only (see LoreSnapshotImporter).
+     */
+    public DndLoreTool() {
+        this(API_BASE, openStore(EnvVarUtils.getEnvVar("APP_LORE_STORE")),
+                Boolean.parseBoolean(EnvVarUtils.getEnvVar("APP_LORE_OFFLINE")),
+                EnvVarUtils.getEnvDuration("APP_LORE_CONNECT_TIMEOUT_MS", CONNECT_TIMEOUT),
+                EnvVarUtils.getEnvDuration("APP_LORE_REQUEST_TIMEOUT_MS", REQUEST_TIMEOUT));
+    }
 
     /**
-     * Constructor initializes HttpClient and ObjectMapper.
+     * Constructor with an explicit persistent store.
+     *
+     * @param store The persistent lore store, or null to run without one.
+     * @param offline True to serve lookups from the store only, never from the API.
      */
-    public DndLoreTool() { // Constructor initializes HttpClient and ObjectMapper
+    DndLoreTool(LoreStore store, boolean offline) {
+        this(API_BASE, store, offline);
+    }
+
+    /**
+     * Constructor with an explicit API base URL (used by tests against a local server).
+     *
+     * @param apiBase The root URL of the D&D 5E API.
+     * @param store The persistent lore store, or null to run without one.
+     * @param offline True to serve lookups from the store only, never from the API.
+     */
+    DndLoreTool(String apiBase, LoreStore store, boolean offline) {
+        this(apiBase, store, offline, CONNECT_TIMEOUT, REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Constructor with explicit timeouts (used by tests against a slow local server).
+     *
+     * @param apiBase The root URL of the D&D 5E API.
+     * @param store The persistent lore store, or null to run without one.
+     * @param offline True to serve lookups from the store only, never from the API.
+     * @param connectTimeout The longest time to open a connection to the API.
+     * @param requestTimeout The longest time to wait for the response of one request.
+     */
+    DndLoreTool(String apiBase, LoreStore store, boolean offline, Duration connectTimeout,
+                Duration requestTimeout) { // Initializes HttpClient
+        this.apiBase = apiBase;
         this.httpClient = HttpClient.newBuilder()
                 .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
                 .build();
+        this.requestTimeout = requestTimeout;
         this.objectMapper = new ObjectMapper();
+        this.extractor = new LoreJsonExtractor(objectMapper);
+        this.cache = new LoreCache(CACHE_MAX_ENTRIES, CACHE_TTL, CACHE_NOT_FOUND_TTL);
+        this.store = store;
+        this.offline = offline;
+        if (offline && store == null) {
+            System.err.println("[WARNING] Offline lore mode without APP_LORE_STORE: "
+                    + "every lookup will be unknown.");
+        }
     }
 
 
@@ -48,148 +190,678 @@ public class DndLoreTool {
      */
     @Tool("Search for information about a D&D monster by name (ex: goblin, dragon, beholder)")
     public String searchMonster(String monsterName) {
+        return lookup(LoreCategoryEnum.MONSTER, monsterName);
+    }
+
+    /**
+     * Search for a D&D spell by name.
+     *
+     * @param spellName The name of the spell to search for.
+     * @return A formatted string containing the spell's details, or an error message if not found.
+     */
+    @Tool("Search for a D&D spell by name (ex: fireball, magic-missile, cure-wounds)")
+    public String searchSpell(String spellName) {
+        return lookup(LoreCategoryEnum.SPELL, spellName);
+    }
+
+    /**
+     * Search for a D&D magic item by name.
+     *
+     * @param itemName The name of the magic item to search for.
+     * @return A formatted string containing the item's details, or an error message if not found.
+     */
+    @Tool("Search for a D&D magic item by name (ex: bag-of-holding, vorpal-sword)")
+    public String searchMagicItem(String itemName) {
+        return lookup(LoreCategoryEnum.MAGIC_ITEM, itemName);
+    }
+
+    /**
+     * Search several D&D monsters, spells and magic items in one call.
+     * All lookups run in parallel and the results come back as one block,
+     * which saves the model one round trip per name.
+     *
+     * @param monsters The names of the monsters to search for, or null.
+     * @param spells The names of the spells to search for, or null.
+     * @param magicItems The names of the magic items to search for, or null.
+     * @return The details of every entry, in the requested order.
+     */
+    @Tool("Search several D&D monsters, spells and magic items at once. Use it instead of "
+            + "several single searches when a scene involves more than one of them.")
+    public String searchLoreBatch(
+            @P(value = "Names of monsters (ex: goblin, beholder)", required = false)
+            List<String> monsters,
+            @P(value = "Names of spells (ex: fireball, cure wounds)", required = false)
+            List<String> spells,
+            @P(value = "Names of magic items (ex: bag of holding)", required = false)
+            List<String> magicItems) {
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        addLookups(lookups, LoreCategoryEnum.MONSTER, monsters);
+        addLookups(lookups, LoreCategoryEnum.SPELL, spells);
+        addLookups(lookups, LoreCategoryEnum.MAGIC_ITEM, magicItems);
+        if (lookups.isEmpty()) {
+            return "No names given: nothing to search.";
+        }
+
+        StringJoiner block = new StringJoiner("\n---\n");
+        for (CompletableFuture<String> lookup : lookups) {
+            block.add(join(lookup).strip());
+        }
+        return block.toString();
+    }
+
+    /**
+     * Starts the lookups of a list of names, skipping blanks and duplicates,
+     * up to BATCH_MAX_NAMES lookups in total.
+     */
+    private void addLookups(List<CompletableFuture<String>> lookups, LoreCategoryEnum category,
+                            List<String> names) {
+        if (names == null) {
+            return;
+        }
+        Set<String> seen = new HashSet<>();
+        for (String name : names) {
+            if (name == null || name.isBlank() || lookups.size() >= BATCH_MAX_NAMES
+                    || !seen.add(name.trim().toLowerCase())) {
+                continue;
+            }
+            lookups.add(lookupAsync(category, name));
+        }
+    }
+
+    /**
+     * Starts the lookups a lore tool call will make, without waiting for them.
+     * Once they complete, running the call itself only reads the cache, so several
+     * calls requested in one model response can be prefetched together and then
+     * executed one after another at cache speed, with the very same results.
+     *
+     * @param request A tool execution request made by the model.
+     * @return A future completed when the lookups are done; already completed for
+     *         calls to other tools or with unreadable arguments.
+     */
+    public CompletableFuture<Void> prefetch(ToolExecutionRequest request) {
+        JsonNode arguments;
         try {
-            String cleanName = monsterName.toLowerCase() // Normalize the monster name
-                    .trim()
-                    .replaceAll("\\s+", "-");
-            
-            String url = API_BASE + "/monsters/" + cleanName; // Construct the API URL
+            arguments = objectMapper.readTree(request.arguments());
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(null); // The call itself will report it
+        }
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        switch (request.name()) {
+            case "searchMonster" -> addLookups(lookups, LoreCategoryEnum.MONSTER,
+                    names(arguments, "monsterName", 0));
+            case "searchSpell" -> addLookups(lookups, LoreCategoryEnum.SPELL,
+                    names(arguments, "spellName", 0));
+            case "searchMagicItem" -> addLookups(lookups, LoreCategoryEnum.MAGIC_ITEM,
+                    names(arguments, "itemName", 0));
+            case "searchLoreBatch" -> {
+                addLookups(lookups, LoreCategoryEnum.MONSTER, names(arguments, "monsters", 0));
+                addLookups(lookups, LoreCategoryEnum.SPELL, names(arguments, "spells", 1));
+                addLookups(lookups, LoreCategoryEnum.MAGIC_ITEM,
+                        names(arguments, "magicItems", 2));
+            }
+            default -> {
+                // Not a lore tool: nothing to prefetch
+            }
+        }
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Reads the names passed as a tool argument, found by parameter name or, when the
+     * tools were compiled without parameter names, by position ("arg0", "arg1"...).
+     */
+    private static List<String> names(JsonNode arguments, String parameter, int position) {
+        JsonNode value = arguments.has(parameter) ? arguments.get(parameter)
+                : arguments.path("arg" + position);
+        List<String> names = new ArrayList<>();
+        if (value.isTextual()) {
+            names.add(value.asText());
+        } else if (value.isArray()) {
+            for (JsonNode name : value) {
+                names.add(name.isTextual() ? name.asText() : null);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Prepares the lookups of the first turn in the background: loads the name index of
+     * every category and opens the connection to the API, so the first tool call does
+     * not pay for the TLS handshake. Nothing is sent to the API when running offline.
+     *
+     * @return A future completed once the warm-up is over, whatever its outcome.
+     */
+    public CompletableFuture<Void> warmUp() {
+        List<CompletableFuture<?>> steps = new ArrayList<>();
+        for (LoreCategoryEnum category : LoreCategoryEnum.values()) {
+            steps.add(nameIndex(category));
+        }
+        if (!offline) {
             HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .header("Accept", "application/json")
-                    .GET()
+                    .uri(URI.create(apiBase))
+                    .timeout(requestTimeout)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
                     .build();
-            
-
-            /*
-             * Send the HTTP request and handle the response.
-             */
-            HttpResponse<String> response = httpClient.send(request, 
-                    HttpResponse.BodyHandlers.ofString());
-
-            /*
-             * Error handling
-             */
-            if (response.statusCode() != 200) {
-                return "Monster '" + monsterName + "' not found in D&D bestiary.";
-            }
-            
-            JsonNode monster = objectMapper.readTree(response.body());
-            
-            if (!monster.has("name")) {
-                return "Monster '" + monsterName + "' not found.";
+            // A failure shows up on the first lookup, through the circuit breaker
+            steps.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, error) -> null));
+        }
+        return CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Returns the statistics of the lore cache.
+     *
+     * @return A snapshot of the cache counters.
+     */
+    public LoreCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Looks up a lore entry without blocking the caller.
+     * Names the API does not know are resolved to the closest known slug, so
+     * "red dragon" answers with "adult-red-dragon" at once instead of costing the model
+     * another tool call. While the name index of the category loads, the name is first
+     * fetched as typed, and only a miss waits for the index. Concurrent lookups of the
+     * same entry share one request.
+     *
+     * @param category The lore category to search in.
+     * @param name The name requested by the narrator.
+     * @return A future of the formatted details, or of a message if not found.
+     */
+    public CompletableFuture<String> lookupAsync(LoreCategoryEnum category, String name) {
+        String cleanName = WHITESPACE.matcher(name.toLowerCase().trim()) // Normalize the name
+                .replaceAll("-");
+
+        String cached = cache.get(LoreCache.key(category, cleanName));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<Void> index = nameIndex(category);
+        if (!index.isDone()) {
+            return fetchShared(category, cleanName, name).thenCompose(details -> details != null
+                    ? CompletableFuture.completedFuture(details)
+                    : index.thenCompose(loaded -> lookupClosest(category, cleanName, name)));
+        }
+        LoreNameResolver.Match match = resolver.resolve(category, cleanName);
+        if (match != null && !match.isExact()) {
+            return lookupClosest(category, cleanName, name); // Skips a certain miss
+        }
+        return fetchShared(category, cleanName, name).thenCompose(details -> details != null
+                ? CompletableFuture.completedFuture(details)
+                : lookupClosest(category, cleanName, name));
+    }
+
+    /**
+     * Looks up the closest known slug of a name the API does not know. Without one close
+     * enough, the name is remembered as not found, unless the name index failed to load.
+     *
+     * @param category The lore category to search in.
+     * @param cleanName The normalized name, unknown as such.
+     * @param name The name requested by the narrator, used in messages.
+     * @return A future of the details of the closest entry, or of a message if none.
+     */
+    private CompletableFuture<String> lookupClosest(LoreCategoryEnum category,
+                                                    String cleanName, String name) {
+        LoreNameResolver.Match match = resolver.resolve(category, cleanName);
+        if (match == null || match.isExact()) {
+            String message = category.unknown(name);
+            if (nameIndexes.containsKey(category)) { // Else the next index may know better
+                cache.putNotFound(LoreCache.key(category, cleanName), message);
             }
+            return CompletableFuture.completedFuture(message);
+        }
+        String header = "Closest match for '" + name + "': " + match.slug()
+                + String.format(Locale.ROOT, " (score %.2f)", match.score()) + "\n";
+        return lookupSlug(category, match.slug(), name).thenApply(header::concat);
+    }
 
-            return formatMonsterDetails(monster);
+    /**
+     * Returns the slugs known so far for a category, starting the loading of the
+     * name index on first use. It never waits: until the index is loaded, the
+     * slugs already known (possibly none) are returned.
+     *
+     * @param category The lore category.
+     * @return The known slugs.
+     */
+    public List<String> knownSlugs(LoreCategoryEnum category) {
+        nameIndex(category);
+        return resolver.slugs(category);
+    }
 
-        } catch (RuntimeException e) {
+    /**
+     * Returns the number of slugs known so far for a category, like knownSlugs but
+     * without copying them.
+     *
+     * @param category The lore category.
+     * @return The number of known slugs.
+     */
+    public int knownSlugCount(LoreCategoryEnum category) {
+        nameIndex(category);
+        return resolver.size(category);
+    }
+
+    /**
+     * Synchronous lookup used by the tools, on top of the asynchronous path.
+     *
+     * @param category The lore category to search in.
+     * @param name The name requested by the narrator.
+     * @return The formatted details, or a message if not found.
+     */
+    private String lookup(LoreCategoryEnum category, String name) {
+        return join(lookupAsync(category, name));
+    }
+
+    /**
+     * Waits for a lookup, rethrowing its unchecked failure as is.
+     *
+     * @param lookup The lookup in progress.
+     * @return The formatted details, or a message if not found.
+     */
+    private static String join(CompletableFuture<String> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
             throw e;
-        } catch (Exception e) {
-            /*
-             * General exception handling gives the agent the ability to continue the story.
-             */
-            return "Unable to retrieve info about '" + monsterName + "'. Use your D&D creativity.";
         }
     }
 
     /**
-     * Search for a D&D spell by name.
+     * Looks up a lore entry by slug, answering from the cache, then the persistent store,
+     * and only then (unless offline) from the API.
      *
-     * @param spellName The name of the spell to search for.
-     * @return A formatted string containing the spell's details, or an error message if not found.
+     * @param category The lore category to search in.
+     * @param cleanName The normalized name (slug) to fetch.
+     * @param name The name requested by the narrator, used in messages.
+     * @return A future of the formatted details, or of a message if not found.
      */
-    @Tool("Search for a D&D spell by name (ex: fireball, magic-missile, cure-wounds)")
-    public String searchSpell(String spellName) {
-        try {
-            String cleanName = spellName.toLowerCase() // Normalize the spell name
-                    .trim()
-                    .replaceAll("\\s+", "-"); 
-            
-            String url = API_BASE + "/spells/" + cleanName;
-            
-            HttpRequest request = HttpRequest.newBuilder() // Build the HTTP request
-                    .uri(URI.create(url))
-                    .header("Accept", "application/json")
-                    .GET()
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, 
-                    HttpResponse.BodyHandlers.ofString());
-            
-
-            /*
-             * Errors handling
-             */
-            if (response.statusCode() != 200) {
-                return "Spell '" + spellName + "' not found.";
+    private CompletableFuture<String> lookupSlug(LoreCategoryEnum category, String cleanName,
+                                                 String name) {
+        String cached = cache.get(LoreCache.key(category, cleanName));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetchShared(category, cleanName, name).thenApply(details -> {
+            if (details != null) {
+                return details;
             }
-            
-            JsonNode spell = objectMapper.readTree(response.body());
-            
-            if (!spell.has("name")) {
-                return "Spell '" + spellName + "' not found.";
+            String message = category.unknown(name);
+            cache.putNotFound(LoreCache.key(category, cleanName), message);
+            return message;
+        });
+    }
+
+    /**
+     * Fetches a lore entry missing from the cache. A lookup already in flight for the
+     * same slug is joined instead of sending an identical request ("single-flight").
+     *
+     * @param category The lore category to search in.
+     * @param cleanName The normalized name (slug) to fetch.
+     * @param name The name requested by the narrator, used in messages.
+     * @return A future of the formatted details or of a message, or of null if the entry
+     *         does not exist.
+     */
+    private CompletableFuture<String> fetchShared(LoreCategoryEnum category, String cleanName,
+                                                  String name) {
+        String key = LoreCache.key(category, cleanName);
+        CompletableFuture<String> flight = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing.copy(); // A caller cancelling its copy does not affect the others
+        }
+        fetch(category, cleanName, name).whenComplete((details, error) -> {
+            inFlight.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error);
+            } else {
+                flight.complete(details);
             }
-            return formatSpellDetails(spell);
-        
+        });
+        return flight.copy();
+    }
 
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            /*
-             * General exception handling gives the agent the ability to continue the story.
-             */
-            return "Unable to retrieve info about spell '" + spellName + "'.";
+    /**
+     * Fetches a lore entry from the persistent store or the API and caches the result.
+     * Found entries are cached; unknown names are left to the caller, which may still
+     * resolve them to a known slug; network errors are not cached, so the next call can
+     * try again.
+     *
+     * @param category The lore category to search in.
+     * @param cleanName The normalized name (slug) to fetch.
+     * @param name The name requested by the narrator, used in messages.
+     * @return A future of the formatted details or of a message, or of null if the entry
+     *         does not exist.
+     */
+    private CompletableFuture<String> fetch(LoreCategoryEnum category, String cleanName,
+                                            String name) {
+        String key = LoreCache.key(category, cleanName);
+        String stored = readStored(key);
+        if (stored != null) {
+            return orUnavailable(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return toDetails(category, key, name, extractor.extract(category, stored),
+                            false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, Runnable::run), category, name);
+        }
+        if (offline) {
+            return CompletableFuture.completedFuture(null); // The snapshot holds every name
+        }
+
+        if (!breaker.allowRequest()) {
+            return CompletableFuture.completedFuture(category.unavailable(name)); // Fail fast
         }
+
+        long start = System.nanoTime();
+        String url = apiBase + "/" + category.path() + "/" + cleanName; // API URL
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept", "application/json")
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+
+        /*
+         * Send the HTTP request and handle the response.
+         */
+        return orUnavailable(sendHedged(request)
+                .thenApply(response -> {
+                    try (InputStream body = response.body()) {
+
+                        /*
+                         * Error handling
+                         */
+                        if (response.statusCode() == 404) {
+                            return null; // Misspelled, or not in the SRD
+                        }
+                        if (response.statusCode() != 200) {
+                            return category.unknown(name);
+                        }
+                        // Only the displayed fields are read from the body
+                        ObjectNode node = extractor.extract(category, body);
+                        cache.recordLoad(System.nanoTime() - start);
+                        return toDetails(category, key, name, node, true);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }), category, name);
     }
 
     /**
-     * Search for a D&D magic item by name.
+     * Sends a request, and sends it again if no answer came within the observed p95
+     * latency: the first answer wins and the other one is discarded. A failed attempt
+     * only fails the whole when no other attempt is left. The outcome feeds the
+     * circuit breaker.
      *
-     * @param itemName The name of the magic item to search for.
-     * @return A formatted string containing the item's details, or an error message if not found.
+     * @param request The GET request to send.
+     * @return A future of the first response.
      */
-    @Tool("Search for a D&D magic item by name (ex: bag-of-holding, vorpal-sword)")
-    public String searchMagicItem(String itemName) {
-        
+    private CompletableFuture<HttpResponse<InputStream>> sendHedged(HttpRequest request) {
+        CompletableFuture<HttpResponse<InputStream>> winner = new CompletableFuture<>();
+        Duration hedgeDelay = latency.hedgeDelay();
+        AtomicInteger attemptsLeft = new AtomicInteger(hedgeDelay == null ? 1 : 2);
+        attempt(request, winner, attemptsLeft);
+        if (hedgeDelay != null) {
+            CompletableFuture.delayedExecutor(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> {
+                        if (winner.isDone()) {
+                            attemptsLeft.decrementAndGet();
+                        } else {
+                            attempt(request, winner, attemptsLeft);
+                        }
+                    });
+        }
+        return winner.whenComplete((response, error) -> {
+            if (error == null && response.statusCode() < 500) {
+                breaker.recordSuccess();
+            } else {
+                breaker.recordFailure();
+            }
+        });
+    }
+
+    /**
+     * Sends one attempt of a hedged request.
+     *
+     * @param request The GET request to send.
+     * @param winner The future completed by the first successful attempt.
+     * @param attemptsLeft The number of attempts not failed yet.
+     */
+    private void attempt(HttpRequest request, CompletableFuture<HttpResponse<InputStream>> winner,
+                         AtomicInteger attemptsLeft) {
+        long start = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((response, error) -> {
+                    if (error == null) {
+                        latency.record(System.nanoTime() - start);
+                        if (!winner.complete(response)) {
+                            closeQuietly(response.body()); // Lost the race
+                        }
+                    } else if (attemptsLeft.decrementAndGet() == 0) {
+                        winner.completeExceptionally(error);
+                    }
+                });
+    }
+
+    private static void closeQuietly(InputStream body) {
         try {
-            String cleanName = itemName.toLowerCase() // Normalize the item name
-                    .trim()
-                    .replaceAll("\\s+", "-");
-            
-            String url = API_BASE + "/magic-items/" + cleanName;
-            
-            HttpRequest request = HttpRequest.newBuilder() // Build the HTTP request
-                    .uri(URI.create(url))
-                    .header("Accept", "application/json")
-                    .GET()
-                    .build();
-            
-            HttpResponse<String> response = httpClient.send(request, 
-                    HttpResponse.BodyHandlers.ofString());
-            
-            /*
-             * Errors handling
-             */
-            if (response.statusCode() != 200) {
-                return "Magic item '" + itemName + "' not found.";
+            body.close();
+        } catch (IOException e) {
+            // Nothing left to read from a discarded response
+        }
+    }
+
+    /**
+     * Turns I/O failures (network, unreadable JSON) into the "unavailable" message.
+     * Other failures are programming errors and are propagated.
+     *
+     * @param lookup The lookup in progress.
+     * @param category The lore category to search in.
+     * @param name The name requested by the narrator, used in messages.
+     * @return A future of the details, or of the "unavailable" message.
+     */
+    private static CompletableFuture<String> orUnavailable(CompletableFuture<String> lookup,
+                                                           LoreCategoryEnum category,
+                                                           String name) {
+        return lookup.exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof IOException || cause instanceof UncheckedIOException) {
+                /*
+                 * General exception handling gives the agent the ability to continue the story.
+                 */
+                return category.unavailable(name);
             }
-            
-            JsonNode item = objectMapper.readTree(response.body());
-            
-            if (!item.has("name")) {
-                return "Magic item '" + itemName + "' not found.";
+            throw error instanceof CompletionException completion ? completion
+                    : new CompletionException(cause);
+        });
+    }
+
+    /**
+     * Formats an extracted lore document, then caches (and persists when fetched) the result.
+     * Only the extracted fields are persisted, which keeps the store small.
+     *
+     * @param category The lore category of the document.
+     * @param key The cache and store key.
+     * @param name The name requested by the narrator, used in messages.
+     * @param node The extracted JSON document.
+     * @param fetched True if the document comes from the API and must be persisted.
+     * @return The formatted details, or a message if the document has no name.
+     * @throws IOException If the document cannot be serialized for the store.
+     */
+    private String toDetails(LoreCategoryEnum category, String key, String name, JsonNode node,
+                             boolean fetched) throws IOException {
+        if (!node.has("name")) {
+            return category.incomplete(name);
+        }
+
+        String details = format(category, node);
+        if (fetched) {
+            persist(key, objectMapper.writeValueAsString(node));
+        }
+        cache.put(key, details);
+        return details;
+    }
+
+    /**
+     * Returns the loading of the name index of a category, started on first use.
+     * A failed loading is forgotten, so the next lookup tries again; meanwhile, names
+     * are looked up as typed.
+     *
+     * @param category The lore category.
+     * @return A future completed once the known slugs are indexed, or the loading failed.
+     */
+    private CompletableFuture<Void> nameIndex(LoreCategoryEnum category) {
+        CompletableFuture<Void> index = nameIndexes.get(category);
+        if (index != null) {
+            return index;
+        }
+        CompletableFuture<Void> loading = new CompletableFuture<>();
+        index = nameIndexes.putIfAbsent(category, loading);
+        if (index != null) {
+            return index;
+        }
+        loadNameIndex(category).whenComplete((loaded, error) -> {
+            if (error != null) {
+                System.err.println("[WARNING] Lore name index unavailable: "
+                        + error.getMessage());
+                nameIndexes.remove(category, loading);
             }
+            loading.complete(null);
+        });
+        return loading;
+    }
 
-            return formatMagicItemDetails(item);
+    /**
+     * Loads the known slugs of a category: those in the persistent store, plus the
+     * API list of the category (kept in the store too, unless running offline).
+     *
+     * @param category The lore category.
+     * @return A future completed once the slugs are indexed, failed if the list could
+     *         not be loaded.
+     */
+    private CompletableFuture<Void> loadNameIndex(LoreCategoryEnum category) {
+        String prefix = category.path() + "/";
+        if (store != null) {
+            List<String> slugs = new ArrayList<>();
+            for (String key : store.keys(prefix)) {
+                slugs.add(key.substring(prefix.length()));
+            }
+            resolver.addAll(category, slugs);
+        }
+        if (offline) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-        } catch (RuntimeException e) {
-            throw e;
-        } catch (Exception e) {
-            /*
-             * General exception handling gives the agent the ability to continue the story.
-             */
-            return "Unable to retrieve info about item '" + itemName + "'.";
+        String indexKey = NAME_INDEX_PREFIX + category.path();
+        String stored = readStored(indexKey);
+        if (stored != null) {
+            return CompletableFuture.runAsync(() -> indexList(category, stored), Runnable::run);
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiBase + "/" + category.path()))
+                .header("Accept", "application/json")
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenAccept(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("HTTP " + response.statusCode());
+                    }
+                    indexList(category, response.body());
+                    persist(indexKey, response.body());
+                });
+    }
+
+    /**
+     * Adds the slugs of an API list document ({"results": [{"index": ...}]}) to the index.
+     */
+    private void indexList(LoreCategoryEnum category, String body) {
+        try {
+            List<String> slugs = new ArrayList<>();
+            for (JsonNode result : objectMapper.readTree(body).path("results")) {
+                slugs.add(result.path("index").asText());
+            }
+            resolver.addAll(category, slugs);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a document from the persistent store, if one is configured.
+     * A store failure is treated as a miss so the lookup falls back to the API.
+     *
+     * @param key The store key.
+     * @return The stored JSON document, or null.
+     */
+    private String readStored(String key) {
+        if (store == null) {
+            return null;
+        }
+        try {
+            return store.get(key);
+        } catch (IOException e) {
+            System.err.println("[WARNING] Lore store read failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves a fetched document in the persistent store, if one is configured.
+     *
+     * @param key The store key.
+     * @param body The JSON document.
+     */
+    private void persist(String key, String body) {
+        if (store == null) {
+            return;
         }
+        try {
+            store.put(key, body, STORE_TTL);
+        } catch (IOException e) {
+            System.err.println("[WARNING] Lore store write failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the persistent lore store at the given location.
+     *
+     * @param location The store file path, or null to run without a store.
+     * @return The opened store, or null if none is configured or it cannot be opened.
+     */
+    private static LoreStore openStore(String location) {
+        if (location == null || location.isBlank()) {
+            return null;
+        }
+        try {
+            return new LoreStore(Path.of(location));
+        } catch (IOException e) {
+            System.err.println("[WARNING] Lore store unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Formats a lore document with the formatter of its category.
+     *
+     * @param category The lore category of the document.
+     * @param node The JSON document returned by the API.
+     * @return A formatted string with the document's details.
+     */
+    private String format(LoreCategoryEnum category, JsonNode node) {
+        return switch (category) {
+            case MONSTER -> formatMonsterDetails(node);
+            case SPELL -> formatSpellDetails(node);
+            case MAGIC_ITEM -> formatMagicItemDetails(node);
+        };
     }
 
 
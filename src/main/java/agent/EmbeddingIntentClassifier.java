@@ -0,0 +1,251 @@
+package agent;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * EmbeddingIntentClassifier.java
+ * Classifies the inputs the intent keywords do not recognize. The input is embedded by a
+ * small in-process model and compared with an index of labelled example utterances built
+ * once at start-up; the nearest examples vote for the intent. Free-form story actions
+ * are far more varied than the examples, so the story goes on unless another intent wins
+ * clearly: when even the nearest example is far from the input, or when the winning
+ * intent is not ahead of every story example by a margin, the intent is CONTINUE_STORY.
+ * The results of recent inputs are
+ * cached, so a repeated input costs a map lookup; a miss costs a few milliseconds of CPU,
+ * far less than a model call.
+ */
+public class EmbeddingIntentClassifier {
+
+    /**
+     * Cosine similarity of the nearest example below which the story goes on.
+     */
+    public static final double DEFAULT_MIN_SIMILARITY = 0.3;
+
+    /**
+     * Lead in similarity over the nearest story example that another intent needs.
+     */
+    static final double MIN_MARGIN = 0.1;
+
+    /**
+     * Default example utterances of each intent.
+     */
+    public static final Map<IntentTypeEnum, List<String>> DEFAULT_EXAMPLES;
+
+    static {
+        Map<IntentTypeEnum, List<String>> examples = new EnumMap<>(IntentTypeEnum.class);
+        examples.put(IntentTypeEnum.CREATE_ENTITY, List.of(
+                "Make me a new character.",
+                "I want a new NPC for this town.",
+                "Roll up a dwarf fighter for me.",
+                "Give me the stats of a goblin.",
+                "Design a magic sword.",
+                "Build a monster for my campaign.",
+                "I need a villain with a backstory.",
+                "Come up with a tavern keeper.",
+                "Invent a random magic item.",
+                "New player character: an elf ranger."));
+        examples.put(IntentTypeEnum.CONTINUE_STORY, List.of(
+                "I open the door.",
+                "I sneak past the guards.",
+                "What happens next?",
+                "I cast fireball at the orcs.",
+                "We rest at the inn for the night.",
+                "I talk to the innkeeper.",
+                "I look around the room.",
+                "Let's go north through the forest.",
+                "I draw my sword and charge.",
+                "Continue.",
+                "I search the chest for traps.",
+                "I ask the wizard about the prophecy."));
+        examples.put(IntentTypeEnum.UNKNOWN, List.of(
+                "What is the weather today?",
+                "Write me a Python script.",
+                "What is two plus two?",
+                "Translate this sentence into French.",
+                "Who won the football game yesterday?"));
+        DEFAULT_EXAMPLES = Collections.unmodifiableMap(examples);
+    }
+
+    /**
+     * Number of nearest examples voting for the intent.
+     */
+    private static final int NEIGHBOURS = 3;
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The intent chosen for an input.
+     *
+     * @param intent The intent type, CONTINUE_STORY unless another one wins clearly.
+     * @param similarity The cosine similarity of the nearest example of that intent
+     *                   (of any intent when no example is close enough).
+     */
+    public record Classification(IntentTypeEnum intent, double similarity) {
+    }
+
+    private final EmbeddingModel model;
+    private final double minSimilarity;
+    private final float[][] vectors;
+    private final IntentTypeEnum[] labels;
+    private final Map<String, Classification> cache;
+
+    /**
+     * Creates a classifier embedding the default examples.
+     *
+     * @param model The embedding model.
+     */
+    public EmbeddingIntentClassifier(EmbeddingModel model) {
+        this(model, DEFAULT_EXAMPLES, DEFAULT_MIN_SIMILARITY, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a classifier, embedding the examples into its index.
+     *
+     * @param model The embedding model.
+     * @param examples The example utterances of each intent.
+     * @param minSimilarity Similarity of the nearest example below which the intent is
+     *                      CONTINUE_STORY.
+     * @param cacheSize Number of recent inputs whose classification is kept.
+     */
+    public EmbeddingIntentClassifier(EmbeddingModel model,
+                                     Map<IntentTypeEnum, List<String>> examples,
+                                     double minSimilarity, int cacheSize) {
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive");
+        }
+        this.model = model;
+        this.minSimilarity = minSimilarity;
+        List<float[]> index = new ArrayList<>();
+        List<IntentTypeEnum> indexLabels = new ArrayList<>();
+        examples.forEach((intent, utterances) -> {
+            for (String utterance : utterances) {
+                index.add(embed(utterance));
+                indexLabels.add(intent);
+            }
+        });
+        this.vectors = index.toArray(new float[0][]);
+        this.labels = indexLabels.toArray(new IntentTypeEnum[0]);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Classification> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Creates a classifier on the all-MiniLM-L6-v2 model run in-process by ONNX.
+     *
+     * @return The classifier, or null, after a warning, when the model cannot be loaded.
+     */
+    public static EmbeddingIntentClassifier local() {
+        try {
+            return new EmbeddingIntentClassifier(new AllMiniLmL6V2EmbeddingModel());
+        } catch (RuntimeException | LinkageError e) {
+            System.err.println("[WARNING] Embedding model unavailable, intents are recognized"
+                    + " by keywords only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Classifies an input, from the cache when it was seen recently. Inputs differing
+     * only by case or surrounding spaces share their classification.
+     *
+     * @param input The user input.
+     * @return The intent and the similarity of the nearest example supporting it.
+     */
+    public Classification classify(String input) {
+        String key = input.strip().toLowerCase(Locale.ROOT);
+        synchronized (cache) {
+            Classification cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Classification classification = nearest(embed(key));
+        synchronized (cache) {
+            cache.put(key, classification);
+        }
+        return classification;
+    }
+
+    /**
+     * Lets the nearest examples vote, each with its similarity. An intent other than
+     * CONTINUE_STORY is only kept if its nearest example is also the nearest of all, and
+     * ahead of the nearest story example by the margin.
+     */
+    private Classification nearest(float[] vector) {
+        int[] top = new int[Math.min(NEIGHBOURS, vectors.length)];
+        double[] topSimilarity = new double[top.length];
+        Arrays.fill(topSimilarity, Double.NEGATIVE_INFINITY);
+        double story = Double.NEGATIVE_INFINITY; // Nearest story example
+        for (int i = 0; i < vectors.length; i++) {
+            double similarity = dot(vector, vectors[i]);
+            if (labels[i] == IntentTypeEnum.CONTINUE_STORY) {
+                story = Math.max(story, similarity);
+            }
+            for (int rank = 0; rank < top.length; rank++) {
+                if (similarity > topSimilarity[rank]) {
+                    System.arraycopy(top, rank, top, rank + 1, top.length - rank - 1);
+                    System.arraycopy(topSimilarity, rank, topSimilarity, rank + 1,
+                            top.length - rank - 1);
+                    top[rank] = i;
+                    topSimilarity[rank] = similarity;
+                    break;
+                }
+            }
+        }
+        if (top.length == 0 || topSimilarity[0] < minSimilarity) {
+            return new Classification(IntentTypeEnum.CONTINUE_STORY,
+                    top.length == 0 ? 0 : topSimilarity[0]);
+        }
+        Map<IntentTypeEnum, Double> votes = new EnumMap<>(IntentTypeEnum.class);
+        for (int rank = 0; rank < top.length; rank++) {
+            votes.merge(labels[top[rank]], topSimilarity[rank], Double::sum);
+        }
+        IntentTypeEnum winner = Collections.max(votes.entrySet(),
+                Map.Entry.comparingByValue()).getKey();
+        if (winner != IntentTypeEnum.CONTINUE_STORY && (labels[top[0]] != winner
+                || topSimilarity[0] - story < MIN_MARGIN)) {
+            return new Classification(IntentTypeEnum.CONTINUE_STORY,
+                    Double.isInfinite(story) ? topSimilarity[0] : story);
+        }
+        int best = 0;
+        while (labels[top[best]] != winner) {
+            best++;
+        }
+        return new Classification(winner, topSimilarity[best]);
+    }
+
+    /**
+     * Embeds a text as a unit vector, so the cosine similarity is a dot product.
+     */
+    private float[] embed(String text) {
+        float[] vector = model.embed(text).content().vector().clone();
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= (float) norm;
+            }
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -10,6 +10,7 @@ package agent;
 
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import java.time.Duration;
 
 /**
  * The EntityAgent class is responsible for generating RPG entities such as
@@ -18,6 +19,18 @@ import dev.langchain4j.model.ollama.OllamaChatModel;
  * TODO : FINISH THIS CLASS AND REMOVE IT FROM THE EXCLUDE.XML FILE OF SPOTBUGS WHEN READY
  */
 public class EntityAgent {
+
+    /**
+     * Longest time a generation waits for a free model slot.
+     */
+    private static final Duration GENERATION_MAX_WAIT = Duration.ofSeconds(20);
+
+    /**
+     * Answer given when the generation is shed because the model is overloaded.
+     */
+    private static final String BUSY_RESPONSE = "The forge is busy with other adventurers. "
+            + "Try again in a moment.";
+
     private final ChatLanguageModel model;
 
     /**
@@ -25,10 +38,22 @@ public class EntityAgent {
      * with configuration values retrieved from environment variables.
      */
     public EntityAgent() {
-        this.model = OllamaChatModel.builder()
-                .baseUrl(EnvVarUtils.getEnvVar("APP_URL"))
-                .modelName(EnvVarUtils.getEnvVar("APP_MODEL"))
-                .build();
+        this(ModelTiers.fromEnv());
+    }
+
+    /**
+     * Constructs an EntityAgent using the small model shared with the other agents:
+     * a short JSON entity does not need the narration model.
+     *
+     * @param tiers The models, backends and schedulers of the agents.
+     */
+    public EntityAgent(ModelTiers tiers) {
+        this.model = tiers.chatModel(ModelTiers.Tier.SMALL,
+                InferenceScheduler.Priority.INTERACTIVE, GENERATION_MAX_WAIT,
+                (url, modelName) -> OllamaChatModel.builder()
+                        .baseUrl(url)
+                        .modelName(modelName)
+                        .build());
     }
 
     /**
@@ -36,7 +61,8 @@ public class EntityAgent {
      * The generated JSON includes the entity's type, name, rarity, and description.
      *
      * @param input The player's input describing the desired entity.
-     * @return A JSON string representing the generated RPG entity.
+     * @return A JSON string representing the generated RPG entity, or a message
+     *         asking to try again if the model is overloaded.
      */
     public String generateEntity(String input) {
         String prompt = """
@@ -56,6 +82,11 @@ public class EntityAgent {
             
             Demande du joueur : %s
             """.formatted(input);
-        return model.generate(prompt);
+        try {
+            return model.generate(prompt);
+        } catch (InferenceScheduler.RejectedException e) {
+            System.err.println("[WARNING] " + e.getMessage());
+            return BUSY_RESPONSE;
+        }
     }
 }
\ No newline at end of file
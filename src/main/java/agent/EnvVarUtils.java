@@ -1,5 +1,7 @@
 package agent;
 
+import java.time.Duration;
+
 /**
  * Abstract class EnvVarUtils that provides utility methods for working with
  * environment variables.
@@ -16,4 +18,57 @@ public abstract class EnvVarUtils {
     public static String getEnvVar(String varName) {
         return System.getenv(varName);
     }
+
+    /**
+     * Retrieves a positive duration in milliseconds from the specified environment
+     * variable. An invalid value is reported and replaced by the default.
+     *
+     * @param varName The name of the environment variable to retrieve.
+     * @param defaultValue The duration used when the variable is unset or invalid.
+     * @return The configured duration.
+     */
+    public static Duration getEnvDuration(String varName, Duration defaultValue) {
+        String value = getEnvVar(varName);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            long millis = Long.parseLong(value.trim());
+            if (millis > 0) {
+                return Duration.ofMillis(millis);
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("[WARNING] Invalid " + varName + " '" + value + "', using "
+                + defaultValue.toMillis() + " ms.");
+        return defaultValue;
+    }
+
+    /**
+     * Retrieves a count from the specified environment variable. An invalid value is
+     * reported and replaced by the default.
+     *
+     * @param varName The name of the environment variable to retrieve.
+     * @param defaultValue The count used when the variable is unset or invalid.
+     * @param min The smallest valid count.
+     * @return The configured count.
+     */
+    public static int getEnvCount(String varName, int defaultValue, int min) {
+        String value = getEnvVar(varName);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count >= min) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.err.println("[WARNING] Invalid " + varName + " '" + value + "', using "
+                + defaultValue + ".");
+        return defaultValue;
+    }
 }
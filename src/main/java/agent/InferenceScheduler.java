@@ -0,0 +1,344 @@
+package agent;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * InferenceScheduler.java
+ * Admission control in front of the Ollama backend, shared by every agent.
+ * The backend only generates a few responses at a time (its parallel slots); requests
+ * above that wait in its own queue until the HTTP client times out. The scheduler keeps
+ * the number of requests in flight at the number of slots and queues the others itself:
+ * interactive requests (a player waiting for the narration) always go before background
+ * work (memory summaries), each request waits no longer than its own deadline, and when
+ * the queue is full or the deadline passes the request is shed at once with a
+ * RejectedException, so the caller can answer with a fallback message instead of
+ * timing out. Waiting threads park on a lock condition, which suits virtual threads.
+ */
+public class InferenceScheduler {
+
+    /**
+     * Parallel slots used when APP_OLLAMA_SLOTS is unset: Ollama serves one request at a
+     * time on a CPU-only host.
+     */
+    private static final int DEFAULT_SLOTS = 1;
+
+    /**
+     * Waiting requests allowed when APP_OLLAMA_QUEUE is unset.
+     */
+    private static final int DEFAULT_MAX_QUEUED = 16;
+
+    /**
+     * Number of latest wait times the percentiles are computed on, per priority.
+     */
+    private static final int WAIT_WINDOW = 256;
+
+    /**
+     * The priority classes, the most urgent first.
+     */
+    public enum Priority {
+        /** A player is waiting for the response. */
+        INTERACTIVE,
+        /** Work nobody waits for, run when no interactive request is queued. */
+        BACKGROUND
+    }
+
+    /**
+     * Thrown when a request is shed: the queue is full, or the request could not be
+     * started before its deadline.
+     */
+    public static class RejectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the exception.
+         *
+         * @param message Why the request was shed.
+         */
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Snapshot of the scheduler metrics.
+     *
+     * @param slots Number of requests allowed in flight.
+     * @param running Number of requests in flight.
+     * @param queuedInteractive Number of interactive requests waiting.
+     * @param queuedBackground Number of background requests waiting.
+     * @param admittedCount Number of requests admitted since start.
+     * @param shedCount Number of requests shed since start.
+     * @param interactiveWaitP95Nanos 95th percentile of the latest interactive waits,
+     *                                or -1 without any.
+     * @param backgroundWaitP95Nanos 95th percentile of the latest background waits,
+     *                               or -1 without any.
+     * @param serviceP50Nanos Median time a request holds its slot, or -1 without any.
+     */
+    public record Stats(int slots, int running, int queuedInteractive, int queuedBackground,
+                        long admittedCount, long shedCount, long interactiveWaitP95Nanos,
+                        long backgroundWaitP95Nanos, long serviceP50Nanos) {
+    }
+
+    /**
+     * The right to run one request on the backend. Closing it frees the slot; closing
+     * it again does nothing.
+     */
+    public final class Permit implements AutoCloseable {
+        private final long startedAt = clock.getAsLong();
+        private boolean closed; // Guarded by the scheduler lock
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    serviceTimes.record(clock.getAsLong() - startedAt);
+                    running--;
+                    dispatch();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A request waiting for a slot.
+     */
+    private final class Waiter {
+        private final Priority priority;
+        private final long enqueuedAt;
+        private final Condition admitted = lock.newCondition();
+        private boolean granted;
+        private String rejection;
+
+        private Waiter(Priority priority, long enqueuedAt) {
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final int slots;
+    private final int maxQueued;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Waiter> interactive = new ArrayDeque<>();
+    private final Deque<Waiter> background = new ArrayDeque<>();
+    private final LatencyTracker interactiveWaits = new LatencyTracker(WAIT_WINDOW, 1,
+            Duration.ZERO);
+    private final LatencyTracker backgroundWaits = new LatencyTracker(WAIT_WINDOW, 1,
+            Duration.ZERO);
+    private final LatencyTracker serviceTimes = new LatencyTracker(WAIT_WINDOW, 1,
+            Duration.ZERO);
+    private int running;
+    private long admittedCount;
+    private long shedCount;
+
+    /**
+     * Creates a scheduler using the system monotonic clock.
+     *
+     * @param slots The number of requests the backend generates in parallel.
+     * @param maxQueued The number of requests allowed to wait; more are shed at once.
+     */
+    public InferenceScheduler(int slots, int maxQueued) {
+        this(slots, maxQueued, System::nanoTime);
+    }
+
+    /**
+     * Creates a scheduler with a custom clock (used by tests).
+     *
+     * @param slots The number of requests the backend generates in parallel.
+     * @param maxQueued The number of requests allowed to wait; more are shed at once.
+     * @param clock Source of nanosecond timestamps, for the wait metrics.
+     */
+    InferenceScheduler(int slots, int maxQueued, LongSupplier clock) {
+        if (slots <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("slots must be positive, maxQueued not negative");
+        }
+        this.slots = slots;
+        this.maxQueued = maxQueued;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a scheduler sized by the APP_OLLAMA_SLOTS (the OLLAMA_NUM_PARALLEL of each
+     * backend) and APP_OLLAMA_QUEUE environment variables.
+     *
+     * @param backends The number of Ollama hosts sharing the load.
+     * @return The scheduler.
+     */
+    public static InferenceScheduler fromEnv(int backends) {
+        int slots = EnvVarUtils.getEnvCount("APP_OLLAMA_SLOTS", DEFAULT_SLOTS, 1);
+        return new InferenceScheduler(slots * backends,
+                EnvVarUtils.getEnvCount("APP_OLLAMA_QUEUE", DEFAULT_MAX_QUEUED, 0));
+    }
+
+    /**
+     * Runs a request once a slot is free, within the given deadline.
+     *
+     * @param priority The priority class of the request.
+     * @param maxWait The longest time the request may wait for a slot.
+     * @param request The request, run on the calling thread.
+     * @param <T> The type of the response.
+     * @return The response of the request.
+     * @throws RejectedException If the request is shed.
+     */
+    public <T> T run(Priority priority, Duration maxWait, Supplier<T> request) {
+        Permit permit = acquire(priority, maxWait);
+        try {
+            return request.get();
+        } finally {
+            permit.close();
+        }
+    }
+
+    /**
+     * Waits for a slot, for requests which do not complete on the calling thread
+     * (streaming). The permit must be closed once the request is over.
+     *
+     * @param priority The priority class of the request.
+     * @param maxWait The longest time the request may wait for a slot.
+     * @return The permit holding the slot.
+     * @throws RejectedException If the request is shed.
+     */
+    public Permit acquire(Priority priority, Duration maxWait) {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(priority, clock.getAsLong());
+            if (running < slots && interactive.isEmpty()
+                    && (priority == Priority.INTERACTIVE || background.isEmpty())) {
+                admit(waiter);
+                return new Permit();
+            }
+            if (!makeRoomFor(priority)) {
+                throw shed("queue full (" + maxQueued + " requests waiting)");
+            }
+            queueOf(priority).addLast(waiter);
+            while (!waiter.granted && waiter.rejection == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    queueOf(priority).remove(waiter);
+                    throw shed("no slot free within " + maxWait.toMillis() + " ms");
+                }
+                try {
+                    waiter.admitted.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (waiter.granted) {
+                        return new Permit(); // The caller sees the interrupt when it runs
+                    }
+                    queueOf(priority).remove(waiter);
+                    throw shed("interrupted while waiting for a slot");
+                }
+            }
+            if (!waiter.granted) {
+                throw new RejectedException(waiter.rejection);
+            }
+            return new Permit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current metrics.
+     *
+     * @return A snapshot of the queue depths, counters and wait times.
+     */
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(slots, running, interactive.size(), background.size(),
+                    admittedCount, shedCount, interactiveWaits.percentile(95),
+                    backgroundWaits.percentile(95), serviceTimes.percentile(50));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates how long a new request would wait for a slot: the requests queued ahead
+     * of it, plus the one it waits for, each holding a slot for the median service time.
+     *
+     * @param priority The priority class of the new request.
+     * @return The estimated wait in nanoseconds; 0 when a slot is free or nothing was
+     *         measured yet.
+     */
+    public long estimatedWaitNanos(Priority priority) {
+        lock.lock();
+        try {
+            int ahead = interactive.size()
+                    + (priority == Priority.BACKGROUND ? background.size() : 0);
+            long service = serviceTimes.percentile(50);
+            if ((running < slots && ahead == 0) || service < 0) {
+                return 0;
+            }
+            return (ahead + 1) * service / slots;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a place in a full queue: an interactive request takes the place of the
+     * latest background one, which is shed instead.
+     *
+     * @return False if the new request must be shed.
+     */
+    private boolean makeRoomFor(Priority priority) {
+        if (interactive.size() + background.size() < maxQueued) {
+            return true;
+        }
+        if (priority == Priority.INTERACTIVE && !background.isEmpty()) {
+            Waiter displaced = background.removeLast();
+            displaced.rejection = "Inference request shed: displaced by an interactive request";
+            shedCount++;
+            displaced.admitted.signal();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hands the free slots to the waiting requests, interactive ones first.
+     */
+    private void dispatch() {
+        while (running < slots) {
+            Waiter next = interactive.isEmpty() ? background.pollFirst() : interactive.pollFirst();
+            if (next == null) {
+                return;
+            }
+            admit(next);
+            next.admitted.signal();
+        }
+    }
+
+    private void admit(Waiter waiter) {
+        waiter.granted = true;
+        running++;
+        admittedCount++;
+        long waited = clock.getAsLong() - waiter.enqueuedAt;
+        (waiter.priority == Priority.INTERACTIVE ? interactiveWaits : backgroundWaits)
+                .record(waited);
+    }
+
+    private RejectedException shed(String reason) {
+        shedCount++;
+        return new RejectedException("Inference request shed: " + reason);
+    }
+
+    private Deque<Waiter> queueOf(Priority priority) {
+        return priority == Priority.INTERACTIVE ? interactive : background;
+    }
+}
@@ -1,35 +1,156 @@
 package agent;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * IntentAnalyzer.java
  * Analyzes user input to determine the intent type for routing to appropriate agents.
+ * The keywords are compiled once into a KeywordMatcher, so the input is scanned in a
+ * single pass, without copying it, whatever the size of the keyword table. Keywords
+ * match whole words only: "recreate" is not "create", "storytelling" is not "tell".
+ * The keywords are the fast path: only the inputs without any keyword, for which they
+ * are no evidence, go to the optional embedding classifier, which continues the story
+ * unless the input is clearly a creation request or UNKNOWN.
  * author: Florian Mordohai with LLM assistance
  */
 public class IntentAnalyzer {
 
+    /**
+     * Default keyword table. When keywords of several intents are found, the intent of
+     * the keyword listed first wins, so entity creation goes before narration.
+     */
+    public static final Map<String, IntentTypeEnum> DEFAULT_KEYWORDS;
+
+    static {
+        // Keywords match whole words, so each verb comes with all its inflections
+        Map<String, IntentTypeEnum> keywords = new LinkedHashMap<>();
+        for (String keyword : List.of("create", "creates", "created", "creating",
+                "generate", "generates", "generated", "generating")) {
+            keywords.put(keyword, IntentTypeEnum.CREATE_ENTITY);
+        }
+        for (String keyword : List.of("tell", "tells", "told", "telling",
+                "attack", "attacks", "attacked", "attacking",
+                "explore", "explores", "explored", "exploring",
+                "start", "starts", "started", "starting",
+                "begin", "begins", "began", "begun", "beginning")) {
+            keywords.put(keyword, IntentTypeEnum.CONTINUE_STORY);
+        }
+        DEFAULT_KEYWORDS = Collections.unmodifiableMap(keywords);
+    }
+
+    /**
+     * The result of an analysis.
+     *
+     * @param intent The determined intent type.
+     * @param matches The keywords found in the input, with their position, in text order.
+     */
+    public record Analysis(IntentTypeEnum intent,
+                           List<KeywordMatcher.Match<IntentTypeEnum>> matches) {
+    }
+
+    private final KeywordMatcher<IntentTypeEnum> matcher;
+    private final CompletableFuture<EmbeddingIntentClassifier> classifier;
+
+    /**
+     * Creates an analyzer using the default keyword table only.
+     */
+    public IntentAnalyzer() {
+        this(DEFAULT_KEYWORDS);
+    }
+
+    /**
+     * Creates an analyzer using the given keyword table.
+     *
+     * @param keywords The keywords and their intent, the most decisive first: when
+     *                 keywords of several intents are found, the first listed wins.
+     */
+    public IntentAnalyzer(Map<String, IntentTypeEnum> keywords) {
+        this(keywords, CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Creates an analyzer using the given keyword table, and the given classifier for
+     * the inputs without keywords.
+     *
+     * @param keywords The keywords and their intent, the most decisive first.
+     * @param classifier The classifier of the inputs without keywords, or null to
+     *                   continue the story on them.
+     */
+    public IntentAnalyzer(Map<String, IntentTypeEnum> keywords,
+                          EmbeddingIntentClassifier classifier) {
+        this(keywords, CompletableFuture.completedFuture(classifier));
+    }
+
+    /**
+     * Creates an analyzer whose classifier is still loading. Until it is loaded, the
+     * inputs without keywords continue the story, so the keywords serve at once.
+     *
+     * @param keywords The keywords and their intent, the most decisive first.
+     * @param classifier The loading of the classifier of the inputs without keywords,
+     *                   completed with null to continue the story on them.
+     */
+    public IntentAnalyzer(Map<String, IntentTypeEnum> keywords,
+                          CompletableFuture<EmbeddingIntentClassifier> classifier) {
+        this.matcher = new KeywordMatcher<>(keywords);
+        this.classifier = classifier;
+    }
+
     /**
      * Analyzes the given user input to determine the intent type.
-     * The method normalizes the input to lowercase and checks for specific keywords
-     * to classify the intent as either entity creation or story continuation.
-     * If no specific keywords are found, it defaults to story continuation.
+     * The input is scanned once for the keywords of the table, case-insensitively and on
+     * whole words, without allocating anything.
+     * If no keyword is found, the embedding classifier decides; without classifier (or
+     * while it loads), for a blank input, or when the classifier fails, it defaults to
+     * story continuation.
      *
      * @param input The user input as a String.
      * @return The determined intent type as an IntentTypeEnum value.
-     *         Possible values are CREATE_ENTITY or CONTINUE_STORY.
+     *         Possible values are CREATE_ENTITY, CONTINUE_STORY or, from the classifier,
+     *         UNKNOWN.
      */
     public IntentTypeEnum analyzeIntent(String input) {
-        String s = input.toLowerCase(); // Normalize input for analysis
-        
-        if (s.contains("create") || s.contains("generate")) { // Keywords for entity creation
-            return IntentTypeEnum.CREATE_ENTITY;
+        int keyword = matcher.firstKeyword(input);
+        return keyword >= 0 ? matcher.value(keyword) : classify(input);
+    }
+
+    /**
+     * Analyzes the given user input like analyzeIntent, also returning where the
+     * keywords were found. The input is scanned once: the intent is that of the first
+     * listed keyword among the matches.
+     *
+     * @param input The user input as a String.
+     * @return The intent type and the matched spans.
+     */
+    public Analysis analyze(String input) {
+        List<KeywordMatcher.Match<IntentTypeEnum>> matches = matcher.findAll(input);
+        KeywordMatcher.Match<IntentTypeEnum> first = null;
+        for (KeywordMatcher.Match<IntentTypeEnum> match : matches) {
+            if (first == null || match.index() < first.index()) {
+                first = match;
+            }
+        }
+        return new Analysis(first != null ? first.value() : classify(input), matches);
+    }
+
+    /**
+     * Determines the intent of an input without keywords.
+     */
+    private IntentTypeEnum classify(String input) {
+        if (input.isBlank()) {
+            return IntentTypeEnum.CONTINUE_STORY;
         }
-        
-        if (s.contains("tell") || s.contains("attack") || s.contains("explore")
-                || s.contains("start") || s.contains("begin")) {
+        try {
+            EmbeddingIntentClassifier loaded = classifier.getNow(null);
+            return loaded == null ? IntentTypeEnum.CONTINUE_STORY
+                    : loaded.classify(input).intent();
+        } catch (RuntimeException e) {
+            System.err.println("[WARNING] Intent classification failed, continuing the story: "
+                    + e.getMessage());
             return IntentTypeEnum.CONTINUE_STORY;
         }
-        
-        // By default, consider it narration
-        return IntentTypeEnum.CONTINUE_STORY;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package agent;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * IntroPool.java
+ * Pool of pre-generated opening scenes, so a new adventure starts at once instead of
+ * waiting for the model. Taking a scene records it in the session memory as the answer
+ * to the start prompt, so the story goes on from it as if it had just been narrated.
+ * The pool is refilled in the background, one scene at a time, when asked to (after a
+ * scene is taken); the scenes are kept in a JSON file, when one is given, so those
+ * generated during a run serve the next launches. A scene is never served twice.
+ */
+public class IntroPool {
+
+    private final Path file;
+    private final int capacity;
+    private final Supplier<String> generator;
+    private final Executor executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Deque<String> intros = new ArrayDeque<>();
+    private boolean refilling;
+
+    /**
+     * Creates a pool, loading the scenes kept in its file.
+     *
+     * @param file The file keeping the scenes across launches, or null to keep them in
+     *             memory only.
+     * @param capacity The number of scenes the pool is refilled to.
+     * @param generator Generates one opening scene; null when the model produced none
+     *                  worth serving.
+     * @param executor Runs the refills.
+     */
+    public IntroPool(Path file, int capacity, Supplier<String> generator, Executor executor) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.generator = generator;
+        this.executor = executor;
+        if (file != null && Files.exists(file)) {
+            try {
+                intros.addAll(objectMapper.readValue(file.toFile(),
+                        new TypeReference<List<String>>() { }));
+            } catch (IOException e) {
+                System.err.println("[WARNING] Intro pool unreadable, starting empty: "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest scene of the pool.
+     *
+     * @return The scene, or null if the pool is empty.
+     */
+    public synchronized String take() {
+        String intro = intros.pollFirst();
+        if (intro != null) {
+            save();
+        }
+        return intro;
+    }
+
+    /**
+     * Takes the oldest scene of the pool and records it in a session memory as the
+     * answer to the start prompt.
+     *
+     * @param memory The memory of the session starting its adventure.
+     * @param prompt The start prompt the scene answers.
+     * @return The scene, or null, leaving the memory untouched, if the pool is empty.
+     */
+    public String takeInto(ChatMemory memory, String prompt) {
+        String intro = take();
+        if (intro != null) {
+            memory.add(UserMessage.from(prompt));
+            memory.add(AiMessage.from(intro));
+        }
+        return intro;
+    }
+
+    /**
+     * Starts generating scenes in the background until the pool is full, unless it is
+     * full or being refilled already. A failed generation stops the refill until the
+     * next call.
+     */
+    public synchronized void refill() {
+        if (refilling || intros.size() >= capacity) {
+            return;
+        }
+        refilling = true;
+        executor.execute(this::fill);
+    }
+
+    /**
+     * Returns the number of scenes ready to be served.
+     *
+     * @return The size of the pool.
+     */
+    public synchronized int size() {
+        return intros.size();
+    }
+
+    private void fill() {
+        try {
+            while (true) {
+                String intro = generator.get();
+                if (intro == null || intro.isBlank()) {
+                    return;
+                }
+                synchronized (this) {
+                    intros.addLast(intro.strip());
+                    save();
+                    if (intros.size() >= capacity) {
+                        return;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[WARNING] Intro generation failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                refilling = false;
+            }
+        }
+    }
+
+    /**
+     * Writes the scenes to a temporary file, then moves it over the pool file, so a
+     * crash never leaves a truncated pool.
+     */
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), List.copyOf(intros));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[WARNING] Intro pool not saved: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package agent;
+
+import java.util.List;
+
+/**
+ * JsonLeakDetector.java
+ * Incremental detection of a structured tool call leaking into the narration
+ * (ex: {"name": "describeScene", "parameters": ...}).
+ * Tokens are fed as the model streams them; the detector reports the leak as soon as
+ * one of the markers is complete, whatever the whitespace or the token boundaries,
+ * so generation can be aborted instead of paid for in full. Text that could still be
+ * the beginning of a marker is held back, so a leak is never shown to the player.
+ * The start of the output can be held back as a whole, so that an answer opening with a
+ * structured call is caught before anything is shown, and can be retried unseen.
+ */
+public class JsonLeakDetector {
+
+    /**
+     * Markers of a structured call, compared without whitespace.
+     */
+    static final List<String> MARKERS = List.of("{\"name\"", "\"parameters\"");
+
+    private static final int MAX_MARKER_LENGTH =
+            MARKERS.stream().mapToInt(String::length).max().orElse(0);
+
+    private final int clearance;
+    private final StringBuilder held = new StringBuilder(); // Text not released yet
+    private final StringBuilder recent = new StringBuilder(); // Latest non-whitespace chars
+    private int seen; // Non-whitespace chars, up to the clearance
+    private boolean leaked;
+
+    /**
+     * Creates a detector releasing the text as soon as it cannot be part of a marker.
+     */
+    public JsonLeakDetector() {
+        this(0);
+    }
+
+    /**
+     * Creates a detector holding back the start of the output.
+     *
+     * @param clearance The number of non-whitespace characters to see without a leak
+     *                  before releasing any text.
+     */
+    public JsonLeakDetector(int clearance) {
+        this.clearance = clearance;
+    }
+
+    /**
+     * Feeds the next token.
+     *
+     * @param token The token produced by the model.
+     * @return The text that can safely be shown now (possibly empty), or null once a
+     *         leak is detected.
+     */
+    public String accept(String token) {
+        if (leaked) {
+            return null;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            held.append(c);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            if (seen < clearance) {
+                seen++;
+            }
+            recent.append(c);
+            if (recent.length() > MAX_MARKER_LENGTH) {
+                recent.deleteCharAt(0);
+            }
+            if (endsWithMarker()) {
+                leaked = true;
+                return null;
+            }
+        }
+        return seen < clearance ? "" : release(pendingMarkerPrefix());
+    }
+
+    /**
+     * Releases the text still held back, at the end of the generation.
+     *
+     * @return The remaining text, or an empty string after a leak.
+     */
+    public String flush() {
+        return leaked ? "" : release(0);
+    }
+
+    /**
+     * Tells whether a leak was detected.
+     *
+     * @return True once a marker was seen.
+     */
+    public boolean leaked() {
+        return leaked;
+    }
+
+    private boolean endsWithMarker() {
+        for (String marker : MARKERS) {
+            int start = recent.length() - marker.length();
+            if (start >= 0 && recent.indexOf(marker, start) == start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of trailing non-whitespace characters that form the beginning
+     * of a marker, and so must be held back.
+     */
+    private int pendingMarkerPrefix() {
+        int longest = 0;
+        for (String marker : MARKERS) {
+            int length = Math.min(marker.length() - 1, recent.length());
+            for (; length > longest; length--) {
+                if (recent.indexOf(marker.substring(0, length), recent.length() - length)
+                        == recent.length() - length) {
+                    longest = length;
+                    break;
+                }
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Releases the held text except the part holding the last non-whitespace characters.
+     *
+     * @param keptChars The number of trailing non-whitespace characters to keep held.
+     * @return The released text.
+     */
+    private String release(int keptChars) {
+        int cut = held.length();
+        int kept = 0;
+        while (kept < keptChars && cut > 0) {
+            cut--;
+            if (!Character.isWhitespace(held.charAt(cut))) {
+                kept++;
+            }
+        }
+        String released = held.substring(0, cut);
+        held.delete(0, cut);
+        return released;
+    }
+}
@@ -0,0 +1,258 @@
+package agent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KeywordMatcher.java
+ * Finds many keywords in a text in a single pass (Aho-Corasick automaton).
+ * Keywords are matched case-insensitively and on whole words only: "orc" is found in
+ * "An orc attacks!" but not in "force". Spaces, dashes and underscores are equivalent,
+ * so the keyword "adult-red-dragon" matches "adult red dragon". Matching time depends on
+ * the text length, not on the number of keywords, so scanning every turn for hundreds
+ * of names is cheap.
+ *
+ * @param <T> The type of the value attached to each keyword.
+ */
+public class KeywordMatcher<T> {
+
+    /**
+     * A keyword found in a text.
+     *
+     * @param start The index of the first matched character.
+     * @param end The index after the last matched character.
+     * @param keyword The normalized keyword.
+     * @param value The value attached to the keyword.
+     * @param index The index of the keyword, in construction order (see firstKeyword).
+     * @param <T> The type of the value.
+     */
+    public record Match<T>(int start, int end, String keyword, T value, int index) {
+    }
+
+    private final List<String> keywords = new ArrayList<>();
+    private final List<T> values = new ArrayList<>();
+
+    // Automaton, one entry per state: sorted transition labels and their target states
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    private final int[] output; // Keyword ending exactly at the state, or -1
+    private final int[] outputLink; // Next state on the failure chain with a keyword, or -1
+
+    /**
+     * Builds the matcher. When two keywords are equal once normalized, the first one wins.
+     *
+     * @param keywordValues The keywords and their values; blank keywords are ignored.
+     */
+    public KeywordMatcher(Map<String, T> keywordValues) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(new HashMap<>());
+        outputs.add(-1);
+        for (Map.Entry<String, T> entry : keywordValues.entrySet()) {
+            String keyword = normalize(entry.getKey()).strip();
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new HashMap<>());
+                    outputs.add(-1);
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            if (outputs.get(state) < 0) {
+                outputs.set(state, keywords.size());
+                keywords.add(keyword);
+                values.add(entry.getValue());
+            }
+        }
+
+        int states = trie.size();
+        labels = new char[states][];
+        targets = new int[states][];
+        output = new int[states];
+        for (int state = 0; state < states; state++) {
+            Map<Character, Integer> edges = trie.get(state);
+            char[] chars = new char[edges.size()];
+            int i = 0;
+            for (char c : edges.keySet()) {
+                chars[i++] = c;
+            }
+            Arrays.sort(chars);
+            int[] next = new int[chars.length];
+            for (i = 0; i < chars.length; i++) {
+                next[i] = edges.get(chars[i]);
+            }
+            labels[state] = chars;
+            targets[state] = next;
+            output[state] = outputs.get(state);
+        }
+
+        // Failure links, breadth first so shorter states are linked before longer ones
+        fail = new int[states];
+        outputLink = new int[states];
+        outputLink[0] = -1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            outputLink[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                while (f > 0 && step(f, c) < 0) {
+                    f = fail[f];
+                }
+                int next = step(f, c);
+                fail[child] = Math.max(next, 0);
+                outputLink[child] = output[fail[child]] >= 0
+                        ? fail[child] : outputLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct keywords.
+     *
+     * @return The keyword count.
+     */
+    public int size() {
+        return keywords.size();
+    }
+
+    /**
+     * Finds the keywords of a text. Overlapping matches are resolved leftmost first, then
+     * longest first: with "red dragon" and "dragon", "a red dragon" yields "red dragon" only.
+     *
+     * @param text The text to scan.
+     * @return The matches in text order.
+     */
+    public List<Match<T>> findAll(CharSequence text) {
+        List<Match<T>> found = new ArrayList<>();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = advance(state, text.charAt(i));
+            int s = output[state] >= 0 ? state : outputLink[state];
+            for (; s >= 0; s = outputLink[s]) {
+                int id = output[s];
+                int start = i + 1 - keywords.get(id).length();
+                if (isBoundary(text, start - 1) && isBoundary(text, i + 1)) {
+                    found.add(new Match<>(start, i + 1, keywords.get(id), values.get(id), id));
+                }
+            }
+        }
+
+        found.sort(Comparator.<Match<T>>comparingInt(Match::start)
+                .thenComparing(Comparator.<Match<T>>comparingInt(Match::end).reversed()));
+        List<Match<T>> kept = new ArrayList<>();
+        int covered = 0;
+        for (Match<T> match : found) {
+            if (match.start() >= covered) {
+                kept.add(match);
+                covered = match.end();
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Returns the first keyword, in construction order, found in a text as a whole word.
+     * Unlike findAll, it allocates nothing, for scans made on every request.
+     *
+     * @param text The text to scan.
+     * @return The index of the keyword (see value), or -1 if none is found.
+     */
+    public int firstKeyword(CharSequence text) {
+        int best = -1;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = advance(state, text.charAt(i));
+            int s = output[state] >= 0 ? state : outputLink[state];
+            for (; s >= 0; s = outputLink[s]) {
+                int id = output[s];
+                if ((best < 0 || id < best)
+                        && isBoundary(text, i - keywords.get(id).length())
+                        && isBoundary(text, i + 1)) {
+                    if (id == 0) {
+                        return 0; // Nothing can come first
+                    }
+                    best = id;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the value of a keyword.
+     *
+     * @param index The index of the keyword, as returned by firstKeyword.
+     * @return The value attached to the keyword.
+     */
+    public T value(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Moves the automaton with one character of the text, following the failure links
+     * when the current state has no transition for it.
+     */
+    private int advance(int state, char c) {
+        char normalized = normalize(c);
+        while (state > 0 && step(state, normalized) < 0) {
+            state = fail[state];
+        }
+        int next = step(state, normalized);
+        return next < 0 ? 0 : next;
+    }
+
+    /**
+     * Returns the state reached from a state with a character, or -1 without a transition.
+     */
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return i < 0 ? -1 : targets[state][i];
+    }
+
+    /**
+     * Tells whether the character at an index does not continue a word.
+     */
+    private static boolean isBoundary(CharSequence text, int index) {
+        return index < 0 || index >= text.length()
+                || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    private static String normalize(String keyword) {
+        StringBuilder normalized = new StringBuilder(keyword.length());
+        for (char c : keyword.toCharArray()) {
+            normalized.append(normalize(c));
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Lowercases a character and folds word separators to a space, one character for one,
+     * so match indexes stay valid in the original text.
+     */
+    private static char normalize(char c) {
+        if (c == '-' || c == '_' || Character.isWhitespace(c)) {
+            return ' ';
+        }
+        return Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,77 @@
+package agent;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * LatencyTracker.java
+ * Sliding window of the latest response times of the lore backend.
+ * It provides the delay after which DndLoreTool sends a hedged (duplicate) request:
+ * the observed 95th percentile, so only the slowest 5% of requests are duplicated.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final int minSamples;
+    private final long minDelayNanos;
+    private int next;
+    private int count;
+
+    /**
+     * Creates a tracker.
+     *
+     * @param windowSize Number of latest samples kept.
+     * @param minSamples Number of samples needed before a hedge delay is given.
+     * @param minDelay Lower bound of the hedge delay, so fast backends are not flooded.
+     */
+    public LatencyTracker(int windowSize, int minSamples, Duration minDelay) {
+        if (windowSize <= 0 || minSamples > windowSize) {
+            throw new IllegalArgumentException("minSamples must fit in a positive window");
+        }
+        this.samples = new long[windowSize];
+        this.minSamples = minSamples;
+        this.minDelayNanos = minDelay.toNanos();
+    }
+
+    /**
+     * Records the latency of a successful request.
+     *
+     * @param nanos The time until the response headers, in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Returns the given percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 (exclusive) and 100.
+     * @return The latency in nanoseconds, or -1 without any sample.
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(rank, count - 1))];
+    }
+
+    /**
+     * Returns the delay after which a request still waiting should be hedged.
+     *
+     * @return The 95th percentile (at least the minimal delay), or null while too few
+     *         samples were recorded to tell what "slow" means.
+     */
+    public Duration hedgeDelay() {
+        synchronized (this) {
+            if (count < minSamples) {
+                return null;
+            }
+        }
+        return Duration.ofNanos(Math.max(percentile(95), minDelayNanos));
+    }
+}
@@ -0,0 +1,168 @@
+package agent;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * LoreCache.java
+ * Size-bounded in-memory cache of formatted lore results used by DndLoreTool.
+ * Entries are evicted in least-recently-used order once the capacity is reached,
+ * and expire after a time-to-live. Unknown names are remembered too ("negative caching"),
+ * with a shorter time-to-live, because the model often retries misspelled names.
+ * Hit, miss and eviction counters are kept to measure the latency saved.
+ */
+public class LoreCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long loadCount;
+    private long totalLoadNanos;
+
+    /**
+     * A cached value and the instant (in clock nanoseconds) it stops being valid.
+     */
+    private record Entry(String value, long expiresAt) {
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     *
+     * @param hitCount Number of lookups answered by the cache.
+     * @param missCount Number of lookups that had to go to the API.
+     * @param evictionCount Number of entries dropped to respect the capacity.
+     * @param size Number of entries currently cached.
+     * @param averageLoadNanos Average time spent loading a missing entry.
+     */
+    public record Stats(long hitCount, long missCount, long evictionCount, int size,
+                        long averageLoadNanos) {
+
+        /**
+         * Estimates the time saved by the cache, assuming each hit would have
+         * cost an average load.
+         *
+         * @return The estimated saved time in nanoseconds.
+         */
+        public long estimatedSavedNanos() {
+            return hitCount * averageLoadNanos;
+        }
+    }
+
+    /**
+     * Creates a cache using the system monotonic clock.
+     *
+     * @param maxEntries Maximum number of entries kept in memory.
+     * @param ttl Time-to-live of found entries.
+     * @param negativeTtl Time-to-live of "not found" entries.
+     */
+    public LoreCache(int maxEntries, Duration ttl, Duration negativeTtl) {
+        this(maxEntries, ttl, negativeTtl, System::nanoTime);
+    }
+
+    /**
+     * Creates a cache with a custom clock (used by tests).
+     *
+     * @param maxEntries Maximum number of entries kept in memory.
+     * @param ttl Time-to-live of found entries.
+     * @param negativeTtl Time-to-live of "not found" entries.
+     * @param clock Source of nanosecond timestamps.
+     */
+    LoreCache(int maxEntries, Duration ttl, Duration negativeTtl, LongSupplier clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.clock = clock;
+        // Access-ordered map: the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > LoreCache.this.maxEntries) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache key of a lookup.
+     *
+     * @param category The lore category.
+     * @param slug The normalized name.
+     * @return The cache key.
+     */
+    public static String key(LoreCategoryEnum category, String slug) {
+        return category.path() + "/" + slug;
+    }
+
+    /**
+     * Returns the cached value for the key, or null if absent or expired.
+     *
+     * @param key The cache key.
+     * @return The cached value, or null.
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt() - clock.getAsLong() > 0) {
+            hitCount++;
+            return entry.value();
+        }
+        if (entry != null) {
+            entries.remove(key); // Expired
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Caches a found result.
+     *
+     * @param key The cache key.
+     * @param value The formatted lore.
+     */
+    public synchronized void put(String key, String value) {
+        entries.put(key, new Entry(value, clock.getAsLong() + ttlNanos));
+    }
+
+    /**
+     * Caches a "not found" result with the shorter negative time-to-live.
+     *
+     * @param key The cache key.
+     * @param message The message returned to the narrator.
+     */
+    public synchronized void putNotFound(String key, String message) {
+        entries.put(key, new Entry(message, clock.getAsLong() + negativeTtlNanos));
+    }
+
+    /**
+     * Records the time spent loading a missing entry.
+     *
+     * @param nanos The load duration in nanoseconds.
+     */
+    public synchronized void recordLoad(long nanos) {
+        loadCount++;
+        totalLoadNanos += nanos;
+    }
+
+    /**
+     * Returns a snapshot of the counters.
+     *
+     * @return The cache statistics.
+     */
+    public synchronized Stats stats() {
+        long average = loadCount == 0 ? 0 : totalLoadNanos / loadCount;
+        return new Stats(hitCount, missCount, evictionCount, entries.size(), average);
+    }
+}
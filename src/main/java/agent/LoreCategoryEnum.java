@@ -0,0 +1,75 @@
+package agent;
+
+/**
+ * LoreCategoryEnum.java
+ * Enumeration of the D&D 5E API categories served by DndLoreTool.
+ * Each category knows its API path and the messages returned to the narrator
+ * when a lookup fails, so every lookup path answers with the same wording.
+ */
+public enum LoreCategoryEnum {
+    MONSTER("monsters",
+            "Monster '%s' not found in D&D bestiary.",
+            "Monster '%s' not found.",
+            "Unable to retrieve info about '%s'. Use your D&D creativity."),
+    SPELL("spells",
+            "Spell '%s' not found.",
+            "Spell '%s' not found.",
+            "Unable to retrieve info about spell '%s'."),
+    MAGIC_ITEM("magic-items",
+            "Magic item '%s' not found.",
+            "Magic item '%s' not found.",
+            "Unable to retrieve info about item '%s'.");
+
+    private final String path;
+    private final String unknownMessage;
+    private final String incompleteMessage;
+    private final String unavailableMessage;
+
+    LoreCategoryEnum(String path, String unknownMessage, String incompleteMessage,
+                     String unavailableMessage) {
+        this.path = path;
+        this.unknownMessage = unknownMessage;
+        this.incompleteMessage = incompleteMessage;
+        this.unavailableMessage = unavailableMessage;
+    }
+
+    /**
+     * Returns the API path segment of the category (ex: "monsters").
+     *
+     * @return The path segment.
+     */
+    public String path() {
+        return path;
+    }
+
+    /**
+     * Message returned when the API does not know the requested name.
+     *
+     * @param name The name requested by the narrator.
+     * @return The formatted message.
+     */
+    public String unknown(String name) {
+        return unknownMessage.formatted(name);
+    }
+
+    /**
+     * Message returned when the API answered with a document without a name.
+     *
+     * @param name The name requested by the narrator.
+     * @return The formatted message.
+     */
+    public String incomplete(String name) {
+        return incompleteMessage.formatted(name);
+    }
+
+    /**
+     * Message returned when the API could not be reached.
+     * It lets the agent continue the story without the lore.
+     *
+     * @param name The name requested by the narrator.
+     * @return The formatted message.
+     */
+    public String unavailable(String name) {
+        return unavailableMessage.formatted(name);
+    }
+}
@@ -0,0 +1,161 @@
+package agent;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * LoreElidingChatMemory.java
+ * Chat memory decorator storing each lore entry returned by DndLoreTool only once.
+ * Tool results are kept in the underlying memory as one-line digests tagged with a
+ * reference (ex: "[lore#monster:goblin] D&D MONSTER: Goblin"), while the full entries
+ * are kept in a ledger. When the messages are sent to the model, a digest is expanded
+ * back to its full entry only if it belongs to the current turn, or if the latest
+ * player message names the entity again, and then only once, at its latest occurrence.
+ * The stat blocks are thus no longer re-sent on every turn, which keeps the prompt,
+ * and the prefill time, small.
+ */
+public class LoreElidingChatMemory implements ChatMemory {
+
+    /**
+     * Separator of the entries of a searchLoreBatch result.
+     */
+    private static final String ENTRY_SEPARATOR = "\n---\n";
+
+    private static final Pattern HEADER =
+            Pattern.compile("(?m)^D&D (MONSTER|SPELL|MAGIC ITEM): (.+)$");
+
+    private static final Pattern REFERENCE = Pattern.compile("^\\[lore#([^\\]]+)] ");
+
+    private final ChatMemory delegate;
+    private final Map<String, String> ledger = new HashMap<>(); // Full entry by reference
+    private final Map<String, String> names = new LinkedHashMap<>(); // Entity name to reference
+    private KeywordMatcher<String> nameMatcher;
+
+    /**
+     * Creates the decorator.
+     *
+     * @param delegate The memory holding the conversation, with digests.
+     */
+    public LoreElidingChatMemory(ChatMemory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object id() {
+        return delegate.id();
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof ToolExecutionResultMessage result) {
+            message = ToolExecutionResultMessage.from(result.id(), result.toolName(),
+                    mapEntries(result.text(), this::elide));
+        }
+        delegate.add(message);
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(delegate.messages());
+        int lastUser = -1;
+        for (int i = messages.size() - 1; i >= 0 && lastUser < 0; i--) {
+            if (messages.get(i) instanceof UserMessage) {
+                lastUser = i;
+            }
+        }
+        Set<String> mentioned = lastUser < 0 ? Set.of()
+                : mentionedReferences((UserMessage) messages.get(lastUser));
+
+        // Latest occurrences first, so each entry is expanded once, where it is freshest
+        Set<String> expanded = new HashSet<>();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof ToolExecutionResultMessage result) {
+                boolean currentTurn = i > lastUser;
+                String text = mapEntries(result.text(), entry -> {
+                    Matcher reference = REFERENCE.matcher(entry);
+                    if (!reference.find()) {
+                        return entry;
+                    }
+                    String key = reference.group(1);
+                    String full = ledger.get(key);
+                    if (full != null && (currentTurn || mentioned.contains(key))
+                            && expanded.add(key)) {
+                        return full;
+                    }
+                    return entry;
+                });
+                messages.set(i, ToolExecutionResultMessage.from(result.id(), result.toolName(),
+                        text));
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized void clear() {
+        ledger.clear();
+        names.clear();
+        nameMatcher = null;
+        delegate.clear();
+    }
+
+    /**
+     * Stores a lore entry in the ledger and returns its digest. Entries which are not
+     * lore details (not found, unavailable) are short and kept as they are.
+     */
+    private String elide(String entry) {
+        Matcher header = HEADER.matcher(entry);
+        if (!header.find()) {
+            return entry;
+        }
+        String name = header.group(2).strip();
+        String key = header.group(1).toLowerCase(Locale.ROOT).replace(' ', '-') + ":"
+                + name.toLowerCase(Locale.ROOT);
+        ledger.put(key, entry);
+        if (!names.containsKey(name)) {
+            names.put(name, key);
+            names.putIfAbsent(name + "s", key); // "the goblins"
+            nameMatcher = null;
+        }
+        return "[lore#" + key + "] " + header.group();
+    }
+
+    private Set<String> mentionedReferences(UserMessage message) {
+        if (names.isEmpty() || !message.hasSingleText()) {
+            return Set.of();
+        }
+        if (nameMatcher == null) {
+            nameMatcher = new KeywordMatcher<>(names);
+        }
+        Set<String> references = new HashSet<>();
+        for (KeywordMatcher.Match<String> match : nameMatcher.findAll(message.singleText())) {
+            references.add(match.value());
+        }
+        return references;
+    }
+
+    /**
+     * Applies a mapping to each entry of a tool result (several for a batch lookup).
+     */
+    private static String mapEntries(String text, UnaryOperator<String> mapping) {
+        StringJoiner joined = new StringJoiner(ENTRY_SEPARATOR);
+        for (String entry : text.split(Pattern.quote(ENTRY_SEPARATOR), -1)) {
+            joined.add(mapping.apply(entry));
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package agent;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LoreJsonExtractor.java
+ * Streaming extraction of the few fields the DndLoreTool formatters read.
+ * Monster documents are large (actions, special abilities, proficiencies), but only about
+ * six fields are displayed: the document is read token by token, wanted fields are kept
+ * and everything else is skipped without building a tree. Arrays keep their first
+ * element only, which is all the formatters use.
+ */
+public class LoreJsonExtractor {
+
+    /**
+     * Fields kept per category. "index" is kept for the snapshot import.
+     */
+    private static final Map<LoreCategoryEnum, Set<String>> FIELDS =
+            new EnumMap<>(LoreCategoryEnum.class);
+
+    static {
+        FIELDS.put(LoreCategoryEnum.MONSTER, Set.of("index", "name", "type", "size",
+                "alignment", "challenge_rating", "hit_points", "armor_class"));
+        FIELDS.put(LoreCategoryEnum.SPELL, Set.of("index", "name", "level", "school",
+                "casting_time", "range", "desc"));
+        FIELDS.put(LoreCategoryEnum.MAGIC_ITEM, Set.of("index", "name", "equipment_category",
+                "rarity", "desc"));
+    }
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates an extractor.
+     *
+     * @param objectMapper The mapper providing the parser factory and node factory.
+     */
+    public LoreJsonExtractor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Extracts the wanted fields of a document read from a stream.
+     *
+     * @param category The lore category of the document.
+     * @param in The JSON document stream (not closed).
+     * @return The wanted fields, or an empty object if the document is not an object.
+     * @throws IOException If the stream cannot be read or is not valid JSON.
+     */
+    public ObjectNode extract(LoreCategoryEnum category, InputStream in) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(in)) {
+            parser.nextToken();
+            return extract(category, parser);
+        }
+    }
+
+    /**
+     * Extracts the wanted fields of a document held in a string.
+     *
+     * @param category The lore category of the document.
+     * @param json The JSON document.
+     * @return The wanted fields, or an empty object if the document is not an object.
+     * @throws IOException If the document is not valid JSON.
+     */
+    public ObjectNode extract(LoreCategoryEnum category, String json) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(json)) {
+            parser.nextToken();
+            return extract(category, parser);
+        }
+    }
+
+    /**
+     * Extracts the wanted fields of the object at the current token of the parser.
+     * When it returns, the parser is on the END_OBJECT token of that object.
+     *
+     * @param category The lore category of the document.
+     * @param parser A parser positioned on the START_OBJECT token.
+     * @return The wanted fields, or an empty object if the current token is not an object.
+     * @throws IOException If the document is not valid JSON.
+     */
+    public ObjectNode extract(LoreCategoryEnum category, JsonParser parser) throws IOException {
+        ObjectNode document = objectMapper.createObjectNode();
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return document;
+        }
+        Set<String> fields = FIELDS.get(category);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!fields.contains(field)) {
+                parser.skipChildren(); // No-op for scalars
+            } else if (value == JsonToken.START_ARRAY) {
+                document.set(field, firstElement(parser));
+            } else {
+                document.set(field, parser.readValueAsTree());
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Reads the first element of the array at the current token and skips the others.
+     */
+    private ArrayNode firstElement(JsonParser parser) throws IOException {
+        ArrayNode array = objectMapper.createArrayNode();
+        if (parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode first = parser.readValueAsTree();
+            array.add(first);
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+            }
+        }
+        return array;
+    }
+}
@@ -0,0 +1,187 @@
+package agent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LoreNameResolver.java
+ * Fuzzy resolution of the names asked by the model to the canonical API slugs.
+ * Each category has a trigram index over its known slugs: a requested name is split into
+ * words, each word into padded trigrams, and candidates sharing trigrams are scored with
+ * the Dice coefficient. "red dragon" thus resolves to "adult-red-dragon" and
+ * "magic missle" to "magic-missile" in a single tool call.
+ */
+public class LoreNameResolver {
+
+    /**
+     * Minimal score for a candidate to be used instead of the requested name.
+     */
+    static final double MIN_SCORE = 0.5;
+
+    private final Map<LoreCategoryEnum, TrigramIndex> indexes =
+            new EnumMap<>(LoreCategoryEnum.class);
+
+    /**
+     * The best candidate for a requested name.
+     *
+     * @param slug The canonical slug.
+     * @param score The Dice similarity between the request and the slug, from 0 to 1.
+     */
+    public record Match(String slug, double score) {
+
+        /**
+         * Tells whether the request named the slug exactly.
+         *
+         * @return True for an exact match.
+         */
+        public boolean isExact() {
+            return score >= 1.0;
+        }
+    }
+
+    /**
+     * Adds known slugs to the index of a category.
+     *
+     * @param category The lore category.
+     * @param slugs The canonical slugs (ex: "adult-red-dragon").
+     */
+    public synchronized void addAll(LoreCategoryEnum category, Collection<String> slugs) {
+        TrigramIndex index = indexes.computeIfAbsent(category, c -> new TrigramIndex());
+        for (String slug : slugs) {
+            index.add(slug);
+        }
+    }
+
+    /**
+     * Tells whether any slug is known for the category.
+     *
+     * @param category The lore category.
+     * @return True if the category has an index.
+     */
+    public synchronized boolean isIndexed(LoreCategoryEnum category) {
+        return indexes.containsKey(category) && indexes.get(category).size() > 0;
+    }
+
+    /**
+     * Returns the number of known slugs of a category. Slugs are only ever added, so the
+     * count changes exactly when the slugs do.
+     *
+     * @param category The lore category.
+     * @return The number of known slugs.
+     */
+    public synchronized int size(LoreCategoryEnum category) {
+        TrigramIndex index = indexes.get(category);
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Returns the known slugs of a category.
+     *
+     * @param category The lore category.
+     * @return A copy of the known slugs.
+     */
+    public synchronized List<String> slugs(LoreCategoryEnum category) {
+        TrigramIndex index = indexes.get(category);
+        return index == null ? List.of() : List.copyOf(index.slugs);
+    }
+
+    /**
+     * Resolves a normalized name to the best known slug of the category.
+     *
+     * @param category The lore category.
+     * @param slug The normalized requested name (lowercase, words joined by dashes).
+     * @return The best candidate scoring at least MIN_SCORE, or null if there is none.
+     */
+    public synchronized Match resolve(LoreCategoryEnum category, String slug) {
+        TrigramIndex index = indexes.get(category);
+        if (index == null) {
+            return null;
+        }
+        return index.best(slug);
+    }
+
+    /**
+     * Trigram index of the slugs of one category.
+     */
+    private static final class TrigramIndex {
+        private final List<String> slugs = new ArrayList<>();
+        private final List<Integer> trigramCounts = new ArrayList<>();
+        private final Set<String> known = new HashSet<>();
+        private final Map<String, List<Integer>> postings = new HashMap<>();
+
+        int size() {
+            return slugs.size();
+        }
+
+        void add(String slug) {
+            if (!known.add(slug)) {
+                return;
+            }
+            int id = slugs.size();
+            Set<String> trigrams = trigrams(slug);
+            slugs.add(slug);
+            trigramCounts.add(trigrams.size());
+            for (String trigram : trigrams) {
+                postings.computeIfAbsent(trigram, t -> new ArrayList<>()).add(id);
+            }
+        }
+
+        Match best(String slug) {
+            if (known.contains(slug)) {
+                return new Match(slug, 1.0);
+            }
+            Set<String> query = trigrams(slug);
+            if (query.isEmpty()) {
+                return null;
+            }
+            int[] shared = new int[slugs.size()];
+            for (String trigram : query) {
+                for (int id : postings.getOrDefault(trigram, List.of())) {
+                    shared[id]++;
+                }
+            }
+            int bestId = -1;
+            double bestScore = 0;
+            for (int id = 0; id < shared.length; id++) {
+                if (shared[id] == 0) {
+                    continue;
+                }
+                double score = 2.0 * shared[id] / (query.size() + trigramCounts.get(id));
+                // On a tie, the shorter slug is the more generic answer
+                if (score > bestScore || score == bestScore && bestId >= 0
+                        && slugs.get(id).length() < slugs.get(bestId).length()) {
+                    bestScore = score;
+                    bestId = id;
+                }
+            }
+            if (bestId < 0 || bestScore < MIN_SCORE) {
+                return null;
+            }
+            return new Match(slugs.get(bestId), bestScore);
+        }
+    }
+
+    /**
+     * Splits a slug into words and returns the padded trigrams of every word,
+     * so the order of the words does not matter.
+     */
+    static Set<String> trigrams(String slug) {
+        Set<String> trigrams = new HashSet<>();
+        for (String word : slug.split("[^a-z0-9]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,116 @@
+package agent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LorePrefetcher.java
+ * Speculative warm-up of the lore lookups a turn is likely to need.
+ * The player input and each narration are scanned for known monster, spell and item names,
+ * and the matching lookups are started in the background. When the narrator then calls
+ * searchMonster("goblin"), the answer is already cached or in flight and the tool call
+ * returns at cache speed instead of network speed.
+ */
+public class LorePrefetcher {
+
+    /**
+     * Maximum number of lookups started by one scan, so a long text does not
+     * flood the API with guesses.
+     */
+    static final int MAX_PREFETCHES = 8;
+
+    /**
+     * Slugs that are also everyday words: "light", "command" or "shield" in a sentence is
+     * rarely about the spell, so they are not guessed. The narrator still looks them up
+     * when it needs them.
+     */
+    static final Set<String> COMMON_WORDS = Set.of(
+            "alarm", "bane", "bless", "command", "confusion", "darkness", "daylight", "fear",
+            "fly", "guidance", "harm", "haste", "heal", "identify", "jump", "knock", "light",
+            "mending", "message", "resistance", "sanctuary", "sending", "shield", "silence",
+            "sleep", "slow", "suggestion", "wish",
+            "guard", "noble", "priest", "scout", "spy", "thug", "veteran");
+
+    private final DndLoreTool loreTool;
+    private KeywordMatcher<List<Target>> matcher;
+    private int indexedSlugs = -1;
+
+    /**
+     * A lore entry to prefetch.
+     *
+     * @param category The lore category.
+     * @param slug The canonical slug.
+     */
+    record Target(LoreCategoryEnum category, String slug) {
+    }
+
+    /**
+     * Creates a prefetcher warming the lookups of a lore tool.
+     *
+     * @param loreTool The tool whose cache is warmed, shared with the narrator.
+     */
+    public LorePrefetcher(DndLoreTool loreTool) {
+        this.loreTool = loreTool;
+    }
+
+    /**
+     * Starts the lookups of the known lore names found in a text. It does not wait for them.
+     *
+     * @param text The player input or a narration; null or blank texts are ignored.
+     * @return The cache keys of the lookups started, in text order.
+     */
+    public List<String> prefetch(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        Set<Target> found = new LinkedHashSet<>();
+        for (KeywordMatcher.Match<List<Target>> match : matcher().findAll(text)) {
+            found.addAll(match.value());
+        }
+
+        List<String> started = new ArrayList<>();
+        for (Target target : found) {
+            if (started.size() >= MAX_PREFETCHES) {
+                break;
+            }
+            loreTool.lookupAsync(target.category(), target.slug());
+            started.add(LoreCache.key(target.category(), target.slug()));
+        }
+        return started;
+    }
+
+    /**
+     * Returns the matcher over the known slugs, rebuilt only when the name indexes grew.
+     * Monster names also match their plural ("goblins"); common words match nothing.
+     */
+    private synchronized KeywordMatcher<List<Target>> matcher() {
+        int count = 0;
+        for (LoreCategoryEnum category : LoreCategoryEnum.values()) {
+            count += loreTool.knownSlugCount(category);
+        }
+        if (matcher != null && count == indexedSlugs) {
+            return matcher;
+        }
+
+        Map<String, List<Target>> keywords = new HashMap<>();
+        for (LoreCategoryEnum category : LoreCategoryEnum.values()) {
+            for (String slug : loreTool.knownSlugs(category)) {
+                if (COMMON_WORDS.contains(slug)) {
+                    continue;
+                }
+                Target target = new Target(category, slug);
+                keywords.computeIfAbsent(slug, k -> new ArrayList<>()).add(target);
+                if (category == LoreCategoryEnum.MONSTER) {
+                    keywords.computeIfAbsent(slug + "s", k -> new ArrayList<>()).add(target);
+                }
+            }
+        }
+        matcher = new KeywordMatcher<>(keywords);
+        indexedSlugs = count;
+        return matcher;
+    }
+}
@@ -0,0 +1,110 @@
+package agent;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * LoreSnapshotImporter.java
+ * Imports an offline snapshot of the D&D 5E API into a LoreStore, without any network access.
+ * For each category, the snapshot directory may hold a JSON array file named after the
+ * category path (ex: "monsters.json") and/or a sub-directory with one document per file
+ * (ex: "monsters/goblin.json"). Documents are stored trimmed to the displayed fields
+ * (see LoreJsonExtractor) and never expire, so DndLoreTool can serve every lookup
+ * from the store in offline mode.
+ */
+public class LoreSnapshotImporter {
+
+    private static final String JSON_EXTENSION = ".json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LoreJsonExtractor extractor = new LoreJsonExtractor(objectMapper);
+    private final LoreStore store;
+
+    /**
+     * Creates an importer writing into the given store.
+     *
+     * @param store The store receiving the documents.
+     */
+    public LoreSnapshotImporter(LoreStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Imports every category found in the snapshot directory, then compacts the store.
+     *
+     * @param snapshotDir The snapshot directory.
+     * @return The number of imported documents.
+     * @throws IOException If the snapshot cannot be read or the store written.
+     */
+    public int importSnapshot(Path snapshotDir) throws IOException {
+        if (!Files.isDirectory(snapshotDir)) {
+            throw new IOException("Snapshot directory not found: " + snapshotDir);
+        }
+        Map<String, String> documents = new LinkedHashMap<>();
+        for (LoreCategoryEnum category : LoreCategoryEnum.values()) {
+            Path arrayFile = snapshotDir.resolve(category.path() + JSON_EXTENSION);
+            if (Files.isRegularFile(arrayFile)) {
+                // The array is streamed: one document at a time, trimmed while read
+                try (JsonParser parser = objectMapper.createParser(arrayFile.toFile())) {
+                    if (parser.nextToken() == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            addDocument(documents, category, extractor.extract(category, parser),
+                                    null);
+                        }
+                    }
+                }
+            }
+            Path documentDir = snapshotDir.resolve(category.path());
+            if (Files.isDirectory(documentDir)) {
+                for (Path file : listJsonFiles(documentDir)) {
+                    String fileName = file.getFileName().toString();
+                    String slug = fileName.substring(0, fileName.length()
+                            - JSON_EXTENSION.length());
+                    try (InputStream in = Files.newInputStream(file)) {
+                        addDocument(documents, category, extractor.extract(category, in), slug);
+                    }
+                }
+            }
+        }
+        store.putAll(documents, null);
+        store.compact();
+        return documents.size();
+    }
+
+    /**
+     * Adds one document under its API index (or the file name when it has none).
+     * Documents without a name are not lore documents and are skipped.
+     */
+    private void addDocument(Map<String, String> documents, LoreCategoryEnum category,
+                             JsonNode document, String fallbackSlug) throws IOException {
+        if (document == null || !document.has("name")) {
+            return;
+        }
+        String slug = document.has("index") ? document.get("index").asText() : fallbackSlug;
+        if (slug == null || slug.isBlank()) {
+            return;
+        }
+        documents.put(LoreCache.key(category, slug), objectMapper.writeValueAsString(document));
+    }
+
+    private static List<Path> listJsonFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> jsonFiles = new ArrayList<>();
+            files.filter(file -> file.getFileName().toString().endsWith(JSON_EXTENSION))
+                    .sorted()
+                    .forEach(jsonFiles::add);
+            return jsonFiles;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package agent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * LoreStore.java
+ * Persistent key/value store keeping fetched lore documents between runs.
+ * The file is an append-only log of records; an in-memory index maps each key
+ * to the offset of its latest record. At startup the file is memory-mapped and
+ * scanned once to rebuild the index, so a warm start answers without the network.
+ *
+ * <p>Record layout: payload length (int), CRC32 of the payload (int), then the payload:
+ * expiration in epoch milliseconds (long, 0 = never), key length (short), key and value
+ * in UTF-8. A record whose CRC does not match (torn write after a crash) ends the log:
+ * the file is truncated there. Superseded and expired records are dropped by compaction.
+ */
+public class LoreStore implements Closeable {
+
+    private static final int MAGIC = 0x4C4F5245; // "LORE"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+    private static final long COMPACTION_MIN_WASTE = 64 * 1024;
+
+    private final Path path;
+    private final Clock clock;
+    private final Map<String, IndexEntry> index = new HashMap<>();
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+
+    /**
+     * Location of the latest record of a key.
+     */
+    private record IndexEntry(long offset, int length, long expiresAt) {
+    }
+
+    /**
+     * Opens (or creates) a store file using the system clock.
+     *
+     * @param path The store file.
+     * @throws IOException If the file cannot be opened or is not a lore store.
+     */
+    public LoreStore(Path path) throws IOException {
+        this(path, Clock.systemUTC());
+    }
+
+    /**
+     * Opens (or creates) a store file with a custom clock (used by tests).
+     *
+     * @param path The store file.
+     * @param clock Source of the current time for expirations.
+     * @throws IOException If the file cannot be opened or is not a lore store.
+     */
+    LoreStore(Path path, Clock clock) throws IOException {
+        this.path = path;
+        this.clock = clock;
+        open();
+        compactIfWasteful();
+    }
+
+    /**
+     * Returns the value stored for the key, or null if absent or expired.
+     *
+     * @param key The key.
+     * @return The stored value, or null.
+     * @throws IOException If the file cannot be read.
+     */
+    public synchronized String get(String key) throws IOException {
+        IndexEntry entry = index.get(key);
+        if (entry == null || isExpired(entry.expiresAt())) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(entry.length());
+        readFully(payload, entry.offset() + RECORD_HEADER_SIZE);
+        payload.flip();
+        payload.position(Long.BYTES);
+        int keyLength = payload.getShort() & 0xFFFF;
+        payload.position(payload.position() + keyLength);
+        return StandardCharsets.UTF_8.decode(payload).toString();
+    }
+
+    /**
+     * Stores a value. The record is flushed to disk before the method returns.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @param ttl Time-to-live of the entry, or null to keep it forever.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void put(String key, String value, Duration ttl) throws IOException {
+        putAll(Map.of(key, value), ttl);
+    }
+
+    /**
+     * Stores several values with a single flush to disk, as used by bulk imports.
+     *
+     * @param values The values by key.
+     * @param ttl Time-to-live of the entries, or null to keep them forever.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void putAll(Map<String, String> values, Duration ttl) throws IOException {
+        long expiresAt = ttl == null ? 0 : clock.millis() + ttl.toMillis();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            ByteBuffer record = encode(value.getKey(), value.getValue(), expiresAt);
+            int length = record.remaining() - RECORD_HEADER_SIZE;
+            long offset = size;
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            size = offset + RECORD_HEADER_SIZE + length;
+            index(value.getKey(), new IndexEntry(offset, length, expiresAt));
+        }
+        channel.force(false);
+        compactIfWasteful();
+    }
+
+    /**
+     * Returns the live keys starting with the prefix.
+     *
+     * @param prefix The key prefix (ex: "monsters/").
+     * @return The matching keys.
+     */
+    public synchronized List<String> keys(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+            if (entry.getKey().startsWith(prefix) && !isExpired(entry.getValue().expiresAt())) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of keys in the index, including expired ones not yet compacted.
+     *
+     * @return The number of keys.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Rewrites the file with only the live records, then atomically replaces it.
+     *
+     * @throws IOException If the file cannot be rewritten.
+     */
+    public synchronized void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        Map<String, IndexEntry> compacted = new HashMap<>();
+        long offset = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC));
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                IndexEntry live = entry.getValue();
+                if (isExpired(live.expiresAt())) {
+                    continue;
+                }
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + live.length());
+                readFully(record, live.offset());
+                record.flip();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+                compacted.put(entry.getKey(), new IndexEntry(offset, live.length(),
+                        live.expiresAt()));
+                offset += RECORD_HEADER_SIZE + live.length();
+            }
+            out.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e; // The current file and channel are untouched
+        }
+        // The old channel still points to the replaced file: reopen on the new one
+        FileChannel old = channel;
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        old.close();
+        index.clear();
+        index.putAll(compacted);
+        size = offset;
+        liveBytes = offset - HEADER_SIZE;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Opens the file and rebuilds the index from a memory-mapped scan of the log.
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC), 0);
+            channel.force(true);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        if (map.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a lore store: " + path);
+        }
+        long offset = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            int length = map.getInt(Math.toIntExact(offset));
+            int checksum = map.getInt(Math.toIntExact(offset + Integer.BYTES));
+            if (length < Long.BYTES + Short.BYTES || length > MAX_PAYLOAD_SIZE
+                    || offset + RECORD_HEADER_SIZE + length > fileSize) {
+                break; // Torn write at the end of the log
+            }
+            ByteBuffer payload = map.slice(Math.toIntExact(offset + RECORD_HEADER_SIZE), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break; // Corrupted record: everything after it is discarded
+            }
+            long expiresAt = payload.getLong(0);
+            int keyLength = payload.getShort(Long.BYTES) & 0xFFFF;
+            byte[] key = new byte[keyLength];
+            payload.get(Long.BYTES + Short.BYTES, key);
+            index(new String(key, StandardCharsets.UTF_8),
+                    new IndexEntry(offset, length, expiresAt));
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        if (offset < fileSize) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+        size = offset;
+    }
+
+    /**
+     * Points the key to its new record and keeps the live byte count up to date.
+     */
+    private void index(String key, IndexEntry entry) {
+        IndexEntry previous = index.put(key, entry);
+        if (previous != null) {
+            liveBytes -= RECORD_HEADER_SIZE + previous.length();
+        }
+        liveBytes += RECORD_HEADER_SIZE + entry.length();
+    }
+
+    /**
+     * Compacts the file when more than half of it is superseded records.
+     */
+    private void compactIfWasteful() throws IOException {
+        long waste = size - HEADER_SIZE - liveBytes;
+        if (waste > COMPACTION_MIN_WASTE && waste > liveBytes) {
+            compact();
+        }
+    }
+
+    private boolean isExpired(long expiresAt) {
+        return expiresAt != 0 && expiresAt <= clock.millis();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of lore store: " + path);
+            }
+        }
+    }
+
+    private static ByteBuffer encode(String key, String value, long expiresAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Key too long: " + key);
+        }
+        int length = Long.BYTES + Short.BYTES + keyBytes.length + valueBytes.length;
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Value too large for key: " + key);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        record.putLong(expiresAt).putShort((short) keyBytes.length)
+                .put(keyBytes).put(valueBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+}
@@ -1,5 +1,19 @@
 package agent;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 /**
  * MasterAgent class that coordinates between different specialized agents
@@ -9,25 +23,391 @@ package agent;
  */
 public class MasterAgent {
 
-    private final IntentAnalyzer intentAnalyzer = new IntentAnalyzer(); // Analyze user intent
-    private final StoryAgent storyAgent = new StoryAgent(); // Storytelling agent
-    private final EntityAgent entityAgent = new EntityAgent(); // Entity generation agent
+    private static final String NOT_UNDERSTOOD = "I did not understand your request.";
+
+    /**
+     * Answer of a turn that produced nothing before its deadline.
+     */
+    static final String TIMEOUT_RESPONSE =
+            "The narrator lost the thread of the tale... Try again in a moment.";
+
+    /**
+     * Appended to the narration cut short by the deadline.
+     */
+    static final String CUT_SHORT_MARK = " [...]";
+
+    private static final Duration DEFAULT_TURN_DEADLINE = Duration.ofSeconds(90);
+
+    /**
+     * Runs the turns of concurrent sessions, one virtual thread per turn when available.
+     */
+    private static final ExecutorService SESSION_EXECUTOR = VirtualThreads.newExecutor("session");
+
+    /**
+     * Fires the deadlines of the turns. A turn over early cancels its deadline, which
+     * then leaves the queue at once.
+     */
+    private static final ScheduledThreadPoolExecutor DEADLINE_TIMER = deadlineTimer();
+
+    /**
+     * Builds the agents and loads the intent classifier in parallel at start-up.
+     */
+    private static final ExecutorService STARTUP_EXECUTOR = VirtualThreads.newExecutor("startup");
+
+    private final CompletableFuture<EmbeddingIntentClassifier> intentClassifier;
+    private final IntentAnalyzer intentAnalyzer; // Analyze user intent
+    private final DndLoreTool loreTool; // Lore lookups shared by the agents
+    private final ModelTiers tiers; // Models, hosts and admission
+    private final StoryAgent storyAgent; // Storytelling agent
+    private final LorePrefetcher lorePrefetcher; // Lore warm-up
+    private final EntityAgent entityAgent; // Entity generation agent
+    private final Duration turnDeadline; // Longest streamed turn, null for none
+
+    /**
+     * Creates the agents, in parallel: the lore tool opens its store while the story
+     * agent prepares its models and the entity agent is built. The embedding intent
+     * classifier loads in the background: until it is ready, intents are recognized by
+     * keywords only.
+     */
+    public MasterAgent() {
+        intentClassifier = CompletableFuture.supplyAsync(EmbeddingIntentClassifier::local,
+                STARTUP_EXECUTOR).exceptionally(error -> null); // Keywords only
+        intentAnalyzer = new IntentAnalyzer(IntentAnalyzer.DEFAULT_KEYWORDS, intentClassifier);
+        tiers = ModelTiers.fromEnv();
+        CompletableFuture<DndLoreTool> lore = CompletableFuture.supplyAsync(DndLoreTool::new,
+                STARTUP_EXECUTOR);
+        CompletableFuture<StoryAgent> story = CompletableFuture.supplyAsync(
+                () -> new StoryAgent(lore, tiers), STARTUP_EXECUTOR);
+        CompletableFuture<EntityAgent> entity = CompletableFuture.supplyAsync(
+                () -> new EntityAgent(tiers), STARTUP_EXECUTOR);
+        turnDeadline = EnvVarUtils.getEnvDuration("APP_TURN_DEADLINE_MS", DEFAULT_TURN_DEADLINE);
+        loreTool = await(lore);
+        storyAgent = await(story);
+        entityAgent = await(entity);
+        lorePrefetcher = new LorePrefetcher(loreTool);
+    }
+
+    /**
+     * Waits for a future, rethrowing its failure as is.
+     *
+     * @param future The future, of a component built at start-up or of a turn.
+     * @param <T> The type of the result.
+     * @return The result.
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Creates an agent on a background thread and starts its warm-up, so the caller can
+     * print its banner meanwhile.
+     *
+     * @return A future of the agent, completed before the warm-up is over.
+     */
+    public static CompletableFuture<MasterAgent> startAsync() {
+        CompletableFuture<MasterAgent> starting = CompletableFuture.supplyAsync(
+                MasterAgent::new, STARTUP_EXECUTOR);
+        starting.thenAccept(MasterAgent::warmUp);
+        return starting;
+    }
+
+    /**
+     * Prepares the first turn in the background: loads the models into the memory of the
+     * Ollama hosts, opens the connection to the lore API and waits for the intent
+     * classifier. Failures are only reported; the first turn then pays for them.
+     *
+     * @return A future completed once the warm-up is over, whatever its outcome.
+     */
+    public CompletableFuture<Void> warmUp() {
+        return CompletableFuture.allOf(tiers.warmUp(), loreTool.warmUp(), intentClassifier);
+    }
 
     /**
      * Processes the user input by analyzing its intent and delegating the task
-     * to the appropriate agent.
+     * to the appropriate agent. The turn runs on the caller's thread, which it holds
+     * until the model answers: it is bounded only by the admission deadline of the
+     * model and the timeout of its client, not by APP_TURN_DEADLINE_MS. Callers which
+     * need the turn deadline, like the console, use processInputStreaming.
      *
      * @param input The user input as a String.
      * @return A response generated by the appropriate agent or a fallback message
      *         if the intent is unrecognized.
      */
     public String processInput(String input) {
+        return process(input, storyAgent::narrate);
+    }
+
+    /**
+     * Processes the input of one player session like processInput. The story is narrated
+     * with the memory of that session, so several players can be served by one agent.
+     * The turn is bounded by the deadline set by APP_TURN_DEADLINE_MS, like a streamed
+     * one.
+     *
+     * @param sessionId The session of the player.
+     * @param input The user input as a String.
+     * @return A response generated by the appropriate agent or a fallback message
+     *         if the intent is unrecognized.
+     */
+    public String processInput(String sessionId, String input) {
+        return await(processInputAsync(sessionId, input));
+    }
+
+    /**
+     * Processes the input of one player session without blocking the caller, so many
+     * sessions can wait for the model at the same time. The turn runs like a streamed
+     * one whose tokens nobody reads: it is bounded by the deadline set by
+     * APP_TURN_DEADLINE_MS, and cancelling the future frees its model slot at once.
+     *
+     * @param sessionId The session of the player.
+     * @param input The user input as a String.
+     * @return A future of the response, cancellable.
+     */
+    public CompletableFuture<String> processInputAsync(String sessionId, String input) {
+        return processInputStreaming(sessionId, input, token -> { }, turnDeadline);
+    }
+
+    /**
+     * Starts the adventure of the default session, at once when a pre-generated opening
+     * scene is ready.
+     *
+     * @param onToken Receives the tokens of the opening scene in order.
+     * @return A future of the whole opening scene.
+     */
+    public CompletableFuture<String> startAdventure(Consumer<String> onToken) {
+        return withDeadline(turnDeadline, onToken, tokens -> {
+            CompletableFuture<String> scene = storyAgent.startAdventure(
+                    SessionRegistry.DEFAULT_SESSION, tokens);
+            scene.thenAccept(lorePrefetcher::prefetch);
+            return scene;
+        });
+    }
+
+    /**
+     * Returns the metrics of the model admission control shared by the agents.
+     *
+     * @return The queue depths, counters and wait times of the scheduler of each model
+     *         tier.
+     */
+    public Map<ModelTiers.Tier, InferenceScheduler.Stats> inferenceStats() {
+        return tiers.stats();
+    }
+
+    /**
+     * Returns the number of narrations sent to the small model because the large one
+     * was overloaded.
+     *
+     * @return The number of fallbacks since start.
+     */
+    public long tierFallbackCount() {
+        return tiers.fallbackCount();
+    }
+
+    /**
+     * Returns the statistics of the lore cache the agents share.
+     *
+     * @return A snapshot of the cache counters.
+     */
+    public LoreCache.Stats loreCacheStats() {
+        return loreTool.cacheStats();
+    }
+
+    /**
+     * Returns the state of the Ollama hosts the agents share.
+     *
+     * @return The health and requests in flight of each backend.
+     */
+    public List<OllamaBackendPool.BackendStatus> backendStatus() {
+        return tiers.backends().status();
+    }
+
+    private String process(String input, UnaryOperator<String> narration) {
         IntentTypeEnum type = intentAnalyzer.analyzeIntent(input); // Determine intent type
 
         return switch (type) { // Delegate to appropriate agent based on intent
-            case CONTINUE_STORY -> storyAgent.narrate(input);
+            case CONTINUE_STORY -> narrate(input, narration);
             case CREATE_ENTITY -> entityAgent.generateEntity(input);
-            default -> "I did not understand your request."; // Fallback for unrecognized intents
+            default -> NOT_UNDERSTOOD; // Fallback for unrecognized intents
+        };
+    }
+
+    /**
+     * Processes the user input like processInput, but streams the narration: tokens are
+     * handed to the caller as the model produces them. Other intents, which are not
+     * streamed, deliver their whole response as a single token.
+     * The turn is bounded by the deadline set by APP_TURN_DEADLINE_MS (90 s by default):
+     * see the overload taking a deadline.
+     *
+     * @param input The user input as a String.
+     * @param onToken Receives the response tokens in order.
+     * @return A future of the whole response, cancellable.
+     */
+    public CompletableFuture<String> processInputStreaming(String input,
+                                                           Consumer<String> onToken) {
+        return processStreaming(input, onToken, turnDeadline, storyAgent::narrateStreaming);
+    }
+
+    /**
+     * Processes the input of one player session like processInputStreaming.
+     *
+     * @param sessionId The session of the player.
+     * @param input The user input as a String.
+     * @param onToken Receives the response tokens in order.
+     * @return A future of the whole response, cancellable.
+     */
+    public CompletableFuture<String> processInputStreaming(String sessionId, String input,
+                                                           Consumer<String> onToken) {
+        return processInputStreaming(sessionId, input, onToken, turnDeadline);
+    }
+
+    /**
+     * Processes the input of one player session like processInputStreaming, within the
+     * given deadline. The future is returned at once; nothing blocks the caller.
+     * At the deadline, the turn ends with what was streamed so far, marked as cut short,
+     * or with an apology when nothing was; the generation is then stopped.
+     * Cancelling the future stops the turn too, freeing its model slot and its thread:
+     * the narration streamed until then stays in the memory of the session.
+     *
+     * @param sessionId The session of the player.
+     * @param input The user input as a String.
+     * @param onToken Receives the response tokens in order.
+     * @param deadline The longest time the turn may take, or null for no limit.
+     * @return A future of the whole response, cancellable.
+     */
+    public CompletableFuture<String> processInputStreaming(String sessionId, String input,
+                                                           Consumer<String> onToken,
+                                                           Duration deadline) {
+        return processStreaming(input, onToken, deadline,
+                (in, tokens) -> storyAgent.narrateStreaming(sessionId, in, tokens));
+    }
+
+    private CompletableFuture<String> processStreaming(
+            String input, Consumer<String> onToken, Duration deadline,
+            BiFunction<String, Consumer<String>, CompletableFuture<String>> narration) {
+        IntentTypeEnum type = intentAnalyzer.analyzeIntent(input); // Determine intent type
+
+        if (type == IntentTypeEnum.CONTINUE_STORY) {
+            lorePrefetcher.prefetch(input);
+            return withDeadline(deadline, onToken, tokens -> {
+                CompletableFuture<String> response = narration.apply(input, tokens);
+                // Not chained: the caller must hold the narration itself to cancel it
+                response.thenAccept(lorePrefetcher::prefetch);
+                return response;
+            });
+        }
+        if (type == IntentTypeEnum.CREATE_ENTITY) {
+            // Not streamed, but off the caller's thread, bounded, and cancellable: the end
+            // of the turn frees the model slot of the generation and interrupts it
+            return withDeadline(deadline, onToken, tokens -> {
+                AbortSignal signal = new AbortSignal();
+                CompletableFuture<String> entity = CompletableFuture
+                        .supplyAsync(() -> AbortSignal.withSignal(signal,
+                                () -> entityAgent.generateEntity(input)), SESSION_EXECUTOR)
+                        .thenApply(response -> {
+                            tokens.accept(response);
+                            return response;
+                        });
+                entity.whenComplete((response, error) -> signal.abort());
+                return entity;
+            });
+        }
+        onToken.accept(NOT_UNDERSTOOD);
+        return CompletableFuture.completedFuture(NOT_UNDERSTOOD);
+    }
+
+    /**
+     * Bounds a streamed turn. At the deadline, the returned future completes with the
+     * tokens delivered so far and the cut short mark, also delivered, or with the
+     * timeout response when there were none; the turn is then cancelled and its late
+     * tokens are dropped. Cancelling the returned future cancels the turn.
+     *
+     * @param deadline The longest time the turn may take, or null for no limit.
+     * @param onToken Receives the response tokens in order.
+     * @param turn Starts the turn, streaming to the given consumer.
+     * @return A future of the whole response.
+     */
+    private static CompletableFuture<String> withDeadline(
+            Duration deadline, Consumer<String> onToken,
+            Function<Consumer<String>, CompletableFuture<String>> turn) {
+        if (deadline == null) {
+            return turn.apply(onToken);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicBoolean settled = new AtomicBoolean(); // By the turn or by the deadline
+        StringBuilder delivered = new StringBuilder();
+        CompletableFuture<String> inner = turn.apply(token -> {
+            synchronized (delivered) {
+                if (!settled.get() && !result.isDone()) {
+                    delivered.append(token);
+                    onToken.accept(token);
+                }
+            }
+        });
+        inner.whenComplete((response, error) -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (error == null) {
+                result.complete(response);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        Runnable cutShort = () -> {
+            String tail;
+            String partial;
+            synchronized (delivered) {
+                if (result.isDone() || !settled.compareAndSet(false, true)) {
+                    return;
+                }
+                tail = delivered.length() == 0 ? TIMEOUT_RESPONSE : CUT_SHORT_MARK;
+                partial = delivered + tail;
+            }
+            // Outside the lock, as the turn may hold its own: later tokens are dropped
+            System.err.println("[WARNING] Turn cut short after " + deadline.toMillis() + " ms");
+            onToken.accept(tail);
+            result.complete(partial);
+            inner.cancel(true);
         };
+        // The timer thread only hands the cut over, as the tail may go to a slow client
+        ScheduledFuture<?> timer = DEADLINE_TIMER.schedule(
+                () -> SESSION_EXECUTOR.execute(cutShort), deadline.toMillis(),
+                TimeUnit.MILLISECONDS);
+        result.whenComplete((response, error) -> {
+            timer.cancel(false);
+            if (result.isCancelled()) {
+                inner.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static ScheduledThreadPoolExecutor deadlineTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "turn-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Narrates the story, warming the lore lookups around the call: the names in the
+     * input are likely to be searched during this turn, those in the narration during
+     * the next one.
+     *
+     * @param input The user input as a String.
+     * @param narration The narration of the player's session.
+     * @return The narrative response.
+     */
+    private String narrate(String input, UnaryOperator<String> narration) {
+        lorePrefetcher.prefetch(input);
+        String response = narration.apply(input);
+        lorePrefetcher.prefetch(response);
+        return response;
     }
-}
\ No newline at end of file
+}
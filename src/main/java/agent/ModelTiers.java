@@ -0,0 +1,329 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ModelTiers.java
+ * Chooses the model of each task. The large model (APP_MODEL) narrates; the cheap tasks,
+ * entity JSON and memory summaries, use the small model (APP_SMALL_MODEL, the large one
+ * when unset). Ollama serves each model with its own parallel slots, so each tier has
+ * its own InferenceScheduler. When the estimated queue wait of the large model exceeds
+ * the latency target (APP_LATENCY_TARGET_MS), narrations fall back to the small model
+ * until the queue drains, so players keep a short answer time under load.
+ */
+public class ModelTiers {
+
+    /**
+     * Queue wait of the large model above which narrations use the small one, when
+     * APP_LATENCY_TARGET_MS is unset.
+     */
+    private static final Duration DEFAULT_LATENCY_TARGET = Duration.ofSeconds(10);
+
+    /**
+     * How long Ollama keeps the preloaded models in memory when APP_OLLAMA_KEEP_ALIVE is
+     * unset.
+     */
+    private static final String DEFAULT_KEEP_ALIVE = "30m";
+
+    /**
+     * The model tiers.
+     */
+    public enum Tier {
+        /** The model of the narration. */
+        LARGE,
+        /** The fast model of the cheap tasks. */
+        SMALL
+    }
+
+    /**
+     * Builds the client of one model on one backend.
+     *
+     * @param <M> The type of the model client.
+     */
+    @FunctionalInterface
+    public interface ModelFactory<M> {
+
+        /**
+         * Builds a model client.
+         *
+         * @param baseUrl The base URL of the Ollama backend.
+         * @param modelName The name of the model on the backend.
+         * @return The model client.
+         */
+        M create(String baseUrl, String modelName);
+    }
+
+    private final OllamaBackendPool backends;
+    private final String largeModel;
+    private final String smallModel;
+    private final InferenceScheduler largeScheduler;
+    private final InferenceScheduler smallScheduler;
+    private final long latencyTargetNanos;
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    /**
+     * Creates the tiers. With the same model name for both tiers, a single scheduler
+     * must be given for both and narrations never fall back.
+     *
+     * @param backends The Ollama hosts the requests are routed to.
+     * @param largeModel The name of the narration model.
+     * @param smallModel The name of the model of the cheap tasks.
+     * @param largeScheduler The admission control of the large model.
+     * @param smallScheduler The admission control of the small model.
+     * @param latencyTarget The queue wait of the large model above which narrations
+     *                      use the small model.
+     */
+    public ModelTiers(OllamaBackendPool backends, String largeModel, String smallModel,
+                      InferenceScheduler largeScheduler, InferenceScheduler smallScheduler,
+                      Duration latencyTarget) {
+        this.backends = backends;
+        this.largeModel = largeModel;
+        this.smallModel = smallModel;
+        this.largeScheduler = largeScheduler;
+        this.smallScheduler = smallScheduler;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+    }
+
+    /**
+     * Creates the tiers configured by the APP_URL, APP_MODEL, APP_SMALL_MODEL and
+     * APP_LATENCY_TARGET_MS environment variables.
+     *
+     * @return The tiers.
+     */
+    public static ModelTiers fromEnv() {
+        OllamaBackendPool backends = OllamaBackendPool.fromEnv();
+        String largeModel = EnvVarUtils.getEnvVar("APP_MODEL");
+        String smallModel = EnvVarUtils.getEnvVar("APP_SMALL_MODEL");
+        if (smallModel == null || smallModel.isBlank()) {
+            smallModel = largeModel;
+        }
+        InferenceScheduler largeScheduler = InferenceScheduler.fromEnv(backends.size());
+        InferenceScheduler smallScheduler = Objects.equals(largeModel, smallModel)
+                ? largeScheduler : InferenceScheduler.fromEnv(backends.size());
+        return new ModelTiers(backends, largeModel, smallModel, largeScheduler,
+                smallScheduler,
+                EnvVarUtils.getEnvDuration("APP_LATENCY_TARGET_MS", DEFAULT_LATENCY_TARGET));
+    }
+
+    /**
+     * Returns the Ollama hosts the models run on.
+     *
+     * @return The backend pool.
+     */
+    public OllamaBackendPool backends() {
+        return backends;
+    }
+
+    /**
+     * Creates the chat model of a task on a given tier, routed across the backends and
+     * scheduled with the task's priority.
+     *
+     * @param tier The tier of the model.
+     * @param priority The priority class of the requests.
+     * @param maxWait The longest time a request may wait for a slot.
+     * @param factory Builds the model client of one backend.
+     * @return The chat model.
+     */
+    public ChatLanguageModel chatModel(Tier tier, InferenceScheduler.Priority priority,
+                                       Duration maxWait,
+                                       ModelFactory<ChatLanguageModel> factory) {
+        String modelName = tier == Tier.LARGE ? largeModel : smallModel;
+        return new ScheduledChatModel(
+                backends.chatModel(url -> factory.create(url, modelName)),
+                schedulerOf(tier), priority, maxWait);
+    }
+
+    /**
+     * Creates the interactive narration model: the large model, or the small one while
+     * the large one is overloaded.
+     *
+     * @param maxWait The longest time a request may wait for a slot.
+     * @param factory Builds the model client of one backend.
+     * @return The chat model.
+     */
+    public ChatLanguageModel narrationModel(Duration maxWait,
+                                            ModelFactory<ChatLanguageModel> factory) {
+        ChatLanguageModel large = chatModel(Tier.LARGE, InferenceScheduler.Priority.INTERACTIVE,
+                maxWait, factory);
+        if (!hasFallback()) {
+            return large;
+        }
+        return new FallbackChatModel(large, chatModel(Tier.SMALL,
+                InferenceScheduler.Priority.INTERACTIVE, maxWait, factory));
+    }
+
+    /**
+     * Creates the streaming narration model, falling back like narrationModel.
+     *
+     * @param maxWait The longest time a request may wait for a slot.
+     * @param factory Builds the streaming model client of one backend.
+     * @return The streaming chat model.
+     */
+    public StreamingChatLanguageModel streamingNarrationModel(
+            Duration maxWait, ModelFactory<StreamingChatLanguageModel> factory) {
+        StreamingChatLanguageModel large = streamingModel(Tier.LARGE, maxWait, factory);
+        if (!hasFallback()) {
+            return large;
+        }
+        return new FallbackStreamingChatModel(large, streamingModel(Tier.SMALL, maxWait,
+                factory));
+    }
+
+    /**
+     * Loads the models of both tiers into the memory of every backend, in the
+     * background, and keeps them loaded for APP_OLLAMA_KEEP_ALIVE (30 minutes by default).
+     *
+     * @return A future completed once every backend answered, whatever the outcome.
+     */
+    public CompletableFuture<Void> warmUp() {
+        String keepAlive = EnvVarUtils.getEnvVar("APP_OLLAMA_KEEP_ALIVE");
+        if (keepAlive == null || keepAlive.isBlank()) {
+            keepAlive = DEFAULT_KEEP_ALIVE;
+        }
+        CompletableFuture<Void> large = backends.preload(largeModel, keepAlive.strip());
+        return hasFallback()
+                ? CompletableFuture.allOf(large, backends.preload(smallModel, keepAlive.strip()))
+                : large;
+    }
+
+    /**
+     * Returns the scheduler metrics of each tier.
+     *
+     * @return The metrics by tier; a single entry when both tiers share one model.
+     */
+    public Map<Tier, InferenceScheduler.Stats> stats() {
+        Map<Tier, InferenceScheduler.Stats> stats = new LinkedHashMap<>();
+        stats.put(Tier.LARGE, largeScheduler.stats());
+        if (hasFallback()) {
+            stats.put(Tier.SMALL, smallScheduler.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the number of narrations sent to the small model because the large one
+     * was overloaded.
+     *
+     * @return The number of fallbacks since start.
+     */
+    public long fallbackCount() {
+        return fallbackCount.get();
+    }
+
+    private StreamingChatLanguageModel streamingModel(
+            Tier tier, Duration maxWait, ModelFactory<StreamingChatLanguageModel> factory) {
+        String modelName = tier == Tier.LARGE ? largeModel : smallModel;
+        return new ScheduledStreamingChatModel(
+                backends.streamingChatModel(url -> factory.create(url, modelName)),
+                schedulerOf(tier), InferenceScheduler.Priority.INTERACTIVE, maxWait);
+    }
+
+    private InferenceScheduler schedulerOf(Tier tier) {
+        return tier == Tier.LARGE ? largeScheduler : smallScheduler;
+    }
+
+    private boolean hasFallback() {
+        return largeScheduler != smallScheduler;
+    }
+
+    /**
+     * Tells whether the next narration should use the small model.
+     */
+    private boolean overloaded() {
+        return largeScheduler.estimatedWaitNanos(InferenceScheduler.Priority.INTERACTIVE)
+                > latencyTargetNanos;
+    }
+
+    /**
+     * Chooses the model of a narration request, counting the narrations sent to the
+     * small one. The follow-up requests of a narration, carrying its tool results, are
+     * not counted again.
+     */
+    private <M> M route(List<ChatMessage> messages, M large, M small) {
+        if (!overloaded()) {
+            return large;
+        }
+        if (messages.isEmpty()
+                || !(messages.get(messages.size() - 1) instanceof ToolExecutionResultMessage)) {
+            fallbackCount.incrementAndGet();
+        }
+        return small;
+    }
+
+    /**
+     * Sends each request to the large model, or to the small one while overloaded.
+     */
+    private final class FallbackChatModel implements ChatLanguageModel {
+        private final ChatLanguageModel large;
+        private final ChatLanguageModel small;
+
+        private FallbackChatModel(ChatLanguageModel large, ChatLanguageModel small) {
+            this.large = large;
+            this.small = small;
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return route(messages, large, small).generate(messages);
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages,
+                                            List<ToolSpecification> toolSpecifications) {
+            return route(messages, large, small).generate(messages, toolSpecifications);
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages,
+                                            ToolSpecification toolSpecification) {
+            return route(messages, large, small).generate(messages, toolSpecification);
+        }
+    }
+
+    /**
+     * Streaming counterpart of FallbackChatModel.
+     */
+    private final class FallbackStreamingChatModel implements StreamingChatLanguageModel {
+        private final StreamingChatLanguageModel large;
+        private final StreamingChatLanguageModel small;
+
+        private FallbackStreamingChatModel(StreamingChatLanguageModel large,
+                                           StreamingChatLanguageModel small) {
+            this.large = large;
+            this.small = small;
+        }
+
+        @Override
+        public void generate(List<ChatMessage> messages,
+                             StreamingResponseHandler<AiMessage> handler) {
+            route(messages, large, small).generate(messages, handler);
+        }
+
+        @Override
+        public void generate(List<ChatMessage> messages,
+                             List<ToolSpecification> toolSpecifications,
+                             StreamingResponseHandler<AiMessage> handler) {
+            route(messages, large, small).generate(messages, toolSpecifications, handler);
+        }
+
+        @Override
+        public void generate(List<ChatMessage> messages, ToolSpecification toolSpecification,
+                             StreamingResponseHandler<AiMessage> handler) {
+            route(messages, large, small).generate(messages, toolSpecification, handler);
+        }
+    }
+}
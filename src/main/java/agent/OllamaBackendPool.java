@@ -0,0 +1,566 @@
+package agent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * OllamaBackendPool.java
+ * Routes the model requests across several Ollama hosts, so throughput grows by adding
+ * boxes. APP_URL may list several base URLs separated by commas.
+ * Each request goes to the healthy backend with the fewest requests in flight, except
+ * that the requests of a player session stick to one backend (chosen by rendezvous
+ * hashing of the session id) so its KV cache of the conversation prefix is reused, as
+ * long as that backend is not much busier than the others. A backend that cannot be
+ * reached (connection refused, connect timeout) is marked down and the request is sent to
+ * the next one; a stream also moves on when its backend fails before the first token. A
+ * request failing once the backend is generating (ex: read timeout) is not sent again,
+ * since that would only load another backend with it. A periodic health check on
+ * /api/version, or the next answer of the backend, brings it back.
+ */
+public class OllamaBackendPool {
+
+    /**
+     * Time between two health checks of every backend.
+     */
+    private static final Duration HEALTH_INTERVAL = Duration.ofSeconds(10);
+
+    /**
+     * Longest time a backend may take to answer a health check.
+     */
+    private static final Duration HEALTH_TIMEOUT = Duration.ofSeconds(2);
+
+    /**
+     * Requests in flight a session's backend may have above the least busy one before
+     * the session is sent elsewhere; its cache is not worth queueing behind others.
+     */
+    private static final int STICKY_SLACK = 2;
+
+    /**
+     * Longest time a backend may take to load a model into memory.
+     */
+    private static final Duration PRELOAD_TIMEOUT = Duration.ofMinutes(2);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final ScheduledExecutorService HEALTH_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ollama-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    // The session of the request being made on this thread, for sticky routing
+    private static final ThreadLocal<String> SESSION = new ThreadLocal<>();
+
+    /**
+     * State of one backend, as shown in the metrics.
+     *
+     * @param baseUrl The base URL of the Ollama host.
+     * @param healthy False while the backend is considered down.
+     * @param outstanding Number of requests in flight on the backend.
+     */
+    public record BackendStatus(String baseUrl, boolean healthy, int outstanding) {
+    }
+
+    /**
+     * One Ollama host.
+     */
+    private static final class Backend {
+        private final int index;
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+
+        private Backend(int index, String baseUrl) {
+            this.index = index;
+            this.baseUrl = baseUrl;
+        }
+    }
+
+    private final List<Backend> backends = new ArrayList<>();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(HEALTH_TIMEOUT)
+            .build();
+    private final AtomicInteger nextTie = new AtomicInteger();
+
+    /**
+     * Creates a pool. No health check runs until startHealthChecks is called.
+     *
+     * @param baseUrls The base URLs of the Ollama hosts, at least one.
+     */
+    public OllamaBackendPool(List<String> baseUrls) {
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is needed");
+        }
+        for (String baseUrl : baseUrls) {
+            backends.add(new Backend(backends.size(), baseUrl));
+        }
+    }
+
+    /**
+     * Creates the pool of the hosts listed in APP_URL, separated by commas, and starts
+     * checking their health.
+     *
+     * @return The pool.
+     */
+    public static OllamaBackendPool fromEnv() {
+        String urls = EnvVarUtils.getEnvVar("APP_URL");
+        List<String> baseUrls = urls == null ? Arrays.asList((String) null)
+                : Arrays.stream(urls.split(",")).map(String::strip)
+                        .filter(url -> !url.isEmpty()).toList();
+        OllamaBackendPool pool = new OllamaBackendPool(baseUrls.isEmpty()
+                ? Arrays.asList((String) null) : baseUrls);
+        // Even a lone backend is checked, so it does not stay reported down after a failure
+        pool.startHealthChecks();
+        return pool;
+    }
+
+    /**
+     * Runs a call with its model requests routed as those of a player session.
+     *
+     * @param sessionId The session whose backend the requests stick to.
+     * @param call The call making the requests, on the calling thread.
+     * @param <T> The type of the result.
+     * @return The result of the call.
+     */
+    public static <T> T withSession(String sessionId, Supplier<T> call) {
+        String previous = SESSION.get();
+        SESSION.set(sessionId);
+        try {
+            return call.get();
+        } finally {
+            SESSION.set(previous);
+        }
+    }
+
+    /**
+     * Returns the number of backends.
+     *
+     * @return The number of Ollama hosts in the pool.
+     */
+    public int size() {
+        return backends.size();
+    }
+
+    /**
+     * Returns the state of every backend.
+     *
+     * @return The backends, in configuration order.
+     */
+    public List<BackendStatus> status() {
+        return backends.stream()
+                .map(b -> new BackendStatus(b.baseUrl, b.healthy, b.outstanding.get()))
+                .toList();
+    }
+
+    /**
+     * Creates a chat model routing each request to a backend of the pool.
+     *
+     * @param factory Builds the model of one backend from its base URL.
+     * @return The routing model.
+     */
+    public ChatLanguageModel chatModel(Function<String, ChatLanguageModel> factory) {
+        List<ChatLanguageModel> models = backends.stream().map(b -> factory.apply(b.baseUrl))
+                .toList();
+        return new RoutingChatModel(models);
+    }
+
+    /**
+     * Creates a streaming chat model routing each request to a backend of the pool.
+     *
+     * @param factory Builds the model of one backend from its base URL.
+     * @return The routing model.
+     */
+    public StreamingChatLanguageModel streamingChatModel(
+            Function<String, StreamingChatLanguageModel> factory) {
+        List<StreamingChatLanguageModel> models = backends.stream()
+                .map(b -> factory.apply(b.baseUrl)).toList();
+        return new RoutingStreamingChatModel(models);
+    }
+
+    /**
+     * Checks the health of the backends every few seconds, in the background.
+     */
+    public void startHealthChecks() {
+        HEALTH_EXECUTOR.scheduleWithFixedDelay(this::checkHealth, 0,
+                HEALTH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks the health of every backend at once, and waits for the answers.
+     */
+    public void checkHealth() {
+        CompletableFuture.allOf(backends.stream().filter(b -> b.baseUrl != null)
+                .map(this::checkHealth).toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Loads a model into the memory of every backend, in the background, so the first
+     * request does not wait for it. Ollama loads a model on a generate request without
+     * prompt and keeps it loaded for the given duration.
+     *
+     * @param modelName The name of the model.
+     * @param keepAlive How long the model stays loaded, in the Ollama duration format
+     *                  (ex: "30m", or "-1" for ever).
+     * @return A future completed once every backend answered, whatever the outcome.
+     */
+    public CompletableFuture<Void> preload(String modelName, String keepAlive) {
+        String body;
+        try {
+            body = JSON.writeValueAsString(JSON.createObjectNode()
+                    .put("model", modelName).put("keep_alive", keepAlive));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.allOf(backends.stream().filter(b -> b.baseUrl != null)
+                .map(backend -> preload(backend, body)).toArray(CompletableFuture[]::new));
+    }
+
+    private CompletableFuture<Void> preload(Backend backend, String body) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(apiRoot(backend) + "/api/generate"))
+                    .timeout(PRELOAD_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(null); // Reported by the requests
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error != null || response.statusCode() != 200) {
+                        System.err.println("[WARNING] Model preload failed on " + backend.baseUrl
+                                + ": " + (error != null ? error.getMessage()
+                                : "HTTP " + response.statusCode()));
+                    }
+                    return null;
+                });
+    }
+
+    private static String apiRoot(Backend backend) {
+        return backend.baseUrl.endsWith("/")
+                ? backend.baseUrl.substring(0, backend.baseUrl.length() - 1) : backend.baseUrl;
+    }
+
+    private CompletableFuture<Void> checkHealth(Backend backend) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(apiRoot(backend) + "/api/version"))
+                    .timeout(HEALTH_TIMEOUT)
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            backend.healthy = false;
+            return CompletableFuture.completedFuture(null);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    boolean up = error == null && response.statusCode() == 200;
+                    if (up != backend.healthy) {
+                        System.err.println("[WARNING] Ollama backend " + backend.baseUrl
+                                + (up ? " is back up" : " is down"));
+                    }
+                    backend.healthy = up;
+                    return null;
+                });
+    }
+
+    /**
+     * Chooses the backend of a request: among the healthy backends not tried yet (or all
+     * those not tried, if none is healthy), the one the session sticks to if it is not
+     * much busier than the others, else the least busy.
+     *
+     * @return The backend, or null if every backend was tried.
+     */
+    private Backend select(String sessionId, Set<Backend> tried) {
+        List<Backend> candidates = backends.stream()
+                .filter(b -> b.healthy && !tried.contains(b)).toList();
+        if (candidates.isEmpty()) {
+            candidates = backends.stream().filter(b -> !tried.contains(b)).toList();
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Backend least = null;
+        int start = Math.floorMod(nextTie.getAndIncrement(), candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            Backend backend = candidates.get((start + i) % candidates.size());
+            if (least == null || backend.outstanding.get() < least.outstanding.get()) {
+                least = backend;
+            }
+        }
+        if (sessionId != null) {
+            // Keyed by URL, so a backend leaving the pool only moves its own sessions
+            long sessionHash = mix(sessionId.hashCode());
+            Backend preferred = null;
+            long best = 0;
+            for (Backend backend : candidates) {
+                long weight = mix(sessionHash ^ Objects.hashCode(backend.baseUrl));
+                if (preferred == null || weight > best) {
+                    preferred = backend;
+                    best = weight;
+                }
+            }
+            if (preferred.outstanding.get() <= least.outstanding.get() + STICKY_SLACK) {
+                return preferred;
+            }
+        }
+        return least;
+    }
+
+    /**
+     * Scrambles the bits of a value (SplitMix64 finalizer), for rendezvous hashing.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void markDown(Backend backend, Throwable error) {
+        if (backend.healthy) {
+            System.err.println("[WARNING] Ollama backend " + backend.baseUrl + " failed, "
+                    + "trying another one: " + error.getMessage());
+        }
+        backend.healthy = false;
+    }
+
+    private void markUp(Backend backend) {
+        if (!backend.healthy) {
+            System.err.println("[WARNING] Ollama backend " + backend.baseUrl + " is back up");
+        }
+        backend.healthy = true;
+    }
+
+    /**
+     * Tells whether a request failed on an I/O error, so another backend may answer it
+     * if nothing was received yet; other errors would fail there as well.
+     */
+    private static boolean isUnreachable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether a request failed because no connection to the backend could be made,
+     * so the backend never saw it. A read timeout means the backend is generating: it is
+     * slow, not down.
+     */
+    private static boolean isConnectFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException
+                    || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+            // The Ollama client (OkHttp) reports a connect timeout as a socket timeout
+            if (cause instanceof SocketTimeoutException && cause.getMessage() != null
+                    && cause.getMessage().toLowerCase(Locale.ROOT).contains("connect")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends blocking requests to the chosen backend, failing over to the others when it
+     * cannot be reached.
+     */
+    private final class RoutingChatModel implements ChatLanguageModel {
+        private final List<ChatLanguageModel> models;
+
+        private RoutingChatModel(List<ChatLanguageModel> models) {
+            this.models = models;
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return route(model -> model.generate(messages));
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages,
+                                            List<ToolSpecification> toolSpecifications) {
+            return route(model -> model.generate(messages, toolSpecifications));
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages,
+                                            ToolSpecification toolSpecification) {
+            return route(model -> model.generate(messages, toolSpecification));
+        }
+
+        private Response<AiMessage> route(
+                Function<ChatLanguageModel, Response<AiMessage>> request) {
+            Set<Backend> tried = new HashSet<>();
+            RuntimeException failure = null;
+            Backend backend;
+            while ((backend = select(SESSION.get(), tried)) != null) {
+                tried.add(backend);
+                backend.outstanding.incrementAndGet();
+                try {
+                    Response<AiMessage> response = request.apply(models.get(backend.index));
+                    markUp(backend);
+                    return response;
+                } catch (RuntimeException e) {
+                    if (!isConnectFailure(e)) {
+                        throw e;
+                    }
+                    markDown(backend, e);
+                    failure = e;
+                } finally {
+                    backend.outstanding.decrementAndGet();
+                }
+            }
+            throw failure;
+        }
+    }
+
+    /**
+     * Streams from the chosen backend; a backend failing before its first token is
+     * replaced by the next one. The handler is called with the session of the request,
+     * so the follow-up requests AiServices makes from it (after tool calls) stick too.
+     */
+    private final class RoutingStreamingChatModel implements StreamingChatLanguageModel {
+        private final List<StreamingChatLanguageModel> models;
+
+        private RoutingStreamingChatModel(List<StreamingChatLanguageModel> models) {
+            this.models = models;
+        }
+
+        @Override
+        public void generate(List<ChatMessage> messages,
+                             StreamingResponseHandler<AiMessage> handler) {
+            route(handler, (model, routed) -> model.generate(messages, routed));
+        }
+
+        @Override
+        public void generate(List<ChatMessage> messages,
+                             List<ToolSpecification> toolSpecifications,
+                             StreamingResponseHandler<AiMessage> handler) {
+            route(handler, (model, routed) -> model.generate(messages, toolSpecifications,
+                    routed));
+        }
+
+        @Override
+        public void generate(List<ChatMessage> messages, ToolSpecification toolSpecification,
+                             StreamingResponseHandler<AiMessage> handler) {
+            route(handler, (model, routed) -> model.generate(messages, toolSpecification,
+                    routed));
+        }
+
+        private void route(StreamingResponseHandler<AiMessage> handler,
+                           BiConsumer<StreamingChatLanguageModel,
+                                   StreamingResponseHandler<AiMessage>> request) {
+            attempt(SESSION.get(), new HashSet<>(), null, handler, request);
+        }
+
+        private void attempt(String sessionId, Set<Backend> tried, Throwable failure,
+                             StreamingResponseHandler<AiMessage> handler,
+                             BiConsumer<StreamingChatLanguageModel,
+                                     StreamingResponseHandler<AiMessage>> request) {
+            Backend backend = select(sessionId, tried);
+            if (backend == null) {
+                handler.onError(failure);
+                return;
+            }
+            tried.add(backend);
+            backend.outstanding.incrementAndGet();
+            StreamingResponseHandler<AiMessage> routed = new StreamingResponseHandler<>() {
+                private boolean started;
+                private boolean finished;
+
+                @Override
+                public void onNext(String token) {
+                    started = true;
+                    withSession(sessionId, () -> {
+                        handler.onNext(token);
+                        return null;
+                    });
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    if (finish()) {
+                        markUp(backend);
+                        withSession(sessionId, () -> {
+                            handler.onComplete(response);
+                            return null;
+                        });
+                    }
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    if (!finish()) {
+                        return;
+                    }
+                    // Once a token came, the backend is generating: sending the prompt
+                    // again would only duplicate the work
+                    if (!started && isUnreachable(error)) {
+                        markDown(backend, error);
+                        attempt(sessionId, tried, error, handler, request);
+                        return;
+                    }
+                    withSession(sessionId, () -> {
+                        handler.onError(error);
+                        return null;
+                    });
+                }
+
+                private synchronized boolean finish() {
+                    if (finished) {
+                        return false;
+                    }
+                    finished = true;
+                    backend.outstanding.decrementAndGet();
+                    return true;
+                }
+            };
+            try {
+                request.accept(models.get(backend.index), routed);
+            } catch (RuntimeException e) {
+                routed.onError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageType;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * ParallelToolCallModel.java
+ * Chat model decorator running the tool calls of one model response concurrently.
+ * AiServices executes the tool execution requests of a response one after another, and
+ * each lore tool call blocks on the network. When a response holds several requests,
+ * this decorator first starts all their lookups at once through DndLoreTool.prefetch and
+ * waits for them, within a deadline for the whole turn, before handing the response to
+ * AiServices: the sequential executions then only read the cache, so the results fed
+ * back to the model are the same as before, they just arrive sooner.
+ */
+public class ParallelToolCallModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final DndLoreTool loreTool;
+    private final Duration turnDeadline;
+
+    // AiServices runs a whole turn on the calling thread, so the deadline is per thread
+    private final ThreadLocal<Long> turnEnd = new ThreadLocal<>();
+
+    /**
+     * Creates the decorator.
+     *
+     * @param delegate The model generating the responses.
+     * @param loreTool The lore tool the requests are prefetched with.
+     * @param turnDeadline The longest time spent waiting for prefetches during one turn;
+     *                     past it, the remaining calls simply run as before.
+     */
+    public ParallelToolCallModel(ChatLanguageModel delegate, DndLoreTool loreTool,
+                                 Duration turnDeadline) {
+        this.delegate = delegate;
+        this.loreTool = loreTool;
+        this.turnDeadline = turnDeadline;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        startTurnIfNew(messages);
+        return prefetchTools(delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages,
+                                        List<ToolSpecification> toolSpecifications) {
+        startTurnIfNew(messages);
+        return prefetchTools(delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages,
+                                        ToolSpecification toolSpecification) {
+        startTurnIfNew(messages);
+        return prefetchTools(delegate.generate(messages, toolSpecification));
+    }
+
+    /**
+     * Starts the deadline of a new turn when the conversation ends with a user message;
+     * follow-up calls carrying tool results belong to the same turn.
+     */
+    private void startTurnIfNew(List<ChatMessage> messages) {
+        if (messages.isEmpty()
+                || messages.get(messages.size() - 1).type() == ChatMessageType.USER
+                || turnEnd.get() == null) {
+            turnEnd.set(System.nanoTime() + turnDeadline.toNanos());
+        }
+    }
+
+    /**
+     * Prefetches the tool calls of a response holding several of them and waits for them,
+     * at most until the end of the turn. Failures are left to the calls themselves.
+     *
+     * @param response The model response.
+     * @return The same response.
+     */
+    private Response<AiMessage> prefetchTools(Response<AiMessage> response) {
+        prefetchTools(loreTool, response, turnEnd.get() - System.nanoTime());
+        return response;
+    }
+
+    /**
+     * Prefetches the tool calls of a response holding several of them and waits for them,
+     * at most for the given time. Failures are left to the calls themselves.
+     *
+     * @param loreTool The lore tool the requests are prefetched with.
+     * @param response The model response.
+     * @param timeoutNanos The longest time to wait.
+     */
+    static void prefetchTools(DndLoreTool loreTool, Response<AiMessage> response,
+                              long timeoutNanos) {
+        AiMessage message = response.content();
+        if (message == null || !message.hasToolExecutionRequests()
+                || message.toolExecutionRequests().size() < 2) {
+            return;
+        }
+
+        List<CompletableFuture<Void>> prefetches = new ArrayList<>();
+        for (ToolExecutionRequest request : message.toolExecutionRequests()) {
+            prefetches.add(loreTool.prefetch(request));
+        }
+        try {
+            CompletableFuture.allOf(prefetches.toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Late or failed lookups are joined or retried by the sequential calls
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
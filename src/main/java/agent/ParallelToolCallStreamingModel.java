@@ -0,0 +1,86 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * ParallelToolCallStreamingModel.java
+ * Streaming counterpart of ParallelToolCallModel. When a streamed response completes with
+ * several tool execution requests, their lookups are all started at once and awaited
+ * before the response is handed to AiServices, which then executes them one after another
+ * from the cache. The wait happens on the thread completing the stream, where AiServices
+ * runs the tools and the follow-up request anyway. Streamed turns hop between threads, so
+ * the deadline bounds each wait rather than the whole turn; the turn itself is bounded by
+ * the caller.
+ */
+public class ParallelToolCallStreamingModel implements StreamingChatLanguageModel {
+
+    private final StreamingChatLanguageModel delegate;
+    private final DndLoreTool loreTool;
+    private final Duration maxWait;
+
+    /**
+     * Creates the decorator.
+     *
+     * @param delegate The model streaming the responses.
+     * @param loreTool The lore tool the requests are prefetched with.
+     * @param maxWait The longest time spent waiting for the prefetches of one response;
+     *                past it, the remaining calls simply run as before.
+     */
+    public ParallelToolCallStreamingModel(StreamingChatLanguageModel delegate,
+                                          DndLoreTool loreTool, Duration maxWait) {
+        this.delegate = delegate;
+        this.loreTool = loreTool;
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        delegate.generate(messages, new PrefetchingHandler(handler));
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications,
+                         StreamingResponseHandler<AiMessage> handler) {
+        delegate.generate(messages, toolSpecifications, new PrefetchingHandler(handler));
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, ToolSpecification toolSpecification,
+                         StreamingResponseHandler<AiMessage> handler) {
+        delegate.generate(messages, toolSpecification, new PrefetchingHandler(handler));
+    }
+
+    /**
+     * Forwards the stream events, prefetching the tool calls of the complete response.
+     */
+    private final class PrefetchingHandler implements StreamingResponseHandler<AiMessage> {
+        private final StreamingResponseHandler<AiMessage> handler;
+
+        private PrefetchingHandler(StreamingResponseHandler<AiMessage> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onNext(String token) {
+            handler.onNext(token);
+        }
+
+        @Override
+        public void onComplete(Response<AiMessage> response) {
+            ParallelToolCallModel.prefetchTools(loreTool, response, maxWait.toNanos());
+            handler.onComplete(response);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            handler.onError(error);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * ScheduledChatModel.java
+ * Chat model decorator sending each request through the InferenceScheduler, with the
+ * priority class and deadline of the agent using it. A shed request throws
+ * InferenceScheduler.RejectedException without reaching the backend. A request made
+ * under an AbortSignal frees its slot as soon as the signal is given, and its thread is
+ * interrupted, which ends the wait for a slot or the call to the backend.
+ */
+public class ScheduledChatModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final InferenceScheduler scheduler;
+    private final InferenceScheduler.Priority priority;
+    private final Duration maxWait;
+
+    /**
+     * Creates the decorator.
+     *
+     * @param delegate The model generating the responses.
+     * @param scheduler The scheduler shared by the users of the backend.
+     * @param priority The priority class of the requests.
+     * @param maxWait The longest time a request may wait for a slot.
+     */
+    public ScheduledChatModel(ChatLanguageModel delegate, InferenceScheduler scheduler,
+                              InferenceScheduler.Priority priority, Duration maxWait) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return schedule(() -> delegate.generate(messages));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages,
+                                        List<ToolSpecification> toolSpecifications) {
+        return schedule(() -> delegate.generate(messages, toolSpecifications));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages,
+                                        ToolSpecification toolSpecification) {
+        return schedule(() -> delegate.generate(messages, toolSpecification));
+    }
+
+    private Response<AiMessage> schedule(Supplier<Response<AiMessage>> request) {
+        AbortSignal signal = AbortSignal.current();
+        if (signal == null) {
+            return scheduler.run(priority, maxWait, request);
+        }
+        AbortableCall call = new AbortableCall(Thread.currentThread());
+        signal.onAbort(call::abort);
+        try {
+            if (!call.hold(scheduler.acquire(priority, maxWait))) {
+                throw new CancellationException("Request aborted");
+            }
+            return request.get();
+        } finally {
+            call.end();
+        }
+    }
+
+    /**
+     * One request made under an abort signal: the slot it holds, and its thread,
+     * interrupted if the signal is given before the request is over.
+     */
+    private static final class AbortableCall {
+        private final Thread thread;
+        private InferenceScheduler.Permit permit;
+        private boolean over;
+
+        private AbortableCall(Thread thread) {
+            this.thread = thread;
+        }
+
+        /**
+         * Keeps the slot of the request, unless the request was aborted meanwhile.
+         *
+         * @return False if the request was aborted: the slot is freed at once.
+         */
+        private synchronized boolean hold(InferenceScheduler.Permit granted) {
+            if (over) {
+                granted.close();
+                return false;
+            }
+            permit = granted;
+            return true;
+        }
+
+        private synchronized void abort() {
+            if (!over) {
+                over = true;
+                release();
+                thread.interrupt();
+            }
+        }
+
+        private synchronized void end() {
+            if (!over) {
+                over = true;
+                release();
+            } else {
+                // Aborted: the interrupt was meant for this request only, a pooled thread
+                // goes on clean
+                Thread.interrupted();
+            }
+        }
+
+        private void release() {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * ScheduledStreamingChatModel.java
+ * Streaming counterpart of ScheduledChatModel. The caller waits for a slot, then the
+ * slot is held until the stream completes or fails, on whichever thread that happens.
+ * A shed request is reported to the handler's onError with an
+ * InferenceScheduler.RejectedException. A stream started under an AbortSignal frees its
+ * slot as soon as the signal is given, even if no token comes any more; its later events
+ * are dropped, and a late token makes the client drop the connection.
+ */
+public class ScheduledStreamingChatModel implements StreamingChatLanguageModel {
+
+    private final StreamingChatLanguageModel delegate;
+    private final InferenceScheduler scheduler;
+    private final InferenceScheduler.Priority priority;
+    private final Duration maxWait;
+
+    /**
+     * Creates the decorator.
+     *
+     * @param delegate The model streaming the responses.
+     * @param scheduler The scheduler shared by the users of the backend.
+     * @param priority The priority class of the requests.
+     * @param maxWait The longest time a request may wait for a slot.
+     */
+    public ScheduledStreamingChatModel(StreamingChatLanguageModel delegate,
+                                       InferenceScheduler scheduler,
+                                       InferenceScheduler.Priority priority,
+                                       Duration maxWait) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.priority = priority;
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        schedule(handler, releasing -> delegate.generate(messages, releasing));
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, List<ToolSpecification> toolSpecifications,
+                         StreamingResponseHandler<AiMessage> handler) {
+        schedule(handler, releasing -> delegate.generate(messages, toolSpecifications, releasing));
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, ToolSpecification toolSpecification,
+                         StreamingResponseHandler<AiMessage> handler) {
+        schedule(handler, releasing -> delegate.generate(messages, toolSpecification, releasing));
+    }
+
+    private void schedule(StreamingResponseHandler<AiMessage> handler,
+                          Consumer<StreamingResponseHandler<AiMessage>> request) {
+        InferenceScheduler.Permit permit;
+        try {
+            permit = scheduler.acquire(priority, maxWait);
+        } catch (InferenceScheduler.RejectedException e) {
+            handler.onError(e);
+            return;
+        }
+        AbortSignal signal = AbortSignal.current();
+        ReleasingHandler releasing = new ReleasingHandler(handler, permit, signal);
+        if (signal != null) {
+            signal.onAbort(releasing::abort);
+        }
+        if (releasing.over.get()) {
+            handler.onError(new CancellationException("Stream aborted"));
+            return;
+        }
+        try {
+            request.accept(releasing);
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Forwards the stream events and frees the slot once the stream is over or aborted.
+     * The events are handled under the abort signal of the request, so the requests
+     * they start (after tool calls) can be aborted too.
+     */
+    private static final class ReleasingHandler implements StreamingResponseHandler<AiMessage> {
+        private final StreamingResponseHandler<AiMessage> handler;
+        private final InferenceScheduler.Permit permit;
+        private final AbortSignal signal;
+        private final AtomicBoolean over = new AtomicBoolean();
+
+        private ReleasingHandler(StreamingResponseHandler<AiMessage> handler,
+                                 InferenceScheduler.Permit permit, AbortSignal signal) {
+            this.handler = handler;
+            this.permit = permit;
+            this.signal = signal;
+        }
+
+        @Override
+        public void onNext(String token) {
+            if (over.get()) {
+                // Failing the token handler makes the client drop the connection
+                throw new CancellationException("Stream aborted");
+            }
+            AbortSignal.withSignal(signal, () -> {
+                handler.onNext(token);
+                return null;
+            });
+        }
+
+        @Override
+        public void onComplete(Response<AiMessage> response) {
+            if (over.compareAndSet(false, true)) {
+                permit.close();
+                AbortSignal.withSignal(signal, () -> {
+                    handler.onComplete(response);
+                    return null;
+                });
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (over.compareAndSet(false, true)) {
+                permit.close();
+                AbortSignal.withSignal(signal, () -> {
+                    handler.onError(error);
+                    return null;
+                });
+            }
+        }
+
+        private void abort() {
+            if (over.compareAndSet(false, true)) {
+                permit.close();
+            }
+        }
+    }
+}
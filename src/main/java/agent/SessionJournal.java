@@ -0,0 +1,344 @@
+package agent;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.memory.ChatMemory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * SessionJournal.java
+ * Chat memory decorator recording the conversation in an append-only journal, so a
+ * campaign resumes after a restart without feeding its history back through the model.
+ * Every message (player inputs, tool calls, tool results, narrations) is appended as it
+ * is added, as well as each new summary of the summarizing memory. Writes reach the
+ * file at once but are forced to disk in batches, at most once per sync interval, so a
+ * turn costs one fsync instead of one per message.
+ * At startup the journal is memory-mapped and scanned once; only the messages not
+ * covered by the latest summary are decoded and added back to the memory, with the
+ * summary restored as it was: no model call is made.
+ *
+ * <p>Record layout, as in LoreStore: payload length (int), CRC32 of the payload (int),
+ * then the payload: record type (byte) and its body. A message body is its JSON form;
+ * a summary body is the number of messages it covers (long) and its text in UTF-8; a
+ * clear has no body. A torn record at the end of the file is truncated away.
+ * System messages are not recorded: they come from the narrator prompt.
+ */
+public class SessionJournal implements ChatMemory, Closeable {
+
+    /**
+     * Longest time a recorded message may wait before being forced to disk.
+     */
+    static final Duration SYNC_INTERVAL = Duration.ofMillis(200);
+
+    private static final int MAGIC = 0x53455353; // "SESS"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+    private static final long COMPACTION_MIN_WASTE = 64 * 1024;
+
+    private static final byte MESSAGE = 1;
+    private static final byte SUMMARY = 2;
+    private static final byte CLEAR = 3;
+
+    private static final ScheduledExecutorService SYNC_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Path path;
+    private final ChatMemory delegate;
+    private final Duration syncInterval;
+    private FileChannel channel; // Null once the journal failed
+    private long size;
+    private ScheduledFuture<?> pendingSync;
+
+    /**
+     * Opens (or creates) a journal and rebuilds the memory from it.
+     *
+     * @param path The journal file.
+     * @param delegate The memory to rebuild and then record; it should be empty.
+     * @param summaries The summarizing memory at the bottom of the delegate, whose
+     *                  summaries are recorded so replay skips the folded messages,
+     *                  or null to replay every message.
+     * @throws IOException If the file cannot be opened or is not a session journal.
+     */
+    public SessionJournal(Path path, ChatMemory delegate, SummarizingChatMemory summaries)
+            throws IOException {
+        this(path, delegate, summaries, SYNC_INTERVAL);
+    }
+
+    /**
+     * Opens (or creates) a journal with a custom sync interval (used by tests).
+     *
+     * @param path The journal file.
+     * @param delegate The memory to rebuild and then record; it should be empty.
+     * @param summaries The summarizing memory at the bottom of the delegate, or null.
+     * @param syncInterval Longest time a record waits before being forced to disk.
+     * @throws IOException If the file cannot be opened or is not a session journal.
+     */
+    SessionJournal(Path path, ChatMemory delegate, SummarizingChatMemory summaries,
+                   Duration syncInterval) throws IOException {
+        this.path = path;
+        this.delegate = delegate;
+        this.syncInterval = syncInterval;
+        replay(summaries);
+        if (summaries != null) {
+            summaries.setSummaryListener(this::recordSummary);
+        }
+    }
+
+    @Override
+    public Object id() {
+        return delegate.id();
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        if (!(message instanceof SystemMessage)) {
+            byte[] json = ChatMessageSerializer.messageToJson(message)
+                    .getBytes(StandardCharsets.UTF_8);
+            append(MESSAGE, ByteBuffer.wrap(json));
+        }
+        // Outside the journal lock: the memory calls back recordSummary under its own lock
+        delegate.add(message);
+    }
+
+    @Override
+    public List<ChatMessage> messages() {
+        return delegate.messages();
+    }
+
+    @Override
+    public void clear() {
+        append(CLEAR, ByteBuffer.allocate(0));
+        delegate.clear();
+    }
+
+    /**
+     * Forces the pending records to disk and closes the file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (pendingSync != null) {
+            pendingSync.cancel(false);
+            pendingSync = null;
+        }
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private synchronized void recordSummary(String summary, long foldedMessages) {
+        byte[] text = summary == null ? new byte[0] : summary.getBytes(StandardCharsets.UTF_8);
+        append(SUMMARY, ByteBuffer.allocate(Long.BYTES + text.length)
+                .putLong(foldedMessages).put(text).flip());
+    }
+
+    /**
+     * Appends a record and schedules the batched sync. A failing journal is reported once
+     * and then left aside: the conversation goes on, unrecorded.
+     */
+    private synchronized void append(byte type, ByteBuffer body) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            ByteBuffer record = encode(type, body);
+            long offset = size;
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            size = offset + record.limit();
+            if (pendingSync == null) {
+                pendingSync = SYNC_EXECUTOR.schedule(this::sync, syncInterval.toNanos(),
+                        TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void sync() {
+        pendingSync = null;
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        System.err.println("[WARNING] Session journal unavailable: " + e.getMessage());
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+        channel = null;
+    }
+
+    /**
+     * Opens the file, scans the memory-mapped log and adds the messages not covered by
+     * the latest summary back to the memory. The file is first compacted when the
+     * covered messages take most of it.
+     */
+    private void replay(SummarizingChatMemory summaries) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC), 0);
+            channel.force(true);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        if (map.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a session journal: " + path);
+        }
+        List<Integer> messageRecords = new ArrayList<>(); // Offsets, since the last clear
+        String summary = null;
+        long folded = 0;
+        int offset = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            int length = map.getInt(offset);
+            int checksum = map.getInt(offset + Integer.BYTES);
+            if (length < 1 || length > MAX_PAYLOAD_SIZE
+                    || offset + RECORD_HEADER_SIZE + (long) length > fileSize) {
+                break; // Torn write at the end of the log
+            }
+            ByteBuffer payload = map.slice(offset + RECORD_HEADER_SIZE, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break; // Corrupted record: everything after it is discarded
+            }
+            switch (payload.get(0)) {
+                case MESSAGE -> messageRecords.add(offset);
+                case SUMMARY -> {
+                    folded = payload.getLong(1);
+                    summary = length > 1 + Long.BYTES ? decode(payload, 1 + Long.BYTES) : null;
+                }
+                case CLEAR -> {
+                    messageRecords.clear();
+                    summary = null;
+                    folded = 0;
+                }
+                default -> {
+                    // Unknown record type: skipped
+                }
+            }
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        if (offset < fileSize) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+        size = offset;
+
+        int first = summaries == null ? 0 : (int) Math.min(folded, messageRecords.size());
+        List<Integer> liveRecords = messageRecords.subList(first, messageRecords.size());
+        long live = liveRecords.isEmpty() ? 0 : size - liveRecords.get(0);
+        long waste = size - HEADER_SIZE - live;
+        if (waste > COMPACTION_MIN_WASTE && waste > live) {
+            compact(map, liveRecords, summary);
+            first = 0; // The summary now covers no message of the file
+        }
+        if (summaries != null) {
+            summaries.restoreSummary(summary, first);
+        }
+        for (int record : liveRecords) {
+            int length = map.getInt(record);
+            ByteBuffer payload = map.slice(record + RECORD_HEADER_SIZE, length);
+            delegate.add(ChatMessageDeserializer.messageFromJson(decode(payload, 1)));
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the summary and the messages it does not cover,
+     * then atomically replaces the file.
+     */
+    private void compact(MappedByteBuffer map, List<Integer> liveRecords, String summary)
+            throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        long offset = HEADER_SIZE;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC));
+            if (summary != null) {
+                byte[] text = summary.getBytes(StandardCharsets.UTF_8);
+                offset += write(out, encode(SUMMARY, ByteBuffer.allocate(Long.BYTES
+                        + text.length).putLong(0).put(text).flip()));
+            }
+            for (int record : liveRecords) {
+                int length = RECORD_HEADER_SIZE + map.getInt(record);
+                offset += write(out, map.slice(record, length));
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = offset;
+    }
+
+    private static int write(FileChannel out, ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return length;
+    }
+
+    private static String decode(ByteBuffer payload, int from) {
+        return StandardCharsets.UTF_8.decode(payload.duplicate().position(from)).toString();
+    }
+
+    private static ByteBuffer encode(byte type, ByteBuffer body) {
+        int length = 1 + body.remaining();
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Journal record too large");
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(type).put(body);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+}
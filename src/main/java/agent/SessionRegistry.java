@@ -0,0 +1,371 @@
+package agent;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * SessionRegistry.java
+ * Chat memories of many players, keyed by session id, for one shared StoryAgent.
+ * AiServices keeps forever each memory a provider gives it, so the registry only hands
+ * out small handles: the real memory of a session is loaded on use and evicted when the
+ * session is idle for too long, or when too many sessions are resident (least recently
+ * used first). An evicted memory is closed, which flushes its session journal; the next
+ * use rebuilds it from the journal, so the footprint stays bounded whatever the number of
+ * players. A memory is never evicted during an operation on it.
+ * The messages of a turn in progress can be held back from the memory until the turn
+ * ends, so that a failed attempt is dropped instead of staying in the conversation.
+ * Turns of one session run one after the other, so they never mix their messages.
+ */
+public class SessionRegistry implements ChatMemoryProvider, Closeable {
+
+    /**
+     * Session used by callers which do not give one (the console player).
+     */
+    public static final String DEFAULT_SESSION = "default";
+
+    /**
+     * Allowed session ids, also used as journal file names.
+     */
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Function<String, ChatMemory> memoryFactory;
+    private final int maxResident;
+    private final long idleNanos;
+    private final LongSupplier clock;
+
+    // Access order: the least recently used session comes first
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Messages held back by the turns in progress, by session; kept here, not in the
+    // memories, so an eviction during a turn loses nothing
+    private final Map<String, List<ChatMessage>> pendingTurns = new HashMap<>();
+
+    // Sessions with a turn in progress, until its messages are stored or dropped
+    private final Set<String> activeTurns = new HashSet<>();
+
+    /**
+     * A resident session. Its memory is created by the first operation, outside the
+     * registry lock, so rebuilding one session from disk does not stall the others.
+     */
+    private final class Session {
+        private final String id;
+        private ChatMemory memory;
+        private int inUse; // Guarded by the registry
+        private long lastUsed; // Guarded by the registry
+
+        private Session(String id) {
+            this.id = id;
+        }
+
+        private synchronized ChatMemory memory() {
+            if (memory == null) {
+                memory = memoryFactory.apply(id);
+            }
+            return memory;
+        }
+
+        private synchronized void close() {
+            if (memory instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    System.err.println("[WARNING] Session '" + id + "' not saved: "
+                            + e.getMessage());
+                }
+            }
+            memory = null;
+        }
+    }
+
+    /**
+     * Creates a registry using the system monotonic clock.
+     *
+     * @param memoryFactory Creates (or rebuilds from disk) the memory of a session id.
+     * @param maxResident The largest number of sessions kept in memory.
+     * @param idleTimeout The time after which an unused session is evicted.
+     */
+    public SessionRegistry(Function<String, ChatMemory> memoryFactory, int maxResident,
+                           Duration idleTimeout) {
+        this(memoryFactory, maxResident, idleTimeout, System::nanoTime);
+    }
+
+    /**
+     * Creates a registry with a custom clock (used by tests).
+     *
+     * @param memoryFactory Creates (or rebuilds from disk) the memory of a session id.
+     * @param maxResident The largest number of sessions kept in memory.
+     * @param idleTimeout The time after which an unused session is evicted.
+     * @param clock Source of nanosecond timestamps.
+     */
+    SessionRegistry(Function<String, ChatMemory> memoryFactory, int maxResident,
+                    Duration idleTimeout, LongSupplier clock) {
+        if (maxResident <= 0) {
+            throw new IllegalArgumentException("maxResident must be positive");
+        }
+        this.memoryFactory = memoryFactory;
+        this.maxResident = maxResident;
+        this.idleNanos = idleTimeout.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the memory of a session: a handle loading the session on each use.
+     *
+     * @param memoryId The session id: letters, digits, '-' or '_', 64 characters at most.
+     * @return The memory of the session.
+     * @throws IllegalArgumentException If the session id is not allowed.
+     */
+    @Override
+    public ChatMemory get(Object memoryId) {
+        String id = String.valueOf(memoryId);
+        if (!isValidSessionId(id)) {
+            throw new IllegalArgumentException("Invalid session id: " + id);
+        }
+        return new SessionMemory(id);
+    }
+
+    /**
+     * Starts a turn in a session: the messages added to it are held back, until
+     * commitTurn stores them or rollbackTurn drops them, and are listed after those of
+     * the memory meanwhile. System messages are not held back. One turn per session at
+     * a time: this waits for the turn in progress in the session, if any, to end.
+     *
+     * @param id The session id.
+     * @throws IllegalArgumentException If the session id is not allowed.
+     * @throws InterruptedException If interrupted while waiting for the turn in progress.
+     */
+    public synchronized void beginTurn(String id) throws InterruptedException {
+        if (!isValidSessionId(id)) {
+            throw new IllegalArgumentException("Invalid session id: " + id);
+        }
+        while (activeTurns.contains(id)) {
+            wait();
+        }
+        activeTurns.add(id);
+        pendingTurns.put(id, new ArrayList<>());
+    }
+
+    /**
+     * Drops the messages held so far by the turn in progress in a session, for a retry.
+     * Only the caller running that turn may restart it.
+     *
+     * @param id The session id.
+     */
+    public synchronized void restartTurn(String id) {
+        List<ChatMessage> pending = pendingTurns.get(id);
+        if (pending != null) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Ends the turn of a session, storing the messages it held back.
+     *
+     * @param id The session id.
+     * @param rewrite Applied to each message before it is stored.
+     */
+    public void commitTurn(String id, UnaryOperator<ChatMessage> rewrite) {
+        List<ChatMessage> pending;
+        synchronized (this) {
+            pending = pendingTurns.remove(id);
+        }
+        try {
+            if (pending != null && !pending.isEmpty()) {
+                ChatMemory memory = get(id);
+                pending.forEach(message -> memory.add(rewrite.apply(message)));
+            }
+        } finally {
+            endTurn(id); // The next turn sees the messages stored
+        }
+    }
+
+    /**
+     * Ends the turn of a session, dropping the messages it held back.
+     *
+     * @param id The session id.
+     */
+    public synchronized void rollbackTurn(String id) {
+        pendingTurns.remove(id);
+        endTurn(id);
+    }
+
+    private synchronized void endTurn(String id) {
+        if (activeTurns.remove(id)) {
+            notifyAll(); // Wakes the turns waiting for this session
+        }
+    }
+
+    /**
+     * Tells whether a session id is allowed.
+     *
+     * @param id The session id.
+     * @return True if it is made of letters, digits, '-' or '_', 64 characters at most.
+     */
+    public static boolean isValidSessionId(String id) {
+        return id != null && SESSION_ID.matcher(id).matches();
+    }
+
+    /**
+     * Returns the number of sessions currently resident.
+     *
+     * @return The number of sessions kept in memory.
+     */
+    public synchronized int residentSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Evicts the sessions idle for longer than the idle timeout. Eviction also happens
+     * on each use of the registry; this is for callers sweeping periodically.
+     */
+    public void evictIdle() {
+        List<Session> evicted;
+        synchronized (this) {
+            evicted = selectEvictions();
+        }
+        evicted.forEach(Session::close);
+    }
+
+    /**
+     * Evicts every session not in use, flushing their journals.
+     */
+    @Override
+    public void close() {
+        List<Session> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+                Session session = it.next();
+                if (session.inUse == 0) {
+                    it.remove();
+                    evicted.add(session);
+                }
+            }
+        }
+        evicted.forEach(Session::close);
+    }
+
+    private Session acquire(String id) {
+        Session session;
+        List<Session> evicted;
+        synchronized (this) {
+            session = sessions.computeIfAbsent(id, Session::new);
+            session.inUse++;
+            session.lastUsed = clock.getAsLong();
+            evicted = selectEvictions();
+        }
+        evicted.forEach(Session::close);
+        return session;
+    }
+
+    private synchronized void release(Session session) {
+        session.inUse--;
+        session.lastUsed = clock.getAsLong();
+    }
+
+    /**
+     * Removes the idle sessions, then the least recently used ones above the resident
+     * limit, skipping those in use. They are closed by the caller, outside the lock.
+     */
+    private List<Session> selectEvictions() {
+        List<Session> evicted = new ArrayList<>();
+        long now = clock.getAsLong();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext(); ) {
+            Session session = it.next();
+            boolean idle = now - session.lastUsed > idleNanos;
+            if (session.inUse == 0 && (idle || sessions.size() > maxResident)) {
+                it.remove();
+                evicted.add(session);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * The handle given to AiServices for one session.
+     */
+    private final class SessionMemory implements ChatMemory {
+        private final String id;
+
+        private SessionMemory(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object id() {
+            return id;
+        }
+
+        @Override
+        public void add(ChatMessage message) {
+            if (!(message instanceof SystemMessage)) {
+                synchronized (SessionRegistry.this) {
+                    List<ChatMessage> pending = pendingTurns.get(id);
+                    if (pending != null) {
+                        pending.add(message);
+                        return;
+                    }
+                }
+            }
+            withMemory(memory -> {
+                memory.add(message);
+                return null;
+            });
+        }
+
+        @Override
+        public List<ChatMessage> messages() {
+            List<ChatMessage> pending;
+            synchronized (SessionRegistry.this) {
+                pending = pendingTurns.containsKey(id) ? List.copyOf(pendingTurns.get(id))
+                        : List.of();
+            }
+            List<ChatMessage> messages = withMemory(ChatMemory::messages);
+            if (pending.isEmpty()) {
+                return messages;
+            }
+            List<ChatMessage> all = new ArrayList<>(messages);
+            all.addAll(pending);
+            return all;
+        }
+
+        @Override
+        public void clear() {
+            synchronized (SessionRegistry.this) {
+                List<ChatMessage> pending = pendingTurns.get(id);
+                if (pending != null) {
+                    pending.clear();
+                }
+            }
+            withMemory(memory -> {
+                memory.clear();
+                return null;
+            });
+        }
+
+        private <T> T withMemory(Function<ChatMemory, T> operation) {
+            Session session = acquire(id);
+            try {
+                return operation.apply(session.memory());
+            } finally {
+                release(session);
+            }
+        }
+    }
+}
@@ -1,12 +1,30 @@
 package agent;
 
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.memory.ChatMemory;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
+import dev.langchain4j.model.ollama.OllamaStreamingChatModel;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.SystemMessage;
-import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.TokenStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * StoryAgent.java
@@ -16,8 +34,151 @@ import dev.langchain4j.service.UserMessage;
  * Filters out any structured responses to maintain pure narrative format.
  */
 public class StoryAgent {
+
+    /**
+     * Longest time a turn waits for its tool calls to be prefetched in parallel.
+     */
+    private static final Duration TOOL_TURN_DEADLINE = Duration.ofSeconds(20);
+
+    /**
+     * Estimated token budget of the chat memory, narration rules and summary included.
+     * It leaves room for the answer within the default 2048-token context of Ollama.
+     */
+    private static final int MEMORY_TOKEN_BUDGET = 1500;
+
+    /**
+     * Length asked for the rolling summary of the older turns, in words.
+     */
+    private static final int SUMMARY_WORDS = 120;
+
+    /**
+     * Largest number of player sessions kept in memory; the others wait on disk.
+     */
+    private static final int MAX_RESIDENT_SESSIONS = 64;
+
+    /**
+     * Time after which the memory of an inactive session is evicted.
+     */
+    private static final Duration SESSION_IDLE_TIMEOUT = Duration.ofMinutes(15);
+
+    /**
+     * Longest time a narration waits for a free model slot before the player is told
+     * to try again.
+     */
+    private static final Duration NARRATION_MAX_WAIT = Duration.ofSeconds(20);
+
+    /**
+     * Longest time a memory summary waits for a free model slot; a shed summary is
+     * retried after the next turn.
+     */
+    private static final Duration SUMMARY_MAX_WAIT = Duration.ofMinutes(2);
+
+    /**
+     * Longest time the generation of a pooled opening scene waits for a free model slot.
+     */
+    private static final Duration INTRO_MAX_WAIT = Duration.ofMinutes(5);
+
+    /**
+     * Number of opening scenes kept ready.
+     */
+    private static final int INTRO_POOL_SIZE = 5;
+
+    /**
+     * Player input starting a new adventure.
+     */
+    public static final String START_PROMPT = "Start a Dungeons & Dragons adventure."
+            + " Present the initial context and ask the player what they do.";
+
+    /**
+     * Runs the summaries of the chat memory, one at a time, off the narration path.
+     */
+    private static final ExecutorService SUMMARY_EXECUTOR =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "memory-summarizer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Starts the streamed turns, one virtual thread each when available, so a turn waiting
+     * for a model slot holds no platform thread and can be interrupted by its cancellation.
+     */
+    private static final ExecutorService TURN_EXECUTOR = VirtualThreads.newExecutor("turn");
+
+    /**
+     * Generates the pooled opening scenes, one at a time, off the narration path.
+     */
+    private static final ExecutorService INTRO_EXECUTOR =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "intro-pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Narration rules, shared by the blocking and the streaming assistants.
+     */
+    private static final String NARRATOR_PROMPT = """
+            You are a medieval fantasy RPG narrator based on the Dungeons & Dragons universe.
+
+            === ABSOLUTE RULES ===
+            1. You must ALWAYS answer in pure NARRATIVE TEXT, NEVER in JSON or structured format
+            2. NEVER respond with function calls like {"name": "...", "parameters": ...}
+            3. Start DIRECTLY with the story
+
+            === WHEN TO USE TOOLS ===
+            - Use searchMonster() ONLY when you mention a specific monster (ex: goblin, dragon)
+            - Use searchSpell() ONLY when a character casts a specific spell
+            - Use searchMagicItem() ONLY when you mention a specific magic item
+            - When several monsters, spells or items appear together, call
+              searchLoreBatch() ONCE with all their names instead of several searches
+            - If a tool fails, continue the narration without mentioning it
+
+            === NARRATION STYLE ===
+            - Tell in fluid and immersive prose
+            - 2-3 short paragraphs maximum
+            - Use sensory descriptions (sounds, smells, ambiance)
+            - Ask questions to involve the player ("What do you do?")
+            - Always stay in the narrator role, never meta-comments
+
+            === GOOD NARRATION EXAMPLES ===
+            "The Black Dragon tavern is smoky and loud. An old man waves at you..."
+            "You hear a growl in the bushes. A goblin leaps out, dagger in hand!"
+
+            === FORBIDDEN EXAMPLES ===
+            {"name": "describeScene", ...}
+            "I will call the function..."
+            "The system indicates that..."
+
+            Speak ONLY in English. Start your narration NOW.
+            """;
+
+    /**
+     * Answer given instead of a response leaking a structured tool call.
+     */
+    private static final String BLOCKED_RESPONSE = "The narrator hesitates for a moment... "
+            + "Rephrase your request so I can better guide you in the adventure.";
+
+    /**
+     * Answer given when the narration is shed because the model is overloaded.
+     */
+    private static final String BUSY_RESPONSE = "The narrator is telling many tales at once... "
+            + "Catch your breath and try again in a moment.";
+
+    /**
+     * Reminder appended to the player input when a response is retried after a leak.
+     */
+    private static final String CORRECTIVE_NUDGE = "\n\n(Reminder: answer ONLY with "
+            + "narrative prose. Never write JSON or function calls.)";
+
+    // Non-whitespace characters held back at the start of a streamed answer, so that a
+    // structured call opening it is caught, and retried, before the player sees anything
+    private static final int LEAK_CLEARANCE = 32;
+
     private final StoryAssistant assistant;
-    private final ChatMemory chatMemory;
+    private final StreamingStoryAssistant streamingAssistant;
+    private final SessionRegistry sessions;
+    private final IntroPool intros;
 
     /**
      * Interface defining the behavior of the StoryAssistant.
@@ -31,39 +192,61 @@ public class StoryAgent {
          * @param userInput The input from the user/player.
          * @return The narrative response.
          */
-        @SystemMessage("""
-                You are a medieval fantasy RPG narrator based on the Dungeons & Dragons universe.
+        @SystemMessage(NARRATOR_PROMPT)
+        String narrate(@dev.langchain4j.service.UserMessage String userInput);
 
-                === ABSOLUTE RULES ===
-                1. You must ALWAYS answer in pure NARRATIVE TEXT, NEVER in JSON or structured format
-                2. NEVER respond with function calls like {"name": "...", "parameters": ...}
-                3. Start DIRECTLY with the story
+        /**
+         * Narrates the story of one session based on user input.
+         *
+         * @param sessionId The session whose memory is used.
+         * @param userInput The input from the user/player.
+         * @return The narrative response.
+         */
+        @SystemMessage(NARRATOR_PROMPT)
+        String narrate(@MemoryId String sessionId,
+                       @dev.langchain4j.service.UserMessage String userInput);
+    }
 
-                === WHEN TO USE TOOLS ===
-                - Use searchMonster() ONLY when you mention a specific monster (ex: goblin, dragon)
-                - Use searchSpell() ONLY when a character casts a specific spell
-                - Use searchMagicItem() ONLY when you mention a specific magic item
-                - If a tool fails, continue the narration without mentioning it
+    /**
+     * Streaming variant of the StoryAssistant: same rules, same memory, but the
+     * narration is delivered token by token as the model produces it.
+     */
+    interface StreamingStoryAssistant {
 
-                === NARRATION STYLE ===
-                - Tell in fluid and immersive prose
-                - 2-3 short paragraphs maximum
-                - Use sensory descriptions (sounds, smells, ambiance)
-                - Ask questions to involve the player ("What do you do?")
-                - Always stay in the narrator role, never meta-comments
+        /**
+         * Narrates the story based on user input, as a stream of tokens.
+         *
+         * @param userInput The input from the user/player.
+         * @return The stream of the narrative response, started by the caller.
+         */
+        @SystemMessage(NARRATOR_PROMPT)
+        TokenStream narrate(@dev.langchain4j.service.UserMessage String userInput);
 
-                === GOOD NARRATION EXAMPLES ===
-                "The Black Dragon tavern is smoky and loud. An old man waves at you..."
-                "You hear a growl in the bushes. A goblin leaps out, dagger in hand!"
+        /**
+         * Narrates the story of one session based on user input, as a stream of tokens.
+         *
+         * @param sessionId The session whose memory is used.
+         * @param userInput The input from the user/player.
+         * @return The stream of the narrative response, started by the caller.
+         */
+        @SystemMessage(NARRATOR_PROMPT)
+        TokenStream narrate(@MemoryId String sessionId,
+                            @dev.langchain4j.service.UserMessage String userInput);
+    }
 
-                === FORBIDDEN EXAMPLES ===
-                {"name": "describeScene", ...}
-                "I will call the function..."
-                "The system indicates that..."
+    /**
+     * Narrates opening scenes without memory nor tools, for the intro pool.
+     */
+    interface IntroAssistant {
 
-                Speak ONLY in English. Start your narration NOW.
-                """)
-        String narrate(@UserMessage String userInput);
+        /**
+         * Narrates the opening scene of an adventure.
+         *
+         * @param startPrompt The player input starting the adventure.
+         * @return The narrative response.
+         */
+        @SystemMessage(NARRATOR_PROMPT)
+        String narrate(@dev.langchain4j.service.UserMessage String startPrompt);
     }
 
     /**
@@ -71,43 +254,601 @@ public class StoryAgent {
      * Initializes the chat memory, language model, and tools required for the assistant.
      */
     public StoryAgent() {
-        ChatLanguageModel model = OllamaChatModel.builder()
-                .baseUrl(EnvVarUtils.getEnvVar("APP_URL"))
-                .modelName(EnvVarUtils.getEnvVar("APP_MODEL"))
-                .temperature(0.7)
-                .build();
+        this(new DndLoreTool());
+    }
 
+    /**
+     * Constructor for the StoryAgent class using a given lore tool, so its cache
+     * can be shared (and warmed) by other components.
+     *
+     * @param loreTool The tool used for lore lookups.
+     */
+    public StoryAgent(DndLoreTool loreTool) {
+        this(loreTool, ModelTiers.fromEnv());
+    }
+
+    /**
+     * Constructor for the StoryAgent class using a given lore tool, and the models
+     * shared with the other agents.
+     *
+     * @param loreTool The tool used for lore lookups.
+     * @param tiers The models, backends and schedulers of the agents.
+     */
+    public StoryAgent(DndLoreTool loreTool, ModelTiers tiers) {
+        this(CompletableFuture.completedFuture(loreTool), tiers);
+    }
 
-        // Initializes the chat memory to retain the last 10 messages.
-        this.chatMemory = MessageWindowChatMemory.withMaxMessages(10);
+    /**
+     * Constructor for the StoryAgent class using a lore tool still being built: the
+     * models and memories are prepared meanwhile, and the tool is only waited for by
+     * the assistants using it.
+     *
+     * @param loreTool The building of the tool used for lore lookups.
+     * @param tiers The models, backends and schedulers of the agents.
+     */
+    public StoryAgent(CompletableFuture<DndLoreTool> loreTool, ModelTiers tiers) {
+        // Narrations use the large model (the small one while it is overloaded) and go
+        // first; summaries use the small model when nobody waits for the narration
+        ChatLanguageModel narrationModel = tiers.narrationModel(NARRATION_MAX_WAIT,
+                (url, modelName) -> OllamaChatModel.builder()
+                        .baseUrl(url)
+                        .modelName(modelName)
+                        .temperature(0.7)
+                        .build());
+        StreamingChatLanguageModel streamingNarrationModel = tiers.streamingNarrationModel(
+                NARRATION_MAX_WAIT, (url, modelName) -> OllamaStreamingChatModel.builder()
+                        .baseUrl(url)
+                        .modelName(modelName)
+                        .temperature(0.7)
+                        .build());
+        ChatLanguageModel summaryModel = tiers.chatModel(ModelTiers.Tier.SMALL,
+                InferenceScheduler.Priority.BACKGROUND, SUMMARY_MAX_WAIT,
+                (url, modelName) -> OllamaChatModel.builder()
+                        .baseUrl(url)
+                        .modelName(modelName)
+                        .build());
 
-        // Initializes the DndLoreTool for lore lookups.
-        DndLoreTool loreTool = new DndLoreTool();
+        // One memory per player session, sharing the model clients and the lore tool.
+        // Each keeps the latest turns within a token budget and summarizes the older ones;
+        // lore results are stored once and only re-sent in full when relevant again.
+        ConversationSummarizer summarizer = new ConversationSummarizer(summaryModel,
+                SUMMARY_WORDS);
+        String sessionDir = EnvVarUtils.getEnvVar("APP_SESSION_DIR");
+        this.sessions = new SessionRegistry(sessionId -> {
+            SummarizingChatMemory summaries = new SummarizingChatMemory(sessionId,
+                    MEMORY_TOKEN_BUDGET, summarizer, SUMMARY_EXECUTOR);
+            return openJournal(sessionDir, sessionId, new LoreElidingChatMemory(summaries),
+                    summaries);
+        }, MAX_RESIDENT_SESSIONS, SESSION_IDLE_TIMEOUT);
+        Runtime.getRuntime().addShutdownHook(new Thread(sessions::close)); // Flush journals
+
+        // Opening scenes are narrated ahead of time by the large model, after the turns
+        // of the players, and kept in APP_INTRO_POOL across launches.
+        IntroAssistant introAssistant = AiServices.builder(IntroAssistant.class)
+                .chatLanguageModel(tiers.chatModel(ModelTiers.Tier.LARGE,
+                        InferenceScheduler.Priority.BACKGROUND, INTRO_MAX_WAIT,
+                        (url, modelName) -> OllamaChatModel.builder()
+                                .baseUrl(url)
+                                .modelName(modelName)
+                                .temperature(0.9)
+                                .build()))
+                .build();
+        String introFile = EnvVarUtils.getEnvVar("APP_INTRO_POOL");
+        this.intros = new IntroPool(introFile == null || introFile.isBlank() ? null
+                : Path.of(introFile), INTRO_POOL_SIZE, () -> {
+                    String intro = introAssistant.narrate(START_PROMPT);
+                    return intro == null || isStructured(intro) ? null : intro;
+                }, INTRO_EXECUTOR);
+
+        // The assistants need the lore tool, built in parallel with the rest
+        DndLoreTool tool;
+        try {
+            tool = loreTool.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
 
         // Builds the StoryAssistant with the specified model, memory, and tools.
+        // Several tool calls in one response are run concurrently before AiServices executes them.
         this.assistant = AiServices.builder(StoryAssistant.class)
-                .chatLanguageModel(model)
-                .chatMemory(chatMemory)
-                .tools(loreTool)
+                .chatLanguageModel(new ParallelToolCallModel(narrationModel, tool,
+                        TOOL_TURN_DEADLINE))
+                .chatMemoryProvider(sessions)
+                .tools(tool)
+                .build();
+
+        // Same memories, so streamed and blocking turns form one conversation; tool calls
+        // are run concurrently in both.
+        this.streamingAssistant = AiServices.builder(StreamingStoryAssistant.class)
+                .streamingChatLanguageModel(new ParallelToolCallStreamingModel(
+                        streamingNarrationModel, tool, TOOL_TURN_DEADLINE))
+                .chatMemoryProvider(sessions)
+                .tools(tool)
                 .build();
     }
 
+    /**
+     * Starts the adventure of a session. A pre-generated opening scene is served at once
+     * when the pool has one, recorded in the session memory as the answer to the start
+     * prompt; otherwise the start prompt is narrated like any input. Either way, the
+     * pool is then refilled in the background for the next adventures.
+     *
+     * @param sessionId The session of the player.
+     * @param onToken Receives the tokens of the opening scene in order.
+     * @return A future of the whole opening scene.
+     */
+    public CompletableFuture<String> startAdventure(String sessionId, Consumer<String> onToken) {
+        String intro = intros.takeInto(sessions.get(sessionId), START_PROMPT);
+        if (intro == null) {
+            // Refilled once the scene is told, not to compete with it for the model
+            CompletableFuture<String> scene = narrateStreaming(sessionId, START_PROMPT, onToken);
+            scene.whenComplete((response, error) -> intros.refill());
+            return scene;
+        }
+        intros.refill();
+        onToken.accept(intro);
+        return CompletableFuture.completedFuture(intro);
+    }
+
     /**
      * Narrates the story based on user input.
      *
      * @param input The input provided by the user/player.
      * @return The narrative response as a string.
      *         If the response contains JSON or structured data, it is filtered out.
+     *         If the model is overloaded, a message asking to try again; the turn is
+     *         then left out of the session memory.
      */
     public String narrate(String input) {
-        String response = assistant.narrate(input);
+        return narrateOrShed(SessionRegistry.DEFAULT_SESSION, () -> assistant.narrate(input));
+    }
+
+    /**
+     * Narrates the story of one session based on user input. Sessions have their own
+     * memory and can be narrated concurrently.
+     *
+     * @param sessionId The session of the player.
+     * @param input The input provided by the user/player.
+     * @return The narrative response as a string, filtered like narrate.
+     */
+    public String narrate(String sessionId, String input) {
+        return narrateOrShed(sessionId, () -> assistant.narrate(sessionId, input));
+    }
+
+    private String narrateOrShed(String sessionId, Supplier<String> narration) {
+        // The exchange is held back until answered: a shed or failed turn leaves no
+        // unanswered input in the conversation
+        try {
+            sessions.beginTurn(sessionId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the previous turn");
+        }
+        boolean answered = false;
+        try {
+            String response = filter(OllamaBackendPool.withSession(sessionId, narration));
+            answered = true;
+            return response;
+        } catch (InferenceScheduler.RejectedException e) {
+            System.out.println("[WARNING] " + e.getMessage());
+            return BUSY_RESPONSE;
+        } finally {
+            if (answered) {
+                sessions.commitTurn(sessionId, UnaryOperator.identity());
+            } else {
+                sessions.rollbackTurn(sessionId);
+            }
+        }
+    }
+
+    private static String filter(String response) {
         // Safety filter: if response contains JSON, clean it
-        if (response.contains("{\"name\"") || response.contains("\"parameters\"")) {
+        if (isStructured(response)) {
             System.out.println("[WARNING] Response blocked by filter");
-            return "The narrator hesitates for a moment... "
-                    + "Rephrase your request so I can better guide you in the adventure.";
+            return BLOCKED_RESPONSE;
         }
 
         return response;
     }
+
+    /**
+     * Narrates the story based on user input, handing each token to the caller as soon
+     * as the model produces it, so the player starts reading after the first words
+     * instead of after the whole answer. If streaming fails before any token, when the
+     * stream starts (for instance a model refusing tools in streaming mode) or while
+     * it runs, the blocking narration is used instead and delivered as a single token.
+     * A turn shed because the model is overloaded only hands the caller a message
+     * asking to try again, and leaves no trace in the session.
+     * The output is watched as it is generated: once it turns into a structured tool
+     * call, generation is aborted. The start of the answer is held back until it is
+     * clearly prose, so an answer opening with such a call is retried once with a
+     * reminder of the rules, unseen by the player and without trace in the session; a
+     * later leak ends the answer where it began.
+     * The turn starts on its own thread and the future is returned at once. Cancelling
+     * it ends the turn: a wait for a model slot is interrupted, the slot of a running
+     * generation is freed at once, even if the model sends nothing any more, and a
+     * later token makes the client drop the connection, which stops the generation on
+     * the model side. The text streamed until then is kept in the session memory as the narration
+     * of the turn, since the player has read it.
+     *
+     * @param input The input provided by the user/player.
+     * @param onToken Receives the tokens in order, on the model thread.
+     * @return A future of the whole narrative response, filtered like narrate.
+     */
+    public CompletableFuture<String> narrateStreaming(String input, Consumer<String> onToken) {
+        return startTurn(SessionRegistry.DEFAULT_SESSION, input, onToken,
+                streamingAssistant::narrate, assistant::narrate);
+    }
+
+    /**
+     * Narrates the story of one session, streaming the tokens like narrateStreaming.
+     * Turns of one session run one after the other: a turn starts once the previous one
+     * has ended, so they never mix their messages.
+     *
+     * @param sessionId The session of the player.
+     * @param input The input provided by the user/player.
+     * @param onToken Receives the tokens in order, on the model thread.
+     * @return A future of the whole narrative response, filtered like narrate.
+     */
+    public CompletableFuture<String> narrateStreaming(String sessionId, String input,
+                                                      Consumer<String> onToken) {
+        return startTurn(sessionId, input, onToken,
+                prompt -> streamingAssistant.narrate(sessionId, prompt),
+                prompt -> assistant.narrate(sessionId, prompt));
+    }
+
+    /**
+     * Starts a streamed turn on its own thread.
+     *
+     * @param sessionId The session of the player.
+     * @param input The input provided by the user/player.
+     * @param onToken Receives the tokens in order.
+     * @param stream Starts the streaming narration of a prompt in the right session.
+     * @param blocking The blocking assistant of the same session, used as fallback.
+     * @return The future of the turn, cancellable.
+     */
+    private CompletableFuture<String> startTurn(String sessionId, String input,
+                                                Consumer<String> onToken,
+                                                Function<String, TokenStream> stream,
+                                                UnaryOperator<String> blocking) {
+        if (!SessionRegistry.isValidSessionId(sessionId)) {
+            throw new IllegalArgumentException("Invalid session id: " + sessionId);
+        }
+        Turn turn = new Turn(onToken);
+        turn.result.whenComplete((response, error) -> {
+            // Frees the model slot of a stream still running, even a silent one
+            turn.signal.abort();
+            if (turn.result.isCancelled()) {
+                turn.interruptStart();
+            }
+            turn.whileBegun(() -> endTurn(sessionId, turn));
+        });
+        TURN_EXECUTOR.execute(() -> {
+            if (!turn.beginStart()) {
+                return; // Cancelled before it started
+            }
+            try {
+                // One turn per session at a time: waits for the previous one to end
+                sessions.beginTurn(sessionId);
+                if (!turn.begin()) {
+                    sessions.rollbackTurn(sessionId); // Over meanwhile
+                    return;
+                }
+                OllamaBackendPool.withSession(sessionId, () -> AbortSignal.withSignal(turn.signal,
+                        () -> {
+                            streamAttempt(sessionId, input, input, true, turn, stream,
+                                    blocking);
+                            return null;
+                        }));
+            } catch (InterruptedException e) {
+                turn.result.cancel(false); // Only the cancellation of the turn interrupts it
+            } catch (RuntimeException e) {
+                turn.result.completeExceptionally(e);
+            } finally {
+                turn.endStart();
+            }
+        });
+        return turn.result;
+    }
+
+    /**
+     * Ends a streamed turn in its session. The turn stays in the conversation only if
+     * the player read something of it; the streamed text then stands for an answer the
+     * model did not finish.
+     *
+     * @param sessionId The session of the player.
+     * @param turn The turn, over.
+     */
+    private void endTurn(String sessionId, Turn turn) {
+        String partial = turn.streamed();
+        if (turn.answered()) {
+            sessions.commitTurn(sessionId, StoryAgent::withoutNudge);
+        } else if (!partial.isEmpty()) {
+            sessions.get(sessionId).add(AiMessage.from(partial)); // Held with the turn
+            sessions.commitTurn(sessionId, StoryAgent::withoutNudge);
+        } else {
+            sessions.rollbackTurn(sessionId);
+        }
+    }
+
+    /**
+     * Streams one narration attempt.
+     *
+     * @param sessionId The session of the player.
+     * @param input The input provided by the user/player.
+     * @param prompt The message sent to the model: the input, plus a nudge on retry.
+     * @param firstAttempt True unless this attempt is the retry after a leak.
+     * @param turn The turn, receiving the tokens and completed with the whole response.
+     * @param stream Starts the streaming narration of a prompt in the right session.
+     * @param blocking The blocking assistant of the same session, used as fallback.
+     */
+    private void streamAttempt(String sessionId, String input, String prompt,
+                               boolean firstAttempt, Turn turn,
+                               Function<String, TokenStream> stream,
+                               UnaryOperator<String> blocking) {
+        JsonLeakDetector detector = new JsonLeakDetector(LEAK_CLEARANCE);
+        Consumer<Throwable> onError = error -> {
+            if (turn.result.isDone()) {
+                return; // Cancelled: nobody waits for this turn any more
+            }
+            if (detector.leaked()) {
+                System.out.println("[WARNING] Structured response aborted");
+                if (!turn.streamed().isEmpty()) {
+                    // The player is reading this answer: it ends where the leak began
+                    turn.result.complete(turn.streamed());
+                } else if (firstAttempt) {
+                    // Unseen: the aborted exchange is dropped, and the retry replaces it
+                    if (turn.whileOpen(() -> sessions.restartTurn(sessionId))) {
+                        streamAttempt(sessionId, input, input + CORRECTIVE_NUDGE, false, turn,
+                                stream, blocking);
+                    }
+                } else {
+                    turn.result.complete(BLOCKED_RESPONSE);
+                }
+                return;
+            }
+            if (error instanceof InferenceScheduler.RejectedException) {
+                // Shed before any token: the blocking narration would be shed too
+                System.out.println("[WARNING] " + error.getMessage());
+                turn.notice(BUSY_RESPONSE);
+                turn.result.complete(BUSY_RESPONSE);
+                return;
+            }
+            if (!turn.streamed().isEmpty()) {
+                turn.result.completeExceptionally(error);
+                return;
+            }
+            // The failed attempt is dropped, so the blocking narration records the
+            // input once; it runs on a turn thread, not on the model client's
+            if (turn.whileOpen(() -> sessions.restartTurn(sessionId))) {
+                TURN_EXECUTOR.execute(() -> narrateInstead(sessionId, input, turn, blocking));
+            }
+        };
+        try {
+            stream.apply(prompt)
+                    .onNext(token -> {
+                        String safe = detector.accept(token);
+                        if (safe == null) {
+                            // Failing the token handler makes the client drop the connection,
+                            // which stops the generation on the model side
+                            throw new IllegalStateException("Structured response aborted");
+                        }
+                        if (!turn.emit(safe)) {
+                            throw new CancellationException("Turn cancelled"); // Same way out
+                        }
+                    })
+                    .onComplete(response -> {
+                        turn.emit(detector.flush());
+                        String text = turn.streamed();
+                        if (isStructured(text)) {
+                            System.out.println("[WARNING] Response blocked by filter");
+                            text = BLOCKED_RESPONSE;
+                        }
+                        turn.markAnswered();
+                        turn.result.complete(text);
+                    })
+                    .onError(onError)
+                    .start();
+        } catch (RuntimeException e) {
+            // A stream refused at once, for instance by a model refusing tools in streaming
+            // mode, is handled like one failing later
+            onError.accept(e);
+        }
+    }
+
+    /**
+     * Removes the corrective nudge from the input of a retried turn, so the conversation
+     * keeps what the player wrote.
+     *
+     * @param message A message of the turn.
+     * @return The message, without the nudge.
+     */
+    private static ChatMessage withoutNudge(ChatMessage message) {
+        if (message instanceof UserMessage user
+                && user.hasSingleText() && user.singleText().endsWith(CORRECTIVE_NUDGE)) {
+            String text = user.singleText();
+            return UserMessage.from(
+                    text.substring(0, text.length() - CORRECTIVE_NUDGE.length()));
+        }
+        return message;
+    }
+
+    /**
+     * Narrates a turn with the blocking assistant once streaming failed, delivering the
+     * whole response, filtered like narrate, as a single token.
+     *
+     * @param sessionId The session of the player.
+     * @param input The input provided by the user/player.
+     * @param turn The turn, receiving the response.
+     * @param blocking The blocking assistant of the same session.
+     */
+    private static void narrateInstead(String sessionId, String input, Turn turn,
+                                       UnaryOperator<String> blocking) {
+        if (!turn.beginStart()) {
+            return; // Cancelled meanwhile
+        }
+        try {
+            String response = filter(OllamaBackendPool.withSession(sessionId,
+                    () -> AbortSignal.withSignal(turn.signal, () -> blocking.apply(input))));
+            turn.markAnswered();
+            turn.emit(response);
+            turn.result.complete(response);
+        } catch (InferenceScheduler.RejectedException e) {
+            System.out.println("[WARNING] " + e.getMessage());
+            turn.notice(BUSY_RESPONSE);
+            turn.result.complete(BUSY_RESPONSE);
+        } catch (RuntimeException e) {
+            turn.result.completeExceptionally(e);
+        } finally {
+            turn.endStart();
+        }
+    }
+
+    /**
+     * Records the conversation of a session in its journal in the given directory,
+     * resuming the campaign it holds. The journal is flushed when the session is evicted.
+     *
+     * @param directory The session directory, or null to keep the conversation in memory.
+     * @param sessionId The session, naming its journal file.
+     * @param memory The memory to rebuild and record.
+     * @param summaries The summarizing memory at the bottom of it.
+     * @return The journaled memory, or the memory itself if no journal can be used.
+     */
+    private static ChatMemory openJournal(String directory, String sessionId, ChatMemory memory,
+                                          SummarizingChatMemory summaries) {
+        if (directory == null || directory.isBlank()) {
+            return memory;
+        }
+        try {
+            Path dir = Files.createDirectories(Path.of(directory));
+            return new SessionJournal(dir.resolve(sessionId + ".journal"), memory, summaries);
+        } catch (IOException e) {
+            System.err.println("[WARNING] Session journal unavailable: " + e.getMessage());
+            return memory;
+        }
+    }
+
+    /**
+     * One streamed turn: its result, the text delivered so far, whether the assistant
+     * stored a whole answer, whether it has begun in its session, the signal aborting
+     * its streams once it is over, and the thread starting the generation, interrupted
+     * if the turn is cancelled while it waits for a slot or for the previous turn.
+     */
+    private static final class Turn {
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final AbortSignal signal = new AbortSignal();
+        private final Consumer<String> onToken;
+        private final StringBuilder streamed = new StringBuilder();
+        private boolean answered;
+        private boolean begun;
+        private Thread starter;
+
+        private Turn(Consumer<String> onToken) {
+            this.onToken = onToken;
+        }
+
+        /**
+         * Hands text to the caller, unless the turn is over.
+         *
+         * @return False if the turn is over.
+         */
+        private synchronized boolean emit(String text) {
+            if (result.isDone()) {
+                return false;
+            }
+            if (!text.isEmpty()) {
+                streamed.append(text);
+                onToken.accept(text);
+            }
+            return true;
+        }
+
+        /**
+         * Hands the caller a message which is not part of the narration, so the turn
+         * is not kept for it, unless the turn is over.
+         */
+        private synchronized void notice(String text) {
+            if (!result.isDone()) {
+                onToken.accept(text);
+            }
+        }
+
+        private synchronized String streamed() {
+            return streamed.toString();
+        }
+
+        private synchronized void markAnswered() {
+            answered = true;
+        }
+
+        private synchronized boolean answered() {
+            return answered;
+        }
+
+        /**
+         * Records that the turn has begun in its session, unless it is over.
+         *
+         * @return False if the turn is over: it must not stay begun.
+         */
+        private synchronized boolean begin() {
+            if (result.isDone()) {
+                return false;
+            }
+            begun = true;
+            return true;
+        }
+
+        /**
+         * Runs an operation on the session turn if it has begun, never together with
+         * whileOpen, so a retry does not restart a turn already ended.
+         */
+        private synchronized void whileBegun(Runnable operation) {
+            if (begun) {
+                operation.run();
+            }
+        }
+
+        /**
+         * Runs an operation on the session turn unless the turn is over.
+         *
+         * @return False if the turn is over and the operation was not run.
+         */
+        private synchronized boolean whileOpen(Runnable operation) {
+            if (result.isDone()) {
+                return false;
+            }
+            operation.run();
+            return true;
+        }
+
+        private synchronized boolean beginStart() {
+            if (result.isDone()) {
+                return false;
+            }
+            starter = Thread.currentThread();
+            return true;
+        }
+
+        private synchronized void endStart() {
+            starter = null;
+            // An interrupt was meant for the slot wait only; a pooled thread goes on clean
+            Thread.interrupted();
+        }
+
+        private synchronized void interruptStart() {
+            if (starter != null) {
+                starter.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Tells whether a response leaks a structured tool call instead of narration.
+     *
+     * @param response The model response.
+     * @return True if the response contains JSON function-call markers.
+     */
+    private static boolean isStructured(String response) {
+        return response.contains("{\"name\"") || response.contains("\"parameters\"");
+    }
 }
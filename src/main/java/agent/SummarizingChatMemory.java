@@ -0,0 +1,265 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * SummarizingChatMemory.java
+ * Chat memory bounded by an estimated token budget instead of a number of messages.
+ * The latest turns are kept verbatim; when the budget is exceeded, the oldest whole turns
+ * (a player message with the tool calls, tool results and narration that followed it)
+ * are evicted, so a tool result never loses its request. Evicted turns are folded into a
+ * rolling summary, sent as a second system message. The summary is regenerated in the
+ * background: eviction itself never waits for the model, so the prompt size, and thus
+ * the prefill time, stays flat however long the session grows.
+ */
+public class SummarizingChatMemory implements ChatMemory {
+
+    /**
+     * Estimated tokens added by the chat template around each message.
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final String SUMMARY_PREFIX = "Summary of the adventure so far: ";
+
+    /**
+     * Receives each new summary, so it can be persisted.
+     */
+    public interface SummaryListener {
+
+        /**
+         * Called after a summary was folded, while the memory is locked.
+         *
+         * @param summary The current summary, or null if summarizing failed so far.
+         * @param foldedMessages Number of messages, counted from the first one added
+         *                       (system messages excluded), no longer kept verbatim.
+         */
+        void summarized(String summary, long foldedMessages);
+    }
+
+    private final Object id;
+    private final int maxTokens;
+    private final ConversationSummarizer summarizer;
+    private final Executor executor;
+
+    private SystemMessage systemMessage;
+    private SystemMessage summaryMessage;
+    private final Deque<List<ChatMessage>> turns = new ArrayDeque<>();
+    private int turnTokens;
+    private final List<ChatMessage> unsummarized = new ArrayList<>(); // Evicted, not folded yet
+    private boolean summarizing;
+    private long generation; // Bumped by clear, so a late summary is discarded
+    private long folded; // Messages evicted and handled by the summarizer
+    private SummaryListener listener;
+
+    /**
+     * Creates a memory.
+     *
+     * @param id The memory identifier.
+     * @param maxTokens The estimated token budget of the whole memory, system messages
+     *                  included. The latest turn is always kept, even above the budget.
+     * @param summarizer Folds evicted turns into the summary.
+     * @param executor Runs the summarizer, off the narration path.
+     */
+    public SummarizingChatMemory(Object id, int maxTokens, ConversationSummarizer summarizer,
+                                 Executor executor) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("maxTokens must be positive");
+        }
+        this.id = id;
+        this.maxTokens = maxTokens;
+        this.summarizer = summarizer;
+        this.executor = executor;
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            systemMessage = system;
+        } else {
+            if (message instanceof UserMessage || turns.isEmpty()) {
+                turns.addLast(new ArrayList<>());
+            }
+            turns.getLast().add(message);
+            turnTokens += estimateTokens(message);
+        }
+        evictOverBudget();
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>();
+        if (systemMessage != null) {
+            messages.add(systemMessage);
+        }
+        if (summaryMessage != null) {
+            messages.add(summaryMessage);
+        }
+        for (List<ChatMessage> turn : turns) {
+            messages.addAll(turn);
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized void clear() {
+        systemMessage = null;
+        summaryMessage = null;
+        turns.clear();
+        turnTokens = 0;
+        unsummarized.clear();
+        summarizing = false;
+        generation++;
+        folded = 0;
+    }
+
+    /**
+     * Sets the listener notified of each new summary.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public synchronized void setSummaryListener(SummaryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Restores a summary saved earlier, when the conversation is rebuilt without the
+     * model. The messages not folded into it are then added again as usual.
+     *
+     * @param summary The saved summary, or null if there was none.
+     * @param foldedMessages The number of messages the summary covers.
+     */
+    public synchronized void restoreSummary(String summary, long foldedMessages) {
+        summaryMessage = summary == null ? null : SystemMessage.from(SUMMARY_PREFIX + summary);
+        folded = foldedMessages;
+    }
+
+    /**
+     * Returns the current summary of the evicted turns.
+     *
+     * @return The summary, or null while no turn was folded yet.
+     */
+    public synchronized String summary() {
+        return summaryMessage == null ? null
+                : summaryMessage.text().substring(SUMMARY_PREFIX.length());
+    }
+
+    /**
+     * Returns the estimated size of the messages sent to the model.
+     *
+     * @return The estimated number of tokens.
+     */
+    public synchronized int estimatedTokens() {
+        return estimateTokens(systemMessage) + estimateTokens(summaryMessage) + turnTokens;
+    }
+
+    /**
+     * Estimates the tokens of a message: about four characters per token for English
+     * prose, which is all the budget needs.
+     *
+     * @param message The message, or null.
+     * @return The estimated number of tokens, 0 for null.
+     */
+    static int estimateTokens(ChatMessage message) {
+        if (message == null) {
+            return 0;
+        }
+        int chars = 0;
+        if (message instanceof SystemMessage system) {
+            chars = system.text().length();
+        } else if (message instanceof UserMessage user) {
+            chars = user.hasSingleText() ? user.singleText().length() : 0;
+        } else if (message instanceof AiMessage ai) {
+            chars = ai.text() == null ? 0 : ai.text().length();
+            if (ai.hasToolExecutionRequests()) {
+                for (ToolExecutionRequest request : ai.toolExecutionRequests()) {
+                    chars += request.name().length() + request.arguments().length();
+                }
+            }
+        } else if (message instanceof ToolExecutionResultMessage result) {
+            chars = result.text().length();
+        }
+        return (chars + 3) / 4 + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    private void evictOverBudget() {
+        while (turns.size() > 1 && estimatedTokens() > maxTokens) {
+            List<ChatMessage> oldest = turns.removeFirst();
+            for (ChatMessage message : oldest) {
+                turnTokens -= estimateTokens(message);
+            }
+            unsummarized.addAll(oldest);
+        }
+        if (!unsummarized.isEmpty() && !summarizing) {
+            startSummary();
+        }
+    }
+
+    /**
+     * Folds the evicted turns into the summary on the executor. Only one summary is
+     * generated at a time; turns evicted meanwhile are folded by the next one.
+     */
+    private void startSummary() {
+        summarizing = true;
+        List<ChatMessage> batch = List.copyOf(unsummarized);
+        unsummarized.clear();
+        String previous = summary();
+        long started = generation;
+        executor.execute(() -> {
+            String updated;
+            try {
+                updated = summarizer.summarize(previous, batch);
+            } catch (InferenceScheduler.RejectedException e) {
+                retrySummary(started, batch);
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("[WARNING] Conversation summary failed: " + e.getMessage());
+                updated = null;
+            }
+            finishSummary(started, batch.size(), updated);
+        });
+    }
+
+    /**
+     * Puts back a batch whose summary was shed by the overloaded model. It is folded by
+     * the summary started on the next change of the memory, not at once.
+     */
+    private synchronized void retrySummary(long started, List<ChatMessage> batch) {
+        if (started != generation) {
+            return;
+        }
+        summarizing = false;
+        unsummarized.addAll(0, batch);
+    }
+
+    private synchronized void finishSummary(long started, int batchSize, String updated) {
+        if (started != generation) {
+            return;
+        }
+        summarizing = false;
+        folded += batchSize; // A failed batch is dropped, the previous summary is kept
+        if (updated != null && !updated.isBlank()) {
+            summaryMessage = SystemMessage.from(SUMMARY_PREFIX + updated);
+        }
+        if (listener != null) {
+            listener.summarized(summary(), folded);
+        }
+        // A longer summary may push more turns out, and turns may have waited meanwhile
+        evictOverBudget();
+    }
+}
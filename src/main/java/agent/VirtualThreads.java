@@ -0,0 +1,42 @@
+package agent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * VirtualThreads.java
+ * Executors running each task on its own virtual thread when the JVM provides them
+ * (Java 21 and later), so many sessions blocked on the model or the network cost almost
+ * no memory. The project targets Java 17, so the Java 21 factory is looked up by
+ * reflection; on older JVMs a cached pool of daemon platform threads is used instead.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor starting one virtual thread per task, or a cached pool of
+     * named daemon threads when virtual threads are not available.
+     *
+     * @param name The prefix of the thread names of the fallback pool.
+     * @return The executor.
+     */
+    public static ExecutorService newExecutor(String name) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException
+                 | InvocationTargetException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
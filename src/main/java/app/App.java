@@ -1,5 +1,11 @@
 package app;
 
+import agent.EnvVarUtils;
+import agent.LoreSnapshotImporter;
+import agent.LoreStore;
+import agent.MasterAgent;
+import java.io.IOException;
+import java.nio.file.Path;
 import ui.ConsoleUi;
 
 /**
@@ -8,14 +14,77 @@ import ui.ConsoleUi;
  */
 public class App {
 
+    private static final String IMPORT_LORE = "--import-lore";
+    private static final String SERVE = "--serve";
+
     /**
      * The main method that launches the application.
      * It creates an instance of the ConsoleUi class and starts the user interface.
+     * With "--import-lore &lt;snapshot-dir&gt;", it instead imports an offline lore snapshot
+     * into the store named by APP_LORE_STORE and exits.
+     * With "--serve [port]", it instead runs the local HTTP server for many players.
      *
-     * @param args Command-line arguments passed to the application (not used).
+     * @param args Command-line arguments passed to the application.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && IMPORT_LORE.equals(args[0])) {
+            importLore(args);
+            return;
+        }
+        if (args.length > 0 && SERVE.equals(args[0])) {
+            serve(args);
+            return;
+        }
         ConsoleUi ui = new ConsoleUi(); // Initialize the console user interface
         ui.start();
     }
+
+    /**
+     * Starts the narrator HTTP server on the loopback interface. It runs until the
+     * process is stopped.
+     *
+     * @param args Command-line arguments: the option, optionally followed by the port.
+     */
+    private static void serve(String[] args) {
+        int port = NarratorServer.DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: app " + SERVE + " [port]");
+                return;
+            }
+        }
+        try {
+            MasterAgent master = new MasterAgent();
+            master.warmUp();
+            NarratorServer server = new NarratorServer(master, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            System.out.println("Narrator server listening on http://127.0.0.1:"
+                    + server.port() + "/sessions/{id}/actions");
+        } catch (IOException e) {
+            System.err.println("Narrator server failed to start: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Imports an offline snapshot of the D&D 5E API into the lore store.
+     *
+     * @param args Command-line arguments: the option followed by the snapshot directory.
+     */
+    private static void importLore(String[] args) {
+        String location = EnvVarUtils.getEnvVar("APP_LORE_STORE");
+        if (args.length < 2 || location == null || location.isBlank()) {
+            System.err.println("Usage: APP_LORE_STORE=<store-file> app " + IMPORT_LORE
+                    + " <snapshot-dir>");
+            return;
+        }
+        try (LoreStore store = new LoreStore(Path.of(location))) {
+            int count = new LoreSnapshotImporter(store).importSnapshot(Path.of(args[1]));
+            System.out.println("Imported " + count + " lore documents into " + location);
+        } catch (IOException e) {
+            System.err.println("Lore import failed: " + e.getMessage());
+        }
+    }
 }
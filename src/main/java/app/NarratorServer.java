@@ -0,0 +1,316 @@
+package app;
+
+import agent.InferenceScheduler;
+import agent.LoreCache;
+import agent.MasterAgent;
+import agent.ModelTiers;
+import agent.OllamaBackendPool;
+import agent.SessionRegistry;
+import agent.VirtualThreads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * NarratorServer.java
+ * Local HTTP front end of the MasterAgent, so one JVM serves many players at once.
+ * It uses the JDK built-in HTTP server, bound to the loopback interface only, and runs
+ * each request on its own virtual thread (see VirtualThreads).
+ *
+ * <p>Endpoints:
+ * <ul>
+ *   <li>POST /sessions/{id}/actions, with the player action as a UTF-8 text body:
+ *       the response is a stream of server-sent events, one "token" event per piece
+ *       of narration as it is generated, then a "done" event carrying the whole
+ *       response, or an "error" event. An action sent while the session still has a
+ *       turn in progress is answered with 409.</li>
+ *   <li>GET /health: answers "ok".</li>
+ *   <li>GET /metrics: the queue depths, counters and wait times of the model admission
+ *       control of each model tier, the state of each Ollama backend and the counters
+ *       of the lore cache, in the Prometheus text format.</li>
+ * </ul>
+ * Each session id has its own story memory (see SessionRegistry).
+ */
+public class NarratorServer implements Closeable {
+
+    /**
+     * Port used when none is given.
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int MAX_ACTION_BYTES = 4096;
+    private static final Pattern ACTION_PATH = Pattern.compile("/sessions/([^/]+)/actions");
+
+    private final MasterAgent master;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Sessions with a turn in progress: one turn per session at a time
+    private final Set<String> activeSessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates the server, bound to the loopback interface. It serves nothing until
+     * start is called.
+     *
+     * @param master The agent processing the actions of every session.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be bound.
+     */
+    public NarratorServer(MasterAgent master, int port) throws IOException {
+        this.master = master;
+        this.executor = VirtualThreads.newExecutor("http");
+        this.server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/sessions/", this::handleAction);
+        server.createContext("/health", this::handleHealth);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The bound port.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server at once, dropping the streams in progress.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, "ok");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder metrics = new StringBuilder();
+            for (Map.Entry<ModelTiers.Tier, InferenceScheduler.Stats> tier
+                    : master.inferenceStats().entrySet()) {
+                InferenceScheduler.Stats stats = tier.getValue();
+                String name = tier.getKey().name().toLowerCase(Locale.ROOT);
+                metrics.append(String.format(Locale.ROOT, """
+                        inference_slots{tier="%1$s"} %2$d
+                        inference_running{tier="%1$s"} %3$d
+                        inference_queued{tier="%1$s",priority="interactive"} %4$d
+                        inference_queued{tier="%1$s",priority="background"} %5$d
+                        inference_admitted_total{tier="%1$s"} %6$d
+                        inference_shed_total{tier="%1$s"} %7$d
+                        inference_wait_p95_seconds{tier="%1$s",priority="interactive"} %8$s
+                        inference_wait_p95_seconds{tier="%1$s",priority="background"} %9$s
+                        inference_service_p50_seconds{tier="%1$s"} %10$s
+                        """, name, stats.slots(), stats.running(), stats.queuedInteractive(),
+                        stats.queuedBackground(), stats.admittedCount(), stats.shedCount(),
+                        seconds(stats.interactiveWaitP95Nanos()),
+                        seconds(stats.backgroundWaitP95Nanos()),
+                        seconds(stats.serviceP50Nanos())));
+            }
+            metrics.append("inference_tier_fallback_total ")
+                    .append(master.tierFallbackCount()).append('\n');
+            for (OllamaBackendPool.BackendStatus backend : master.backendStatus()) {
+                String label = "{backend=\"" + escapeLabel(backend.baseUrl()) + "\"} ";
+                metrics.append("inference_backend_up").append(label)
+                        .append(backend.healthy() ? 1 : 0).append('\n')
+                        .append("inference_backend_outstanding").append(label)
+                        .append(backend.outstanding()).append('\n');
+            }
+            LoreCache.Stats lore = master.loreCacheStats();
+            metrics.append(String.format(Locale.ROOT, """
+                    lore_cache_hits_total %d
+                    lore_cache_misses_total %d
+                    lore_cache_evictions_total %d
+                    lore_cache_entries %d
+                    lore_cache_load_average_seconds %s
+                    """, lore.hitCount(), lore.missCount(), lore.evictionCount(), lore.size(),
+                    seconds(lore.averageLoadNanos())));
+            respond(exchange, 200, metrics.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Escapes a metric label value; a backend without URL uses the Ollama default.
+     */
+    private static String escapeLabel(String value) {
+        return value == null ? "default"
+                : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Formats a duration in seconds, or NaN when nothing was measured yet.
+     */
+    private static String seconds(long nanos) {
+        return nanos < 0 ? "NaN" : String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+
+    private void handleAction(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "Use POST to send an action.");
+                return;
+            }
+            Matcher path = ACTION_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!path.matches()) {
+                respond(exchange, 404, "Unknown resource.");
+                return;
+            }
+            String sessionId = path.group(1);
+            if (!SessionRegistry.isValidSessionId(sessionId)) {
+                respond(exchange, 400, "Invalid session id.");
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_ACTION_BYTES + 1);
+            if (body.length > MAX_ACTION_BYTES) {
+                respond(exchange, 413, "Action too long.");
+                return;
+            }
+            String action = new String(body, StandardCharsets.UTF_8).strip();
+            if (action.isEmpty()) {
+                respond(exchange, 400, "Empty action.");
+                return;
+            }
+            if (!activeSessions.add(sessionId)) {
+                respond(exchange, 409, "A turn is already in progress in this session.");
+                return;
+            }
+            try {
+                stream(exchange, sessionId, action);
+            } finally {
+                activeSessions.remove(sessionId);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Processes the action and streams the response as server-sent events.
+     */
+    private void stream(HttpExchange exchange, String sessionId, String action)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        EventStream events = new EventStream(exchange.getResponseBody());
+        try {
+            CompletableFuture<String> turn = master.processInputStreaming(sessionId, action,
+                    token -> events.send("token", token));
+            events.onClose(() -> turn.cancel(true)); // Nobody reads the rest of the turn
+            String response = turn.join();
+            events.send("done", response);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            events.send("error", "The narrator failed: " + cause.getMessage());
+        } catch (RuntimeException e) {
+            events.send("error", "The narrator failed: " + e.getMessage());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text)
+            throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Writes server-sent events, each flushed at once. Tokens arrive on the model
+     * thread, so writes are synchronized. Once the client is gone, events are dropped
+     * and the close action runs.
+     */
+    private static final class EventStream {
+        private final OutputStream out;
+        private boolean closed;
+        private Runnable onClose = () -> { };
+
+        private EventStream(OutputStream out) {
+            this.out = out;
+        }
+
+        /**
+         * Sets the action run when the client is gone, at once if it is gone already.
+         */
+        private void onClose(Runnable action) {
+            synchronized (this) {
+                if (!closed) {
+                    onClose = action;
+                    return;
+                }
+            }
+            action.run();
+        }
+
+        private void send(String event, String data) {
+            Runnable closing;
+            synchronized (this) {
+                if (write(event, data)) {
+                    return;
+                }
+                closing = onClose;
+            }
+            closing.run();
+        }
+
+        /**
+         * Writes an event, holding the lock.
+         *
+         * @return False if the client has just gone.
+         */
+        private boolean write(String event, String data) {
+            if (closed) {
+                return true;
+            }
+            StringBuilder frame = new StringBuilder("event: ").append(event).append('\n');
+            // A line break inside the data is carried by a new "data" line
+            for (String line : data.split("\r?\n|\r", -1)) {
+                frame.append("data: ").append(line).append('\n');
+            }
+            frame.append('\n');
+            try {
+                out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                closed = true; // The player left
+                return false;
+            }
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package ui;
 
 import agent.MasterAgent;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Provides a console-based interface for interacting with the MasterAgent,
@@ -10,21 +19,29 @@ import java.util.Scanner;
  */
 public class ConsoleUi {
 
-    private final MasterAgent master = new MasterAgent(); // Principal agent
+    private MasterAgent master; // Principal agent, created by start
+    private final Writer out = new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8)); // Narration output
 
     /**
-     * Start the console user interface.
+     * Start the console user interface. The agents are created, and the models warmed
+     * up, while the banner is printed.
      */
     public void start() {
+        CompletableFuture<MasterAgent> starting = MasterAgent.startAsync();
         System.out.println("------------------------------------------");
         System.out.println("|     Narrator agent D&D - v1.0.0       |");
         System.out.println("------------------------------------------\n");
         
         // Start the adventure
         System.out.println("The narrator prepares your adventure...\n");
-        String introduction = master.processInput("Start a Dungeons & Dragons adventure."
-                + " Present the initial context and ask the player what they do."); //Initial prompt
-        System.out.println(introduction);
+        try {
+            master = starting.join();
+        } catch (CompletionException e) {
+            System.err.println("The narrator failed to start: " + e.getCause().getMessage());
+            return;
+        }
+        printStreamed(master::startAdventure); // Opening scene, pre-generated when possible
         System.out.println("\n------------------------------------------");
         System.out.println("Type your actions or 'quit' to exit");
         System.out.println("------------------------------------------\n");
@@ -51,9 +68,11 @@ public class ConsoleUi {
                 
                 try {
                     System.out.println(); // Blank line for readability
-                    String out = master.processInput(input); // Process user input
-                    System.out.println(out); // Display the response
-                    System.out.println(); 
+                    // Process user input, displaying the response live
+                    printStreamed(onToken -> master.processInputStreaming(input, onToken));
+                    System.out.println();
+                } catch (CompletionException e) {
+                    System.err.println("Error: " + e.getCause().getMessage());
                 } catch (Exception e) {
                     System.err.println("Error: " + e.getMessage());
                 }
@@ -62,4 +81,39 @@ public class ConsoleUi {
             System.err.println("Unexpected error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs a request and prints the response token by token as it is generated,
+     * so the player starts reading as soon as the first token arrives.
+     * If the complete response differs from what was streamed (a response blocked
+     * by the narrator filter), the final response is printed after it.
+     *
+     * @param request Starts the request, handing the tokens to the given consumer.
+     */
+    private void printStreamed(Function<Consumer<String>, CompletableFuture<String>> request) {
+        StringBuilder streamed = new StringBuilder();
+        String response = request.apply(token -> {
+            streamed.append(token);
+            print(token);
+        }).join();
+        if (!response.contentEquals(streamed)) {
+            print("\n\n" + response);
+        }
+        print("\n");
+    }
+
+    /**
+     * Writes text to the console at once: the writer buffers the encoding and is
+     * flushed after each token so it shows up immediately.
+     *
+     * @param text The text to print.
+     */
+    private void print(String text) {
+        try {
+            out.write(text);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
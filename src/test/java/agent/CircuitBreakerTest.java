@@ -0,0 +1,69 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker =
+            new CircuitBreaker(3, Duration.ofSeconds(30), now::get);
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.recordFailure();
+        }
+    }
+
+    @Test
+    @DisplayName("Opens after consecutive failures only")
+    void opensAfterConsecutiveFailures() {
+        fail(2);
+        breaker.recordSuccess();
+        fail(2);
+
+        Assertions.assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Assertions.assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    @DisplayName("Lets a single trial request through once the open period elapsed")
+    void letsSingleTrialThrough() {
+        fail(3);
+        now.addAndGet(Duration.ofSeconds(29).toNanos());
+        Assertions.assertFalse(breaker.allowRequest());
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        Assertions.assertTrue(breaker.allowRequest());
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        Assertions.assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    @DisplayName("Closes on a successful trial and reopens on a failed one")
+    void trialOutcomeDecidesState() {
+        fail(3);
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        breaker.allowRequest();
+        breaker.recordFailure();
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Assertions.assertFalse(breaker.allowRequest());
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        breaker.allowRequest();
+        breaker.recordSuccess();
+
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        Assertions.assertTrue(breaker.allowRequest());
+        Assertions.assertTrue(breaker.allowRequest());
+    }
+}
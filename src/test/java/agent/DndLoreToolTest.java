@@ -4,14 +4,49 @@ import org.junit.jupiter.api.*;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class DndLoreToolTest {
 
+    private static final String GOBLIN_JSON = """
+            {
+                "index": "goblin",
+                "name": "Goblin",
+                "type": "humanoid",
+                "size": "Small",
+                "challenge_rating": 0.25,
+                "hit_points": 7,
+                "armor_class": [{"value": 15}]
+            }
+            """;
+
     private DndLoreTool dndLoreTool;
     private ObjectMapper objectMapper;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger documentRequests = new AtomicInteger();
 
     @BeforeEach
     void setUp() {
@@ -19,6 +54,66 @@ class DndLoreToolTest {
         objectMapper = new ObjectMapper();
     }
 
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a local stand-in for the D&D 5E API knowing only the goblin.
+     * Document requests wait for the latch, so tests control when they complete.
+     */
+    private String startStubApi(CountDownLatch release) throws IOException {
+        return startServer(exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/api/monsters")) {
+                respond(exchange, 200, "{\"count\": 1, \"results\": [{\"index\": \"goblin\"}]}");
+            } else if (path.equals("/api/monsters/goblin")) {
+                documentRequests.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, GOBLIN_JSON);
+            } else {
+                documentRequests.incrementAndGet();
+                respond(exchange, 404, "{\"error\": \"Not found\"}");
+            }
+        });
+    }
+
+    /**
+     * Starts a local HTTP server handling "/api" and returns its API base URL.
+     */
+    private String startServer(HttpHandler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/api", handler);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
 
     @Test
     @DisplayName("Returns formatted details for a valid monster JSON")
@@ -186,4 +281,218 @@ class DndLoreToolTest {
         ObjectMapper objectMapper = (ObjectMapper) objectMapperField.get(tool);
         Assertions.assertNotNull(objectMapper, "objectMapper should be initialized");
     }
+
+    @Test
+    @DisplayName("Concurrent lookups of the same monster share one request")
+    void concurrentLookupsShareOneRequest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DndLoreTool tool = new DndLoreTool(startStubApi(release), null, false);
+
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            lookups.add(tool.lookupAsync(LoreCategoryEnum.MONSTER, "Goblin"));
+        }
+        while (documentRequests.get() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (CompletableFuture<String> lookup : lookups) {
+            Assertions.assertTrue(lookup.get(5, TimeUnit.SECONDS).contains("D&D MONSTER: Goblin"));
+        }
+        Assertions.assertEquals(1, documentRequests.get());
+    }
+
+    @Test
+    @DisplayName("Answers repeated lookups and unknown names from the cache")
+    void answersRepeatedLookupsFromCache() throws Exception {
+        CountDownLatch release = new CountDownLatch(0);
+        DndLoreTool tool = new DndLoreTool(startStubApi(release), null, false);
+
+        String first = tool.searchMonster("goblin");
+        String second = tool.searchMonster("Goblin ");
+        String unknown = tool.searchMonster("tarrasque");
+        String unknownAgain = tool.searchMonster("tarrasque");
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertEquals("Monster 'tarrasque' not found in D&D bestiary.", unknown);
+        Assertions.assertEquals(unknown, unknownAgain);
+        Assertions.assertEquals(2, documentRequests.get());
+        Assertions.assertEquals(2, tool.cacheStats().hitCount());
+        Assertions.assertEquals(2, tool.cacheStats().missCount()); // One per lookup
+    }
+
+    @Test
+    @DisplayName("Batch search answers every name in one block, in order")
+    void batchSearchAnswersEveryName() throws Exception {
+        CountDownLatch release = new CountDownLatch(0);
+        DndLoreTool tool = new DndLoreTool(startStubApi(release), null, false);
+
+        String block = tool.searchLoreBatch(List.of("goblin", "tarrasque", "Goblin"),
+                List.of("wish"), null);
+
+        String[] entries = block.split("\n---\n");
+        Assertions.assertEquals(3, entries.length);
+        Assertions.assertTrue(entries[0].contains("D&D MONSTER: Goblin"));
+        Assertions.assertEquals("Monster 'tarrasque' not found in D&D bestiary.", entries[1]);
+        Assertions.assertTrue(entries[2].startsWith("Spell 'wish' not found"));
+    }
+
+    @Test
+    @DisplayName("Batch search without names does not call the API")
+    void batchSearchWithoutNames() throws Exception {
+        CountDownLatch release = new CountDownLatch(0);
+        DndLoreTool tool = new DndLoreTool(startStubApi(release), null, false);
+
+        String block = tool.searchLoreBatch(null, List.of(" "), List.of());
+
+        Assertions.assertEquals("No names given: nothing to search.", block);
+        Assertions.assertEquals(0, documentRequests.get());
+    }
+
+    @Test
+    @DisplayName("Answers the fallback message when the API is slower than the timeout")
+    void answersFallbackOnTimeout() throws Exception {
+        String api = startServer(exchange -> {
+            documentRequests.incrementAndGet();
+            sleep(2000);
+            respond(exchange, 200, GOBLIN_JSON);
+        });
+        DndLoreTool tool = new DndLoreTool(api, null, false, Duration.ofSeconds(1),
+                Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        String goblin = tool.searchMonster("goblin");
+
+        Assertions.assertEquals(LoreCategoryEnum.MONSTER.unavailable("goblin"), goblin);
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    @DisplayName("Hedges a request slower than the usual latency and takes the first answer")
+    void hedgesSlowRequest() throws Exception {
+        AtomicInteger slowAttempts = new AtomicInteger();
+        String api = startServer(exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/api/monsters/goblin") && slowAttempts.incrementAndGet() == 1) {
+                sleep(3000); // Only the first attempt is stuck
+            }
+            if (path.startsWith("/api/monsters/")) {
+                respond(exchange, 200, GOBLIN_JSON);
+            } else {
+                respond(exchange, 404, "{\"error\": \"Not found\"}");
+            }
+        });
+        DndLoreTool tool = new DndLoreTool(api, null, false);
+        for (int i = 0; i < 20; i++) {
+            tool.searchMonster("warm-up-" + i); // Teaches the tool the usual latency
+        }
+
+        long start = System.nanoTime();
+        String goblin = tool.searchMonster("goblin");
+
+        Assertions.assertTrue(goblin.contains("D&D MONSTER: Goblin"));
+        Assertions.assertEquals(2, slowAttempts.get());
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    @DisplayName("Fails fast once the API keeps failing")
+    void failsFastWhenApiKeepsFailing() throws Exception {
+        String api = startServer(exchange -> {
+            if (exchange.getRequestURI().getPath().startsWith("/api/monsters/")) {
+                documentRequests.incrementAndGet();
+            }
+            respond(exchange, 503, "{\"error\": \"Unavailable\"}");
+        });
+        DndLoreTool tool = new DndLoreTool(api, null, false);
+        for (int i = 0; i < 5; i++) {
+            tool.searchMonster("monster-" + i);
+        }
+
+        String owlbear = tool.searchMonster("owlbear");
+
+        Assertions.assertEquals(LoreCategoryEnum.MONSTER.unavailable("owlbear"), owlbear);
+        Assertions.assertEquals(5, documentRequests.get());
+    }
+
+    @Test
+    @DisplayName("Fetches a name as typed without waiting for the name index")
+    void fetchesExactNameWhileIndexLoads() throws Exception {
+        CountDownLatch listReleased = new CountDownLatch(1);
+        String api = startServer(exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/api/monsters")) {
+                try {
+                    listReleased.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, "{\"count\": 1, \"results\": [{\"index\": \"goblin\"}]}");
+            } else if (path.equals("/api/monsters/goblin")) {
+                respond(exchange, 200, GOBLIN_JSON);
+            } else {
+                respond(exchange, 404, "{\"error\": \"Not found\"}");
+            }
+        });
+        DndLoreTool tool = new DndLoreTool(api, null, false);
+
+        String goblin = tool.lookupAsync(LoreCategoryEnum.MONSTER, "goblin").get(2, TimeUnit.SECONDS);
+        CompletableFuture<String> misspelled = tool.lookupAsync(LoreCategoryEnum.MONSTER, "gobline");
+        Thread.sleep(100);
+        Assertions.assertFalse(misspelled.isDone()); // A miss waits for the index
+        listReleased.countDown();
+
+        Assertions.assertTrue(goblin.contains("D&D MONSTER: Goblin"));
+        Assertions.assertTrue(misspelled.get(5, TimeUnit.SECONDS)
+                .startsWith("Closest match for 'gobline': goblin"));
+    }
+
+    @Test
+    @DisplayName("Loads the name index again after a failed attempt")
+    void retriesFailedNameIndex() throws Exception {
+        AtomicInteger listRequests = new AtomicInteger();
+        String api = startServer(exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/api/monsters")) {
+                if (listRequests.incrementAndGet() == 1) {
+                    respond(exchange, 503, "{\"error\": \"Unavailable\"}");
+                } else {
+                    respond(exchange, 200, "{\"count\": 1, \"results\": [{\"index\": \"goblin\"}]}");
+                }
+            } else if (path.equals("/api/monsters/goblin")) {
+                respond(exchange, 200, GOBLIN_JSON);
+            } else {
+                respond(exchange, 404, "{\"error\": \"Not found\"}");
+            }
+        });
+        DndLoreTool tool = new DndLoreTool(api, null, false);
+
+        String first = tool.searchMonster("gobline");
+        String second = tool.searchMonster("Gobline ");
+
+        Assertions.assertEquals("Monster 'gobline' not found in D&D bestiary.", first);
+        Assertions.assertEquals(2, listRequests.get());
+        Assertions.assertTrue(second.startsWith("Closest match for 'Gobline ': goblin"));
+    }
+
+    @Test
+    @DisplayName("Warm-up opens the API connection and loads every name index")
+    void warmsUpLookups() throws Exception {
+        Set<String> requests = ConcurrentHashMap.newKeySet();
+        String api = startServer(exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            } else {
+                respond(exchange, 200, "{\"count\": 0, \"results\": []}");
+            }
+        });
+
+        new DndLoreTool(api, null, false).warmUp().get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(Set.of("HEAD /api", "GET /api/monsters", "GET /api/spells",
+                "GET /api/magic-items"), requests);
+    }
 }
@@ -0,0 +1,116 @@
+package agent;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class EmbeddingIntentClassifierTest {
+
+    private static final List<String> VOCABULARY = List.of("make", "new", "hero", "sword",
+            "open", "door", "walk", "north", "weather", "today", "rain");
+
+    private static final Map<IntentTypeEnum, List<String>> EXAMPLES = Map.of(
+            IntentTypeEnum.CREATE_ENTITY, List.of("make a new hero", "a new sword"),
+            IntentTypeEnum.CONTINUE_STORY, List.of("open the door", "walk north"),
+            IntentTypeEnum.UNKNOWN, List.of("weather today"));
+
+    private final AtomicInteger embedded = new AtomicInteger();
+
+    /**
+     * A bag-of-words stand-in for the embedding model: one dimension per known word.
+     */
+    private final EmbeddingModel model = segments -> {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            embedded.incrementAndGet();
+            float[] vector = new float[VOCABULARY.size()];
+            for (String word : segment.text().toLowerCase(Locale.ROOT).split("\\W+")) {
+                int index = VOCABULARY.indexOf(word);
+                if (index >= 0) {
+                    vector[index]++;
+                }
+            }
+            embeddings.add(Embedding.from(vector));
+        }
+        return Response.from(embeddings);
+    };
+
+    private EmbeddingIntentClassifier classifier() {
+        return new EmbeddingIntentClassifier(model, EXAMPLES, 0.3, 16);
+    }
+
+    @Test
+    @DisplayName("Gives an input the intent of its nearest examples")
+    void classifiesByNearestExamples() {
+        EmbeddingIntentClassifier classifier = classifier();
+
+        Assertions.assertEquals(IntentTypeEnum.CREATE_ENTITY,
+                classifier.classify("I'd like a new hero, please").intent());
+        Assertions.assertEquals(IntentTypeEnum.CONTINUE_STORY,
+                classifier.classify("We walk to the north gate").intent());
+        Assertions.assertEquals(IntentTypeEnum.UNKNOWN,
+                classifier.classify("Will it rain today?").intent());
+    }
+
+    @Test
+    @DisplayName("Continues the story when no example is close enough")
+    void continuesOnDistantInput() {
+        EmbeddingIntentClassifier.Classification classification =
+                classifier().classify("Something else entirely");
+
+        Assertions.assertEquals(IntentTypeEnum.CONTINUE_STORY, classification.intent());
+        Assertions.assertTrue(classification.similarity() < 0.3);
+    }
+
+    @Test
+    @DisplayName("Continues the story when another intent wins only narrowly")
+    void continuesOnNarrowWin() {
+        EmbeddingIntentClassifier classifier = classifier();
+
+        // As close to "a new sword" as to "open the door", more votes for a creation
+        Assertions.assertEquals(IntentTypeEnum.CONTINUE_STORY,
+                classifier.classify("A new sword to open the door").intent());
+        Assertions.assertEquals(IntentTypeEnum.CONTINUE_STORY,
+                classifier.classify("I open the door and sneak inside").intent());
+    }
+
+    @Test
+    @DisplayName("Embeds a repeated input only once")
+    void cachesRepeatedInputs() {
+        EmbeddingIntentClassifier classifier = classifier();
+        int indexed = embedded.get();
+
+        classifier.classify("Open the door");
+        classifier.classify("  open the DOOR ");
+        classifier.classify("Open the door");
+
+        Assertions.assertEquals(indexed + 1, embedded.get());
+    }
+
+    @Test
+    @DisplayName("Forgets the least recently used inputs beyond its capacity")
+    void boundsTheCache() {
+        EmbeddingIntentClassifier classifier = new EmbeddingIntentClassifier(model, EXAMPLES,
+                0.3, 2);
+        classifier.classify("open");
+        classifier.classify("walk");
+        classifier.classify("open");
+        classifier.classify("north");
+        int before = embedded.get();
+
+        classifier.classify("open");
+        Assertions.assertEquals(before, embedded.get());
+        classifier.classify("walk");
+        Assertions.assertEquals(before + 1, embedded.get());
+    }
+}
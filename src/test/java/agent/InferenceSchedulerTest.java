@@ -0,0 +1,182 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+class InferenceSchedulerTest {
+
+    private static final Duration LONG_WAIT = Duration.ofSeconds(5);
+
+    private final ExecutorService executor = VirtualThreads.newExecutor("test-inference");
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < end, "Condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private CompletableFuture<InferenceScheduler.Permit> acquireAsync(
+            InferenceScheduler scheduler, InferenceScheduler.Priority priority) {
+        return CompletableFuture.supplyAsync(() -> scheduler.acquire(priority, LONG_WAIT),
+                executor);
+    }
+
+    @Test
+    @DisplayName("Never runs more requests than the backend slots")
+    void boundsConcurrency() {
+        InferenceScheduler scheduler = new InferenceScheduler(2, 16);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger highest = new AtomicInteger();
+        List<CompletableFuture<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(CompletableFuture.supplyAsync(() -> scheduler.run(
+                    InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT, () -> {
+                        highest.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        inFlight.decrementAndGet();
+                        return "done";
+                    }), executor));
+        }
+        requests.forEach(CompletableFuture::join);
+
+        Assertions.assertEquals(2, highest.get());
+        InferenceScheduler.Stats stats = scheduler.stats();
+        Assertions.assertEquals(8, stats.admittedCount());
+        Assertions.assertEquals(0, stats.running());
+    }
+
+    @Test
+    @DisplayName("Admits waiting interactive requests before background ones")
+    void admitsInteractiveFirst() throws Exception {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 16);
+        InferenceScheduler.Permit held = scheduler.acquire(
+                InferenceScheduler.Priority.BACKGROUND, LONG_WAIT);
+        var background = acquireAsync(scheduler, InferenceScheduler.Priority.BACKGROUND);
+        waitUntil(() -> scheduler.stats().queuedBackground() == 1);
+        var interactive = acquireAsync(scheduler, InferenceScheduler.Priority.INTERACTIVE);
+        waitUntil(() -> scheduler.stats().queuedInteractive() == 1);
+
+        held.close();
+
+        InferenceScheduler.Permit first = interactive.get(5, TimeUnit.SECONDS);
+        Assertions.assertFalse(background.isDone());
+        first.close();
+        background.get(5, TimeUnit.SECONDS).close();
+        Assertions.assertEquals(0, scheduler.stats().running());
+    }
+
+    @Test
+    @DisplayName("Sheds a request at once when the queue is full")
+    void shedsWhenQueueFull() {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 0);
+        InferenceScheduler.Permit held = scheduler.acquire(
+                InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+
+        Assertions.assertThrows(InferenceScheduler.RejectedException.class,
+                () -> scheduler.run(InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT,
+                        () -> "never"));
+        Assertions.assertEquals(1, scheduler.stats().shedCount());
+
+        held.close();
+        Assertions.assertEquals("ran", scheduler.run(InferenceScheduler.Priority.INTERACTIVE,
+                LONG_WAIT, () -> "ran"));
+    }
+
+    @Test
+    @DisplayName("Sheds a request not started before its deadline")
+    void shedsAtDeadline() {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 16);
+        scheduler.acquire(InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+
+        long start = System.nanoTime();
+        Assertions.assertThrows(InferenceScheduler.RejectedException.class,
+                () -> scheduler.acquire(InferenceScheduler.Priority.INTERACTIVE,
+                        Duration.ofMillis(50)));
+
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertEquals(0, scheduler.stats().queuedInteractive());
+    }
+
+    @Test
+    @DisplayName("Sheds waiting background work to queue an interactive request")
+    void interactiveDisplacesBackground() throws Exception {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 1);
+        InferenceScheduler.Permit held = scheduler.acquire(
+                InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        var background = acquireAsync(scheduler, InferenceScheduler.Priority.BACKGROUND);
+        waitUntil(() -> scheduler.stats().queuedBackground() == 1);
+
+        var interactive = acquireAsync(scheduler, InferenceScheduler.Priority.INTERACTIVE);
+
+        ExecutionException shed = Assertions.assertThrows(ExecutionException.class,
+                () -> background.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(shed.getCause() instanceof InferenceScheduler.RejectedException);
+        held.close();
+        interactive.get(5, TimeUnit.SECONDS).close();
+        Assertions.assertEquals(1, scheduler.stats().shedCount());
+    }
+
+    @Test
+    @DisplayName("Reports the queue depth and the wait times")
+    void reportsMetrics() throws Exception {
+        AtomicLong now = new AtomicLong();
+        InferenceScheduler scheduler = new InferenceScheduler(1, 16, now::get);
+        InferenceScheduler.Permit held = scheduler.acquire(
+                InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        var waiting = acquireAsync(scheduler, InferenceScheduler.Priority.INTERACTIVE);
+        waitUntil(() -> scheduler.stats().queuedInteractive() == 1);
+        Assertions.assertEquals(1, scheduler.stats().running());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+        held.close();
+        held.close(); // Closing twice frees a single slot
+        waiting.get(5, TimeUnit.SECONDS).close();
+
+        InferenceScheduler.Stats stats = scheduler.stats();
+        Assertions.assertEquals(0, stats.queuedInteractive());
+        Assertions.assertEquals(2, stats.admittedCount());
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(30),
+                stats.interactiveWaitP95Nanos());
+        Assertions.assertEquals(-1, stats.backgroundWaitP95Nanos());
+    }
+
+    @Test
+    @DisplayName("Estimates the wait from the queue and the median service time")
+    void estimatesWait() {
+        AtomicLong now = new AtomicLong();
+        InferenceScheduler scheduler = new InferenceScheduler(2, 16, now::get);
+        Assertions.assertEquals(0, scheduler.estimatedWaitNanos(
+                InferenceScheduler.Priority.INTERACTIVE));
+
+        InferenceScheduler.Permit first = scheduler.acquire(
+                InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        first.close();
+        Assertions.assertEquals(0, scheduler.estimatedWaitNanos(
+                InferenceScheduler.Priority.INTERACTIVE));
+
+        scheduler.acquire(InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        scheduler.acquire(InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(2), scheduler.estimatedWaitNanos(
+                InferenceScheduler.Priority.INTERACTIVE));
+        Assertions.assertEquals(TimeUnit.SECONDS.toNanos(4), scheduler.stats().serviceP50Nanos());
+    }
+}
@@ -2,6 +2,19 @@ package agent;
 
 import org.junit.jupiter.api.Test;
 
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class IntentAnalyzerTest {
@@ -26,6 +39,17 @@ class IntentAnalyzerTest {
         assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("Begin the quest."));
     }
 
+    @Test
+    void matchesEveryInflectionOfTheKeywords() {
+        assertEquals(IntentTypeEnum.CREATE_ENTITY, analyzer.analyzeIntent("Show me the sword you created."));
+        assertEquals(IntentTypeEnum.CREATE_ENTITY, analyzer.analyzeIntent("A generated dungeon map, please."));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("The orc attacks again."));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("We started at the inn."));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("The bard told us a secret."));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("I am exploring the crypt."));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("The ritual began at midnight."));
+    }
+
     @Test
     void returnsContinueStoryForUnrecognizedInput() {
         assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("What is the meaning of life?"));
@@ -41,4 +65,124 @@ class IntentAnalyzerTest {
         assertThrows(NullPointerException.class, () -> analyzer.analyzeIntent(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    void matchesWholeWordsOnly() {
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("I recreate the scene."));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analyzer.analyzeIntent("Storytelling time."));
+        assertEquals(IntentTypeEnum.CREATE_ENTITY, analyzer.analyzeIntent("CREATE-a-sword"));
+    }
+
+    @Test
+    void prefersEntityCreationOverNarrationKeywords() {
+        assertEquals(IntentTypeEnum.CREATE_ENTITY,
+                analyzer.analyzeIntent("Attack the goblin, then generate its loot."));
+    }
+
+    @Test
+    void returnsMatchedSpans() {
+        IntentAnalyzer.Analysis analysis = analyzer.analyze("Explore, then create a sword");
+
+        assertEquals(IntentTypeEnum.CREATE_ENTITY, analysis.intent());
+        assertEquals(2, analysis.matches().size());
+        assertEquals(0, analysis.matches().get(0).start());
+        assertEquals(7, analysis.matches().get(0).end());
+        assertEquals("create", analysis.matches().get(1).keyword());
+        assertEquals(14, analysis.matches().get(1).start());
+    }
+
+    @Test
+    void analyzesInputWithoutKeywordsLikeAnalyzeIntent() {
+        IntentAnalyzer.Analysis analysis = analyzer.analyze("What is the meaning of life?");
+
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, analysis.intent());
+        assertTrue(analysis.matches().isEmpty());
+        assertEquals(IntentTypeEnum.CREATE_ENTITY,
+                analyzer.analyze("Attack the goblin, then generate its loot.").intent());
+    }
+
+    @Test
+    void usesTheGivenKeywordTable() {
+        IntentAnalyzer custom = new IntentAnalyzer(Map.of("forge", IntentTypeEnum.CREATE_ENTITY));
+
+        assertEquals(IntentTypeEnum.CREATE_ENTITY, custom.analyzeIntent("Forge me an axe"));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, custom.analyzeIntent("Create an axe"));
+    }
+
+    @Test
+    void classifiesInputsWithoutKeywordsByEmbedding() {
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingModel model = segments -> {
+            calls.incrementAndGet();
+            boolean weather = segments.get(0).text().contains("weather");
+            return Response.from(List.of(Embedding.from(
+                    weather ? new float[] {0, 1} : new float[] {1, 0})));
+        };
+        EmbeddingIntentClassifier classifier = new EmbeddingIntentClassifier(model,
+                Map.of(IntentTypeEnum.UNKNOWN, List.of("weather")), 0.5, 16);
+        IntentAnalyzer withClassifier = new IntentAnalyzer(IntentAnalyzer.DEFAULT_KEYWORDS,
+                classifier);
+        int indexed = calls.get();
+
+        assertEquals(IntentTypeEnum.CREATE_ENTITY, withClassifier.analyzeIntent("Create a weather mage"));
+        assertEquals(indexed, calls.get());
+        assertEquals(IntentTypeEnum.UNKNOWN, withClassifier.analyzeIntent("How is the weather?"));
+        assertEquals(IntentTypeEnum.UNKNOWN, withClassifier.analyzeIntent("Nice weather"));
+        assertEquals(indexed + 2, calls.get());
+    }
+
+    @Test
+    void continuesTheStoryOnOrdinaryActions() {
+        // A bag-of-words stand-in for the embedding model, on the default examples
+        Map<String, Integer> vocabulary = new HashMap<>();
+        EmbeddingModel model = segments -> {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (var segment : segments) {
+                float[] vector = new float[256];
+                for (String word : segment.text().toLowerCase(Locale.ROOT).split("\\W+")) {
+                    synchronized (vocabulary) {
+                        vector[vocabulary.computeIfAbsent(word, w -> vocabulary.size() % 256)]++;
+                    }
+                }
+                embeddings.add(Embedding.from(vector));
+            }
+            return Response.from(embeddings);
+        };
+        IntentAnalyzer withClassifier = new IntentAnalyzer(IntentAnalyzer.DEFAULT_KEYWORDS,
+                new EmbeddingIntentClassifier(model));
+
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, withClassifier.analyzeIntent("I open the door and sneak inside"));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, withClassifier.analyzeIntent("I hit the goblin with my axe"));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, withClassifier.analyzeIntent("We climb the tower"));
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, withClassifier.analyzeIntent("I bow to the queen"));
+        assertEquals(IntentTypeEnum.UNKNOWN, withClassifier.analyzeIntent("What is the weather in Paris today?"));
+    }
+
+    @Test
+    void continuesTheStoryWhenClassificationFails() {
+        AtomicBoolean broken = new AtomicBoolean();
+        EmbeddingModel model = segments -> {
+            if (broken.get()) {
+                throw new IllegalStateException("Model unloaded");
+            }
+            return Response.from(List.of(Embedding.from(new float[] {0, 1})));
+        };
+        IntentAnalyzer withClassifier = new IntentAnalyzer(IntentAnalyzer.DEFAULT_KEYWORDS,
+                new EmbeddingIntentClassifier(model, Map.of(IntentTypeEnum.UNKNOWN,
+                        List.of("weather")), 0.5, 16));
+        broken.set(true);
+
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, withClassifier.analyzeIntent("How is the weather?"));
+    }
+
+    @Test
+    void continuesTheStoryUntilTheClassifierIsLoaded() {
+        EmbeddingModel model = segments -> Response.from(List.of(Embedding.from(new float[] {0, 1})));
+        CompletableFuture<EmbeddingIntentClassifier> loading = new CompletableFuture<>();
+        IntentAnalyzer withClassifier = new IntentAnalyzer(IntentAnalyzer.DEFAULT_KEYWORDS, loading);
+
+        assertEquals(IntentTypeEnum.CONTINUE_STORY, withClassifier.analyzeIntent("How is the weather?"));
+        loading.complete(new EmbeddingIntentClassifier(model, Map.of(IntentTypeEnum.UNKNOWN,
+                List.of("weather")), 0.5, 16));
+        assertEquals(IntentTypeEnum.UNKNOWN, withClassifier.analyzeIntent("How is the weather?"));
+    }
+}
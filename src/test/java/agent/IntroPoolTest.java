@@ -0,0 +1,96 @@
+package agent;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class IntroPoolTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger generated = new AtomicInteger();
+
+    /**
+     * Generates numbered scenes.
+     */
+    private final Supplier<String> generator = () -> "Scene " + generated.incrementAndGet();
+
+    @Test
+    @DisplayName("Serves nothing until refilled, then each scene once, oldest first")
+    void servesEachSceneOnce() {
+        IntroPool pool = new IntroPool(null, 3, generator, Runnable::run);
+        Assertions.assertNull(pool.take());
+
+        pool.refill();
+
+        Assertions.assertEquals(3, pool.size());
+        Assertions.assertEquals("Scene 1", pool.take());
+        Assertions.assertEquals("Scene 2", pool.take());
+        pool.refill();
+        Assertions.assertEquals(List.of("Scene 3", "Scene 4", "Scene 5"),
+                List.of(pool.take(), pool.take(), pool.take()));
+        Assertions.assertEquals(5, generated.get());
+    }
+
+    @Test
+    @DisplayName("Keeps the scenes for the next launches")
+    void persistsScenes() throws Exception {
+        Path file = dir.resolve("pool").resolve("intros.json");
+        IntroPool first = new IntroPool(file, 2, generator, Runnable::run);
+        first.refill();
+        Assertions.assertEquals("Scene 1", first.take());
+
+        IntroPool next = new IntroPool(file, 2, generator, Runnable::run);
+
+        Assertions.assertEquals(1, next.size());
+        Assertions.assertEquals("Scene 2", next.take());
+        Assertions.assertTrue(Files.exists(file));
+        Assertions.assertEquals(0, new IntroPool(file, 2, generator, Runnable::run).size());
+    }
+
+    @Test
+    @DisplayName("Records the scene taken in the session memory as the start of the story")
+    void seedsSessionMemory() {
+        IntroPool pool = new IntroPool(null, 1, generator, Runnable::run);
+        MessageWindowChatMemory memory = MessageWindowChatMemory.withMaxMessages(10);
+        Assertions.assertNull(pool.takeInto(memory, "Start"));
+        Assertions.assertTrue(memory.messages().isEmpty());
+        pool.refill();
+
+        Assertions.assertEquals("Scene 1", pool.takeInto(memory, "Start"));
+
+        List<ChatMessage> messages = memory.messages();
+        Assertions.assertEquals("Start", ((UserMessage) messages.get(0)).singleText());
+        Assertions.assertEquals("Scene 1", ((AiMessage) messages.get(1)).text());
+    }
+
+    @Test
+    @DisplayName("Stops a refill on a failed generation and resumes on the next one")
+    void stopsOnFailure() {
+        AtomicInteger calls = new AtomicInteger();
+        IntroPool pool = new IntroPool(null, 3, () -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("Model unavailable");
+            }
+            return "Scene " + calls.get();
+        }, Runnable::run);
+
+        pool.refill();
+        Assertions.assertEquals(1, pool.size());
+
+        pool.refill();
+        Assertions.assertEquals(3, pool.size());
+    }
+}
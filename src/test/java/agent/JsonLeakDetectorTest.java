@@ -0,0 +1,91 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JsonLeakDetectorTest {
+
+    private static String feed(JsonLeakDetector detector, String... tokens) {
+        StringBuilder shown = new StringBuilder();
+        for (String token : tokens) {
+            String safe = detector.accept(token);
+            if (safe == null) {
+                return null;
+            }
+            shown.append(safe);
+        }
+        return shown.append(detector.flush()).toString();
+    }
+
+    @Test
+    @DisplayName("Lets narration through unchanged")
+    void letsNarrationThrough() {
+        JsonLeakDetector detector = new JsonLeakDetector();
+
+        String shown = feed(detector, "The innkeeper says \"", "Welcome", "!\" {smiling}");
+
+        Assertions.assertEquals("The innkeeper says \"Welcome!\" {smiling}", shown);
+        Assertions.assertFalse(detector.leaked());
+    }
+
+    @Test
+    @DisplayName("Holds back the start of the output until it is cleared")
+    void holdsBackStartUntilCleared() {
+        JsonLeakDetector detector = new JsonLeakDetector(12);
+
+        Assertions.assertEquals("", detector.accept("The cave "));
+        Assertions.assertEquals("The cave is dark", detector.accept("is dark"));
+        Assertions.assertEquals(" and cold.", detector.accept(" and cold."));
+    }
+
+    @Test
+    @DisplayName("Catches a call opening the output before showing anything")
+    void catchesOpeningCallUnseen() {
+        JsonLeakDetector detector = new JsonLeakDetector(32);
+
+        Assertions.assertEquals("", detector.accept("Sure! Here it is:"));
+        Assertions.assertNull(detector.accept(" {\"name\": \"describeScene\"}"));
+        Assertions.assertEquals("", detector.flush());
+    }
+
+    @Test
+    @DisplayName("Releases a short output held back at the end")
+    void releasesShortOutputOnFlush() {
+        JsonLeakDetector detector = new JsonLeakDetector(32);
+
+        Assertions.assertEquals("", detector.accept("Yes."));
+        Assertions.assertEquals("Yes.", detector.flush());
+    }
+
+    @Test
+    @DisplayName("Detects a call split across tokens and whitespace")
+    void detectsSplitCall() {
+        JsonLeakDetector detector = new JsonLeakDetector();
+
+        Assertions.assertEquals("", detector.accept("{ "));
+        Assertions.assertEquals("", detector.accept("\"na"));
+        Assertions.assertNull(detector.accept("me\": \"describeScene\""));
+        Assertions.assertTrue(detector.leaked());
+        Assertions.assertNull(detector.accept("more"));
+        Assertions.assertEquals("", detector.flush());
+    }
+
+    @Test
+    @DisplayName("Detects parameters after narration without showing the marker")
+    void detectsParametersAfterNarration() {
+        JsonLeakDetector detector = new JsonLeakDetector();
+
+        Assertions.assertEquals("You enter the cave. ", detector.accept("You enter the cave. \"para"));
+        Assertions.assertNull(detector.accept("meters\": {}"));
+    }
+
+    @Test
+    @DisplayName("Holds back a possible marker start until it is ruled out")
+    void holdsBackPossibleMarkerStart() {
+        JsonLeakDetector detector = new JsonLeakDetector();
+
+        Assertions.assertEquals("A chest ", detector.accept("A chest {"));
+        Assertions.assertEquals("{ opens", detector.accept(" opens"));
+    }
+}
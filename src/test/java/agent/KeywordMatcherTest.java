@@ -0,0 +1,88 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class KeywordMatcherTest {
+
+    private static List<String> keywords(KeywordMatcher<?> matcher, String text) {
+        return matcher.findAll(text).stream().map(KeywordMatcher.Match::keyword).toList();
+    }
+
+    @Test
+    @DisplayName("Finds several keywords in one pass, ignoring case")
+    void findsSeveralKeywords() {
+        KeywordMatcher<Integer> matcher = new KeywordMatcher<>(
+                Map.of("goblin", 1, "fireball", 2, "bag-of-holding", 3));
+
+        List<KeywordMatcher.Match<Integer>> matches =
+                matcher.findAll("The GOBLIN casts Fireball at your bag of holding!");
+
+        Assertions.assertEquals(List.of(1, 2, 3),
+                matches.stream().map(KeywordMatcher.Match::value).toList());
+        Assertions.assertEquals(4, matches.get(0).start());
+        Assertions.assertEquals(10, matches.get(0).end());
+    }
+
+    @Test
+    @DisplayName("Matches whole words only")
+    void matchesWholeWordsOnly() {
+        KeywordMatcher<String> matcher = new KeywordMatcher<>(Map.of("orc", "orc", "rat", "rat"));
+
+        Assertions.assertEquals(List.of(), keywords(matcher, "The force of the pirate"));
+        Assertions.assertEquals(List.of("orc", "rat"), keywords(matcher, "An orc, a rat."));
+    }
+
+    @Test
+    @DisplayName("Prefers the leftmost, then the longest, of overlapping keywords")
+    void prefersLongestOverlappingKeyword() {
+        KeywordMatcher<String> matcher = new KeywordMatcher<>(Map.of(
+                "dragon", "d", "red dragon", "rd", "adult red dragon", "ard", "red", "r"));
+
+        Assertions.assertEquals(List.of("adult red dragon"),
+                keywords(matcher, "An adult red dragon lands."));
+        Assertions.assertEquals(List.of("red dragon", "red"),
+                keywords(matcher, "A red dragon with red scales."));
+    }
+
+    @Test
+    @DisplayName("Finds keywords that are suffixes of another keyword")
+    void findsSuffixKeywords() {
+        KeywordMatcher<String> matcher = new KeywordMatcher<>(Map.of("he", "he", "she", "she",
+                "hers", "hers", "his", "his"));
+
+        Assertions.assertEquals(List.of("his", "she", "hers", "he"),
+                keywords(matcher, "his she hers he ushers"));
+    }
+
+    @Test
+    @DisplayName("Ignores blank keywords and finds nothing in an empty text")
+    void ignoresBlankKeywords() {
+        KeywordMatcher<String> matcher = new KeywordMatcher<>(Map.of(" ", "blank"));
+
+        Assertions.assertEquals(0, matcher.size());
+        Assertions.assertEquals(List.of(), keywords(matcher, ""));
+    }
+
+    @Test
+    @DisplayName("Finds the first keyword of the table without building matches")
+    void findsFirstKeywordInTableOrder() {
+        Map<String, String> table = new LinkedHashMap<>();
+        table.put("create", "create");
+        table.put("attack", "attack");
+        table.put("goblin", "goblin");
+        KeywordMatcher<String> matcher = new KeywordMatcher<>(table);
+
+        Assertions.assertEquals(1, matcher.firstKeyword("A goblin! I ATTACK it"));
+        Assertions.assertEquals("attack", matcher.value(1));
+        Assertions.assertEquals(0, matcher.firstKeyword("attack, then create"));
+        Assertions.assertEquals(2, matcher.firstKeyword("goblins and a goblin"));
+        Assertions.assertEquals(-1, matcher.firstKeyword("recreate the counterattack"));
+        Assertions.assertEquals(-1, matcher.firstKeyword(""));
+    }
+}
@@ -0,0 +1,56 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class LatencyTrackerTest {
+
+    @Test
+    @DisplayName("Gives no hedge delay until enough samples are known")
+    void noHedgeDelayWithoutEnoughSamples() {
+        LatencyTracker tracker = new LatencyTracker(10, 3, Duration.ZERO);
+
+        Assertions.assertNull(tracker.hedgeDelay());
+        tracker.record(100);
+        tracker.record(200);
+
+        Assertions.assertNull(tracker.hedgeDelay());
+        Assertions.assertEquals(200, tracker.percentile(95));
+    }
+
+    @Test
+    @DisplayName("Hedges after the 95th percentile of the latest samples")
+    void hedgesAfterP95() {
+        LatencyTracker tracker = new LatencyTracker(100, 20, Duration.ZERO);
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i * 1_000_000L);
+        }
+
+        Assertions.assertEquals(Duration.ofMillis(95), tracker.hedgeDelay());
+        Assertions.assertEquals(50_000_000L, tracker.percentile(50));
+    }
+
+    @Test
+    @DisplayName("Keeps only the latest samples and applies the minimal delay")
+    void keepsLatestSamplesAndMinimalDelay() {
+        LatencyTracker tracker = new LatencyTracker(4, 4, Duration.ofMillis(50));
+        for (int i = 0; i < 4; i++) {
+            tracker.record(Duration.ofSeconds(5).toNanos());
+        }
+        for (int i = 0; i < 4; i++) {
+            tracker.record(Duration.ofMillis(1).toNanos());
+        }
+
+        Assertions.assertEquals(Duration.ofMillis(50), tracker.hedgeDelay());
+    }
+
+    @Test
+    @DisplayName("Rejects a window smaller than the needed samples")
+    void rejectsInvalidWindow() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new LatencyTracker(5, 10, Duration.ZERO));
+    }
+}
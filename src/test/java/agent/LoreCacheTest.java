@@ -0,0 +1,95 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+class LoreCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private LoreCache newCache(int maxEntries) {
+        return new LoreCache(maxEntries, Duration.ofSeconds(60), Duration.ofSeconds(5), now::get);
+    }
+
+    @Test
+    @DisplayName("Returns a cached value and counts the hit")
+    void returnsCachedValueAndCountsHit() {
+        LoreCache cache = newCache(4);
+        String key = LoreCache.key(LoreCategoryEnum.MONSTER, "goblin");
+
+        Assertions.assertNull(cache.get(key));
+        cache.put(key, "D&D MONSTER: Goblin");
+
+        Assertions.assertEquals("D&D MONSTER: Goblin", cache.get(key));
+        LoreCache.Stats stats = cache.stats();
+        Assertions.assertEquals(1, stats.hitCount());
+        Assertions.assertEquals(1, stats.missCount());
+        Assertions.assertEquals(1, stats.size());
+    }
+
+    @Test
+    @DisplayName("Keys are separated by category")
+    void keysAreSeparatedByCategory() {
+        Assertions.assertNotEquals(LoreCache.key(LoreCategoryEnum.MONSTER, "shield"),
+                LoreCache.key(LoreCategoryEnum.SPELL, "shield"));
+    }
+
+    @Test
+    @DisplayName("Evicts the least recently used entry when full")
+    void evictsLeastRecentlyUsedEntry() {
+        LoreCache cache = newCache(2);
+        cache.put("monsters/goblin", "goblin");
+        cache.put("monsters/orc", "orc");
+        cache.get("monsters/goblin"); // goblin becomes the most recently used
+        cache.put("monsters/troll", "troll");
+
+        Assertions.assertEquals("goblin", cache.get("monsters/goblin"));
+        Assertions.assertNull(cache.get("monsters/orc"));
+        Assertions.assertEquals("troll", cache.get("monsters/troll"));
+        Assertions.assertEquals(1, cache.stats().evictionCount());
+    }
+
+    @Test
+    @DisplayName("Expires not found entries before found entries")
+    void expiresNotFoundEntriesFirst() {
+        LoreCache cache = newCache(4);
+        cache.put("monsters/goblin", "goblin");
+        cache.putNotFound("monsters/goblinn", "Monster 'goblinn' not found.");
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        Assertions.assertNull(cache.get("monsters/goblinn"));
+        Assertions.assertEquals("goblin", cache.get("monsters/goblin"));
+
+        now.addAndGet(Duration.ofSeconds(60).toNanos());
+
+        Assertions.assertNull(cache.get("monsters/goblin"));
+        Assertions.assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    @DisplayName("Estimates the saved time from hits and load durations")
+    void estimatesSavedTime() {
+        LoreCache cache = newCache(4);
+        cache.recordLoad(100);
+        cache.recordLoad(300);
+        cache.put("spells/fireball", "fireball");
+        cache.get("spells/fireball");
+        cache.get("spells/fireball");
+
+        LoreCache.Stats stats = cache.stats();
+        Assertions.assertEquals(200, stats.averageLoadNanos());
+        Assertions.assertEquals(400, stats.estimatedSavedNanos());
+    }
+
+    @Test
+    @DisplayName("Rejects a non positive capacity")
+    void rejectsNonPositiveCapacity() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new LoreCache(0, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,123 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class LoreElidingChatMemoryTest {
+
+    private static final String GOBLIN = """
+            D&D MONSTER: Goblin
+            Type: humanoid
+            Size: Small
+            Challenge Rating: 0.25
+            Hit Points: 7
+            Armor Class: 15
+            """;
+
+    private static final String FIREBALL = """
+            D&D SPELL: Fireball
+            Level: 3
+            School: Evocation
+            Casting Time: 1 action
+            Range: 150 feet
+            Description: A bright streak flashes from your pointing finger...
+            """;
+
+    private MessageWindowChatMemory window;
+    private LoreElidingChatMemory memory;
+
+    @BeforeEach
+    void setUp() {
+        window = MessageWindowChatMemory.withMaxMessages(50);
+        memory = new LoreElidingChatMemory(window);
+    }
+
+    private void addLookupTurn(String input, String id, String tool, String result,
+                               String narration) {
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id(id).name(tool).arguments("{}").build();
+        memory.add(UserMessage.from(input));
+        memory.add(AiMessage.from(List.of(request)));
+        memory.add(ToolExecutionResultMessage.from(request, result));
+        memory.add(AiMessage.from(narration));
+    }
+
+    private static List<String> toolResults(List<ChatMessage> messages) {
+        return messages.stream()
+                .filter(m -> m instanceof ToolExecutionResultMessage)
+                .map(m -> ((ToolExecutionResultMessage) m).text())
+                .toList();
+    }
+
+    @Test
+    @DisplayName("Stores digests and sends the full entry during the current turn")
+    void expandsCurrentTurn() {
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id("1").name("searchMonster").arguments("{}").build();
+        memory.add(UserMessage.from("Something moves in the bushes"));
+        memory.add(AiMessage.from(List.of(request)));
+        memory.add(ToolExecutionResultMessage.from(request, GOBLIN));
+
+        Assertions.assertEquals(List.of("[lore#monster:goblin] D&D MONSTER: Goblin"),
+                toolResults(window.messages()));
+        Assertions.assertEquals(List.of(GOBLIN), toolResults(memory.messages()));
+    }
+
+    @Test
+    @DisplayName("Sends only digests on later turns not naming the entity")
+    void elidesOnLaterTurns() {
+        addLookupTurn("Something moves", "1", "searchMonster", GOBLIN, "A goblin!");
+        memory.add(UserMessage.from("I run to the village"));
+
+        Assertions.assertEquals(List.of("[lore#monster:goblin] D&D MONSTER: Goblin"),
+                toolResults(memory.messages()));
+    }
+
+    @Test
+    @DisplayName("Sends the full entry once, at its latest occurrence, when named again")
+    void expandsLatestOccurrenceWhenNamed() {
+        addLookupTurn("Something moves", "1", "searchMonster", GOBLIN, "A goblin!");
+        addLookupTurn("Another one?", "2", "searchMonster", GOBLIN, "A second goblin!");
+        memory.add(UserMessage.from("I attack the goblins with my axe"));
+
+        List<String> results = toolResults(memory.messages());
+        Assertions.assertEquals("[lore#monster:goblin] D&D MONSTER: Goblin", results.get(0));
+        Assertions.assertEquals(GOBLIN, results.get(1));
+    }
+
+    @Test
+    @DisplayName("Elides each entry of a batch result separately")
+    void elidesBatchEntries() {
+        String batch = GOBLIN.strip() + "\n---\n" + FIREBALL.strip()
+                + "\n---\nMagic item 'foo' not found.";
+        addLookupTurn("Fight", "1", "searchLoreBatch", batch, "Flames everywhere.");
+        memory.add(UserMessage.from("I cast fireball again"));
+
+        Assertions.assertEquals(List.of("[lore#monster:goblin] D&D MONSTER: Goblin\n---\n"
+                        + FIREBALL.strip() + "\n---\nMagic item 'foo' not found."),
+                toolResults(memory.messages()));
+    }
+
+    @Test
+    @DisplayName("Keeps the tool call identifiers and clears the ledger")
+    void keepsIdentifiersAndClears() {
+        addLookupTurn("Something moves", "42", "searchMonster", GOBLIN, "A goblin!");
+        ToolExecutionResultMessage result = (ToolExecutionResultMessage) memory.messages().get(2);
+        Assertions.assertEquals("42", result.id());
+        Assertions.assertEquals("searchMonster", result.toolName());
+
+        memory.clear();
+        Assertions.assertTrue(memory.messages().isEmpty());
+        Assertions.assertTrue(window.messages().isEmpty());
+    }
+}
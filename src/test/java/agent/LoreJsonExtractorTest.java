@@ -0,0 +1,94 @@
+package agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class LoreJsonExtractorTest {
+
+    private final LoreJsonExtractor extractor = new LoreJsonExtractor(new ObjectMapper());
+
+    @Test
+    @DisplayName("Keeps only the displayed monster fields")
+    void keepsOnlyDisplayedMonsterFields() throws IOException {
+        String monster = """
+            {
+                "index": "goblin",
+                "name": "Goblin",
+                "type": "humanoid",
+                "size": "Small",
+                "speed": {"walk": "30 ft."},
+                "actions": [{"name": "Scimitar", "damage": [{"damage_dice": "1d6+2"}]}],
+                "challenge_rating": 0.25,
+                "hit_points": 7,
+                "armor_class": [{"type": "armor", "value": 15}, {"type": "shield", "value": 2}],
+                "special_abilities": [{"name": "Nimble Escape", "desc": "..."}]
+            }
+        """;
+
+        ObjectNode node = extractor.extract(LoreCategoryEnum.MONSTER,
+                new ByteArrayInputStream(monster.getBytes(StandardCharsets.UTF_8)));
+
+        Assertions.assertEquals("Goblin", node.get("name").asText());
+        Assertions.assertEquals(7, node.get("hit_points").asInt());
+        Assertions.assertEquals(1, node.get("armor_class").size());
+        Assertions.assertEquals(15, node.get("armor_class").get(0).get("value").asInt());
+        Assertions.assertFalse(node.has("speed"));
+        Assertions.assertFalse(node.has("actions"));
+        Assertions.assertFalse(node.has("special_abilities"));
+    }
+
+    @Test
+    @DisplayName("Keeps the first description paragraph and nested school of a spell")
+    void keepsSpellFields() throws IOException {
+        String spell = """
+            {
+                "name": "Fireball",
+                "level": 3,
+                "school": {"index": "evocation", "name": "Evocation"},
+                "components": ["V", "S", "M"],
+                "desc": ["A bright streak flashes...", "The fire spreads around corners."],
+                "casting_time": "1 action",
+                "range": "150 feet"
+            }
+        """;
+
+        ObjectNode node = extractor.extract(LoreCategoryEnum.SPELL, spell);
+
+        Assertions.assertEquals("Evocation", node.get("school").get("name").asText());
+        Assertions.assertEquals(1, node.get("desc").size());
+        Assertions.assertEquals("A bright streak flashes...", node.get("desc").get(0).asText());
+        Assertions.assertEquals("150 feet", node.get("range").asText());
+        Assertions.assertFalse(node.has("components"));
+    }
+
+    @Test
+    @DisplayName("Keeps empty arrays empty")
+    void keepsEmptyArraysEmpty() throws IOException {
+        ObjectNode node = extractor.extract(LoreCategoryEnum.MAGIC_ITEM,
+                "{\"name\": \"Bag of Holding\", \"desc\": []}");
+
+        Assertions.assertTrue(node.get("desc").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Returns an empty object for a document that is not an object")
+    void returnsEmptyObjectForNonObject() throws IOException {
+        ObjectNode node = extractor.extract(LoreCategoryEnum.MONSTER, "[1, 2, 3]");
+
+        Assertions.assertTrue(node.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Rejects malformed JSON")
+    void rejectsMalformedJson() {
+        Assertions.assertThrows(IOException.class,
+                () -> extractor.extract(LoreCategoryEnum.MONSTER, "{\"name\": \"Gob"));
+    }
+}
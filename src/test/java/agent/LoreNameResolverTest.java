@@ -0,0 +1,64 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class LoreNameResolverTest {
+
+    private LoreNameResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        resolver = new LoreNameResolver();
+        resolver.addAll(LoreCategoryEnum.MONSTER, List.of("goblin", "adult-red-dragon",
+                "ancient-red-dragon", "young-red-dragon", "red-dragon-wyrmling", "beholder"));
+        resolver.addAll(LoreCategoryEnum.SPELL, List.of("magic-missile", "fireball", "shield",
+                "shield-of-faith"));
+    }
+
+    @Test
+    @DisplayName("Returns an exact match for a known slug")
+    void returnsExactMatchForKnownSlug() {
+        LoreNameResolver.Match match = resolver.resolve(LoreCategoryEnum.SPELL, "shield");
+
+        Assertions.assertEquals("shield", match.slug());
+        Assertions.assertTrue(match.isExact());
+    }
+
+    @Test
+    @DisplayName("Resolves a misspelled name")
+    void resolvesMisspelledName() {
+        LoreNameResolver.Match match = resolver.resolve(LoreCategoryEnum.SPELL, "magic-missle");
+
+        Assertions.assertEquals("magic-missile", match.slug());
+        Assertions.assertFalse(match.isExact());
+        Assertions.assertTrue(match.score() >= LoreNameResolver.MIN_SCORE);
+    }
+
+    @Test
+    @DisplayName("Resolves a partial name to the closest slug")
+    void resolvesPartialName() {
+        LoreNameResolver.Match match = resolver.resolve(LoreCategoryEnum.MONSTER, "red-dragon");
+
+        Assertions.assertEquals("adult-red-dragon", match.slug());
+    }
+
+    @Test
+    @DisplayName("Returns null when nothing is close enough")
+    void returnsNullWhenNothingIsClose() {
+        Assertions.assertNull(resolver.resolve(LoreCategoryEnum.MONSTER, "tarrasque"));
+        Assertions.assertNull(resolver.resolve(LoreCategoryEnum.MONSTER, ""));
+    }
+
+    @Test
+    @DisplayName("Keeps categories apart")
+    void keepsCategoriesApart() {
+        Assertions.assertNull(resolver.resolve(LoreCategoryEnum.MAGIC_ITEM, "shield"));
+        Assertions.assertFalse(resolver.isIndexed(LoreCategoryEnum.MAGIC_ITEM));
+        Assertions.assertEquals(4, resolver.slugs(LoreCategoryEnum.SPELL).size());
+    }
+}
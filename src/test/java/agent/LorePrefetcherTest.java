@@ -0,0 +1,73 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class LorePrefetcherTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String GOBLIN = """
+        {"index": "goblin", "name": "Goblin", "type": "humanoid", "size": "Small",
+         "challenge_rating": 0.25, "hit_points": 7, "armor_class": [{"value": 15}]}
+        """;
+    private static final String FIREBALL = """
+        {"index": "fireball", "name": "Fireball", "level": 3, "school": {"name": "Evocation"},
+         "casting_time": "1 action", "range": "150 feet", "desc": ["A bright streak..."]}
+        """;
+
+    @Test
+    @DisplayName("Warms the lookups of the names found in a text")
+    void warmsLookupsOfNamesFound() throws IOException {
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            store.putAll(Map.of("monsters/goblin", GOBLIN, "spells/fireball", FIREBALL), null);
+            DndLoreTool tool = new DndLoreTool(store, true);
+            LorePrefetcher prefetcher = new LorePrefetcher(tool);
+
+            List<String> started = prefetcher.prefetch("Two goblins flee from the fireball.");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (tool.cacheStats().size() < 2 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            String goblin = tool.searchMonster("Goblin");
+
+            Assertions.assertEquals(List.of("monsters/goblin", "spells/fireball"), started);
+            Assertions.assertTrue(goblin.contains("D&D MONSTER: Goblin"));
+            Assertions.assertEquals(1, tool.cacheStats().hitCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Starts nothing for texts without known names")
+    void startsNothingWithoutKnownNames() throws IOException {
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            store.putAll(Map.of("monsters/goblin", GOBLIN), null);
+            LorePrefetcher prefetcher = new LorePrefetcher(new DndLoreTool(store, true));
+
+            Assertions.assertEquals(List.of(), prefetcher.prefetch("The tavern is quiet."));
+            Assertions.assertEquals(List.of(), prefetcher.prefetch(null));
+        }
+    }
+
+    @Test
+    @DisplayName("Does not guess spells named like everyday words")
+    void ignoresCommonWords() throws IOException {
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            store.putAll(Map.of("spells/light", FIREBALL, "spells/fireball", FIREBALL), null);
+            LorePrefetcher prefetcher = new LorePrefetcher(new DndLoreTool(store, true));
+
+            Assertions.assertEquals(List.of(), prefetcher.prefetch("A light flickers in the hall."));
+            Assertions.assertEquals(List.of("spells/fireball"),
+                    prefetcher.prefetch("By the light of a fireball."));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class LoreSnapshotImporterTest {
+
+    @TempDir
+    Path dir;
+
+    private Path writeSnapshot() throws IOException {
+        Path snapshot = Files.createDirectories(dir.resolve("snapshot"));
+        Files.writeString(snapshot.resolve("monsters.json"), """
+            [
+                {
+                    "index": "goblin",
+                    "name": "Goblin",
+                    "type": "humanoid",
+                    "size": "Small",
+                    "challenge_rating": 0.25,
+                    "hit_points": 7,
+                    "armor_class": [{"value": 15}]
+                },
+                {"index": "nameless"}
+            ]
+        """);
+        Path spells = Files.createDirectories(snapshot.resolve("spells"));
+        Files.writeString(spells.resolve("fireball.json"), """
+            {
+                "name": "Fireball",
+                "level": 3,
+                "school": {"name": "Evocation"},
+                "casting_time": "1 action",
+                "range": "150 feet"
+            }
+        """);
+        Files.writeString(spells.resolve("notes.txt"), "not a document");
+        return snapshot;
+    }
+
+    @Test
+    @DisplayName("Imports array files and per-document files")
+    void importsArrayAndDocumentFiles() throws IOException {
+        Path snapshot = writeSnapshot();
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            int count = new LoreSnapshotImporter(store).importSnapshot(snapshot);
+
+            Assertions.assertEquals(2, count);
+            Assertions.assertNotNull(store.get("monsters/goblin"));
+            Assertions.assertNotNull(store.get("spells/fireball"));
+            Assertions.assertNull(store.get("monsters/nameless"));
+        }
+    }
+
+    @Test
+    @DisplayName("Offline tool answers from the imported snapshot")
+    void offlineToolAnswersFromSnapshot() throws IOException {
+        Path snapshot = writeSnapshot();
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            new LoreSnapshotImporter(store).importSnapshot(snapshot);
+            DndLoreTool tool = new DndLoreTool(store, true);
+
+            String goblin = tool.searchMonster("Goblin");
+            String fireball = tool.searchSpell("fireball");
+            String unknown = tool.searchMonster("Tarrasque");
+
+            Assertions.assertTrue(goblin.contains("D&D MONSTER: Goblin"));
+            Assertions.assertTrue(goblin.contains("Armor Class: 15"));
+            Assertions.assertTrue(fireball.contains("School: Evocation"));
+            Assertions.assertEquals("Monster 'Tarrasque' not found in D&D bestiary.", unknown);
+        }
+    }
+
+    @Test
+    @DisplayName("Offline tool resolves a misspelled name in one call")
+    void offlineToolResolvesMisspelledName() throws IOException {
+        Path snapshot = writeSnapshot();
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            new LoreSnapshotImporter(store).importSnapshot(snapshot);
+            DndLoreTool tool = new DndLoreTool(store, true);
+
+            String goblin = tool.searchMonster("Gobline");
+
+            Assertions.assertTrue(goblin.startsWith("Closest match for 'Gobline': goblin"));
+            Assertions.assertTrue(goblin.contains("D&D MONSTER: Goblin"));
+        }
+    }
+
+    @Test
+    @DisplayName("Rejects a missing snapshot directory")
+    void rejectsMissingSnapshotDirectory() throws IOException {
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"))) {
+            LoreSnapshotImporter importer = new LoreSnapshotImporter(store);
+
+            Assertions.assertThrows(IOException.class,
+                    () -> importer.importSnapshot(dir.resolve("missing")));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+class LoreStoreTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private static Clock clockAt(Duration elapsed) {
+        return Clock.fixed(NOW.plus(elapsed), ZoneOffset.UTC);
+    }
+
+    @Test
+    @DisplayName("Stores and reads back a value")
+    void storesAndReadsBackValue() throws IOException {
+        try (LoreStore store = new LoreStore(dir.resolve("lore.db"), clockAt(Duration.ZERO))) {
+            store.put("monsters/goblin", "{\"name\":\"Goblin\"}", null);
+
+            Assertions.assertEquals("{\"name\":\"Goblin\"}", store.get("monsters/goblin"));
+            Assertions.assertNull(store.get("monsters/orc"));
+        }
+    }
+
+    @Test
+    @DisplayName("Keeps values across restarts")
+    void keepsValuesAcrossRestarts() throws IOException {
+        Path file = dir.resolve("lore.db");
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            store.put("monsters/goblin", "old", null);
+            store.put("spells/fireball", "Fireball – 8d6", null);
+            store.put("monsters/goblin", "new", null);
+        }
+
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            Assertions.assertEquals("new", store.get("monsters/goblin"));
+            Assertions.assertEquals("Fireball – 8d6", store.get("spells/fireball"));
+            Assertions.assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Expired entries are not returned")
+    void expiredEntriesAreNotReturned() throws IOException {
+        Path file = dir.resolve("lore.db");
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            store.put("monsters/goblin", "goblin", Duration.ofHours(1));
+            store.put("monsters/orc", "orc", null);
+        }
+
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ofHours(2)))) {
+            Assertions.assertNull(store.get("monsters/goblin"));
+            Assertions.assertEquals("orc", store.get("monsters/orc"));
+            Assertions.assertEquals(1, store.keys("monsters/").size());
+        }
+    }
+
+    @Test
+    @DisplayName("Drops a torn record left by a crash")
+    void dropsTornRecord() throws IOException {
+        Path file = dir.resolve("lore.db");
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            store.put("monsters/goblin", "goblin", null);
+        }
+        long goodSize = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            Assertions.assertEquals("goblin", store.get("monsters/goblin"));
+            Assertions.assertEquals(goodSize, Files.size(file));
+            store.put("monsters/orc", "orc", null);
+        }
+
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            Assertions.assertEquals("orc", store.get("monsters/orc"));
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction keeps only the latest live records")
+    void compactionKeepsLatestLiveRecords() throws IOException {
+        Path file = dir.resolve("lore.db");
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            for (int i = 0; i < 50; i++) {
+                store.put("monsters/goblin", "goblin v" + i, null);
+            }
+            store.put("spells/fireball", "fireball", null);
+            long before = Files.size(file);
+
+            store.compact();
+
+            Assertions.assertTrue(Files.size(file) < before);
+            Assertions.assertEquals("goblin v49", store.get("monsters/goblin"));
+            Assertions.assertEquals("fireball", store.get("spells/fireball"));
+        }
+
+        try (LoreStore store = new LoreStore(file, clockAt(Duration.ZERO))) {
+            Assertions.assertEquals("goblin v49", store.get("monsters/goblin"));
+        }
+    }
+
+    @Test
+    @DisplayName("Rejects a file that is not a lore store")
+    void rejectsForeignFile() throws IOException {
+        Path file = dir.resolve("other.txt");
+        Files.writeString(file, "hello world");
+
+        Assertions.assertThrows(IOException.class, () -> new LoreStore(file));
+    }
+}
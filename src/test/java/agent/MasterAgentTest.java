@@ -8,6 +8,14 @@ import sun.reflect.ReflectionFactory;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 class MasterAgentTest {
 
@@ -86,6 +94,192 @@ class MasterAgentTest {
         Mockito.verify(mockEntityAgent, Mockito.never()).generateEntity(Mockito.anyString());
     }
 
+    @Test
+    void prefetchesLoreFromInputAndNarration() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var mockPrefetcher = Mockito.mock(LorePrefetcher.class);
+        var input = "I attack the goblin";
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CONTINUE_STORY);
+        Mockito.when(mockStoryAgent.narrate(input)).thenReturn("An owlbear answers the goblin's cry.");
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+        injectPrefetcher(masterAgent, mockPrefetcher);
+
+        masterAgent.processInput(input);
+
+        var order = Mockito.inOrder(mockPrefetcher, mockStoryAgent);
+        order.verify(mockPrefetcher).prefetch(input);
+        order.verify(mockStoryAgent).narrate(input);
+        order.verify(mockPrefetcher).prefetch("An owlbear answers the goblin's cry.");
+    }
+
+    @Test
+    void doesNotPrefetchLoreForEntityCreation() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var mockPrefetcher = Mockito.mock(LorePrefetcher.class);
+        var input = "Create a goblin";
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CREATE_ENTITY);
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+        injectPrefetcher(masterAgent, mockPrefetcher);
+
+        masterAgent.processInput(input);
+
+        Mockito.verify(mockPrefetcher, Mockito.never()).prefetch(Mockito.anyString());
+    }
+
+    @Test
+    void streamsNarrationForContinueStoryIntent() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var input = "Continue the story";
+        Consumer<String> onToken = token -> { };
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CONTINUE_STORY);
+        Mockito.when(mockStoryAgent.narrateStreaming(input, onToken))
+                .thenReturn(CompletableFuture.completedFuture("Story continued."));
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+
+        var result = masterAgent.processInputStreaming(input, onToken).join();
+
+        Assertions.assertEquals("Story continued.", result);
+        Mockito.verify(mockStoryAgent, Mockito.never()).narrate(Mockito.anyString());
+    }
+
+    @Test
+    void deliversEntityAsSingleTokenWhenStreaming() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var input = "Create a new character";
+        List<String> tokens = new ArrayList<>();
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CREATE_ENTITY);
+        Mockito.when(mockEntityAgent.generateEntity(input)).thenReturn("Entity created.");
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+
+        var result = masterAgent.processInputStreaming(input, tokens::add).join();
+
+        Assertions.assertEquals("Entity created.", result);
+        Assertions.assertEquals(List.of("Entity created."), tokens);
+        Mockito.verify(mockIntentAnalyzer, Mockito.times(1)).analyzeIntent(input);
+    }
+
+    @Test
+    void narratesInTheGivenSession() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var input = "Continue the story";
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CONTINUE_STORY);
+        Mockito.when(mockStoryAgent.narrateStreaming(Mockito.eq("alice"), Mockito.eq(input), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture("Alice's story."));
+        Mockito.when(mockStoryAgent.narrateStreaming(Mockito.eq("bob"), Mockito.eq(input), Mockito.any()))
+                .thenReturn(CompletableFuture.completedFuture("Bob's story."));
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+
+        var alice = masterAgent.processInputAsync("alice", input);
+        var bob = masterAgent.processInputAsync("bob", input);
+
+        Assertions.assertEquals("Alice's story.", alice.join());
+        Assertions.assertEquals("Bob's story.", bob.join());
+        Mockito.verify(mockStoryAgent, Mockito.never()).narrate(Mockito.anyString());
+    }
+
+    @Test
+    void cutsTurnShortAtDeadline() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var input = "Continue the story";
+        var narration = new CompletableFuture<String>(); // Never completed by the model
+        AtomicReference<Consumer<String>> stream = new AtomicReference<>();
+        List<String> tokens = new ArrayList<>();
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CONTINUE_STORY);
+        Mockito.when(mockStoryAgent.narrateStreaming(Mockito.eq("alice"), Mockito.eq(input), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    stream.set(invocation.getArgument(2));
+                    stream.get().accept("The cave");
+                    return narration;
+                });
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+
+        var result = masterAgent.processInputStreaming("alice", input, tokens::add, Duration.ofMillis(50)).join();
+        stream.get().accept(" is dark."); // Too late
+
+        Assertions.assertEquals("The cave" + MasterAgent.CUT_SHORT_MARK, result);
+        Assertions.assertEquals(List.of("The cave", MasterAgent.CUT_SHORT_MARK), tokens);
+        Assertions.assertTrue(narration.isCancelled());
+    }
+
+    @Test
+    void cancelsNarrationWithTheTurn() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var input = "Continue the story";
+        var narration = new CompletableFuture<String>();
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CONTINUE_STORY);
+        Mockito.when(mockStoryAgent.narrateStreaming(Mockito.eq("alice"), Mockito.eq(input), Mockito.any()))
+                .thenReturn(narration);
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+
+        var turn = masterAgent.processInputStreaming("alice", input, token -> { }, Duration.ofMinutes(1));
+        turn.cancel(true);
+
+        Assertions.assertTrue(narration.isCancelled());
+    }
+
+    @Test
+    void abortsEntityGenerationWithTheTurn() throws Exception {
+        var mockStoryAgent = Mockito.mock(StoryAgent.class);
+        var mockEntityAgent = Mockito.mock(EntityAgent.class);
+        var mockIntentAnalyzer = Mockito.mock(IntentAnalyzer.class);
+        var input = "Create a goblin";
+        var signal = new CompletableFuture<AbortSignal>();
+        var release = new CountDownLatch(1);
+
+        Mockito.when(mockIntentAnalyzer.analyzeIntent(input)).thenReturn(IntentTypeEnum.CREATE_ENTITY);
+        Mockito.when(mockEntityAgent.generateEntity(input)).thenAnswer(invocation -> {
+            signal.complete(AbortSignal.current()); // Seen by the model requests
+            release.await(5, TimeUnit.SECONDS);
+            return "Entity created.";
+        });
+
+        MasterAgent masterAgent = instantiateWithoutConstructor(MasterAgent.class);
+        injectDependencies(masterAgent, mockIntentAnalyzer, mockStoryAgent, mockEntityAgent);
+
+        var turn = masterAgent.processInputStreaming("alice", input, token -> { }, Duration.ofMinutes(1));
+        var generation = signal.get(5, TimeUnit.SECONDS);
+        Assertions.assertFalse(generation.aborted());
+        turn.cancel(true);
+        release.countDown();
+
+        Assertions.assertTrue(generation.aborted());
+    }
+
     // --- helpers ---
 
     private static <T> T instantiateWithoutConstructor(Class<T> clazz) throws Exception {
@@ -109,5 +303,12 @@ class MasterAgentTest {
         intentField.set(masterAgent, intentAnalyzer);
         storyField.set(masterAgent, storyAgent);
         entityField.set(masterAgent, entityAgent);
+        injectPrefetcher(masterAgent, Mockito.mock(LorePrefetcher.class));
+    }
+
+    private static void injectPrefetcher(MasterAgent masterAgent, LorePrefetcher lorePrefetcher) throws Exception {
+        Field prefetcherField = MasterAgent.class.getDeclaredField("lorePrefetcher");
+        prefetcherField.setAccessible(true);
+        prefetcherField.set(masterAgent, lorePrefetcher);
     }
 }
@@ -0,0 +1,109 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ModelTiersTest {
+
+    private static final Duration MAX_WAIT = Duration.ofSeconds(5);
+    private static final List<ChatMessage> PROMPT = List.of(UserMessage.from("Hello"));
+
+    private final AtomicLong now = new AtomicLong();
+    private final InferenceScheduler large = new InferenceScheduler(1, 16, now::get);
+    private final InferenceScheduler small = new InferenceScheduler(1, 16, now::get);
+    private final OllamaBackendPool backends = new OllamaBackendPool(
+            List.of("http://gpu-1:11434/"));
+
+    /**
+     * Builds models answering with their own name.
+     */
+    private static ChatLanguageModel model(String url, String modelName) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                return Response.from(AiMessage.from(modelName + "@" + url));
+            }
+        };
+    }
+
+    private static String ask(ChatLanguageModel model) {
+        return model.generate(PROMPT).content().text();
+    }
+
+    private ModelTiers tiers() {
+        return new ModelTiers(backends, "llama3.1:70b", "llama3.2:3b", large, small,
+                Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("Gives each task the model of its tier")
+    void choosesModelByTier() {
+        ModelTiers tiers = tiers();
+
+        Assertions.assertEquals("llama3.2:3b@http://gpu-1:11434/", ask(tiers.chatModel(
+                ModelTiers.Tier.SMALL, InferenceScheduler.Priority.INTERACTIVE, MAX_WAIT,
+                ModelTiersTest::model)));
+        Assertions.assertEquals("llama3.1:70b@http://gpu-1:11434/",
+                ask(tiers.narrationModel(MAX_WAIT, ModelTiersTest::model)));
+        Assertions.assertEquals(1, large.stats().admittedCount());
+        Assertions.assertEquals(1, small.stats().admittedCount());
+    }
+
+    @Test
+    @DisplayName("Narrates with the small model while the large one is over its latency target")
+    void fallsBackWhenOverloaded() {
+        ModelTiers tiers = tiers();
+        ChatLanguageModel narration = tiers.narrationModel(MAX_WAIT, ModelTiersTest::model);
+        InferenceScheduler.Permit slow = large.acquire(InferenceScheduler.Priority.INTERACTIVE,
+                MAX_WAIT);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        slow.close(); // The large model takes 20 s per narration
+        InferenceScheduler.Permit busy = large.acquire(InferenceScheduler.Priority.INTERACTIVE,
+                MAX_WAIT);
+
+        Assertions.assertTrue(ask(narration).startsWith("llama3.2:3b@"));
+        Assertions.assertEquals(1, tiers.fallbackCount());
+
+        // The follow-up request carrying a tool result belongs to the same narration
+        ToolExecutionRequest call = ToolExecutionRequest.builder().id("1").name("roll")
+                .arguments("{}").build();
+        Assertions.assertTrue(narration.generate(List.of(UserMessage.from("Hello"),
+                        AiMessage.from(call), ToolExecutionResultMessage.from(call, "4")))
+                .content().text().startsWith("llama3.2:3b@"));
+        Assertions.assertEquals(1, tiers.fallbackCount());
+
+        busy.close();
+        Assertions.assertTrue(ask(narration).startsWith("llama3.1:70b@"));
+        Assertions.assertEquals(1, tiers.fallbackCount());
+    }
+
+    @Test
+    @DisplayName("Uses a single model and scheduler when no small model is configured")
+    void singleTier() {
+        ModelTiers tiers = new ModelTiers(backends, "llama3.1", "llama3.1", large, large,
+                Duration.ofSeconds(10));
+        InferenceScheduler.Permit slow = large.acquire(InferenceScheduler.Priority.INTERACTIVE,
+                MAX_WAIT);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        slow.close();
+
+        Assertions.assertEquals("llama3.1@http://gpu-1:11434/",
+                ask(tiers.narrationModel(MAX_WAIT, ModelTiersTest::model)));
+        Assertions.assertEquals(List.of(ModelTiers.Tier.LARGE),
+                List.copyOf(tiers.stats().keySet()));
+        Assertions.assertEquals(0, tiers.fallbackCount());
+    }
+}
@@ -0,0 +1,361 @@
+package agent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+class OllamaBackendPoolTest {
+
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    private final List<StubOllama> stubs = new ArrayList<>();
+    private final CountDownLatch slowRequests = new CountDownLatch(1);
+    private final ExecutorService executor = VirtualThreads.newExecutor("test-backend");
+
+    /**
+     * A local stand-in for an Ollama host: answers its name to chat requests, after
+     * the test releases them for "slow" ones.
+     */
+    private final class StubOllama {
+        private final String name;
+        private final HttpServer server;
+        private volatile boolean healthy = true;
+        private final AtomicInteger chats = new AtomicInteger();
+        private final List<String> preloads = new CopyOnWriteArrayList<>();
+
+        private StubOllama(String name) throws IOException {
+            this.name = name;
+            this.server = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(executor);
+            server.createContext("/api/version", exchange ->
+                    respond(exchange, healthy ? 200 : 503, "{\"version\":\"0.5.0\"}"));
+            server.createContext("/api/generate", exchange -> {
+                preloads.add(new String(exchange.getRequestBody().readAllBytes(),
+                        StandardCharsets.UTF_8));
+                respond(exchange, 200, "{\"done\":true}");
+            });
+            server.createContext("/api/chat", exchange -> {
+                String prompt = new String(exchange.getRequestBody().readAllBytes(),
+                        StandardCharsets.UTF_8);
+                chats.incrementAndGet();
+                if (prompt.equals("slow")) {
+                    try {
+                        slowRequests.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                respond(exchange, 200, name);
+            });
+            server.start();
+        }
+
+        private String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+
+        private void kill() {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text)
+            throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static HttpRequest chatRequest(String baseUrl, List<ChatMessage> messages) {
+        String prompt = ((UserMessage) messages.get(messages.size() - 1)).singleText();
+        return HttpRequest.newBuilder(URI.create(baseUrl + "api/chat"))
+                .POST(HttpRequest.BodyPublishers.ofString(prompt)).build();
+    }
+
+    /**
+     * A chat model calling a stub host over HTTP, failing like the Ollama client.
+     */
+    private static ChatLanguageModel httpModel(String baseUrl) {
+        return messages -> {
+            try {
+                return Response.from(AiMessage.from(CLIENT.send(chatRequest(baseUrl, messages),
+                        HttpResponse.BodyHandlers.ofString()).body()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * A chat model calling a stub host over HTTP, giving up on an answer after a while.
+     */
+    private static ChatLanguageModel timingOutHttpModel(String baseUrl) {
+        return messages -> {
+            HttpRequest request = HttpRequest.newBuilder(chatRequest(baseUrl, messages),
+                    (name, value) -> true).timeout(Duration.ofMillis(200)).build();
+            try {
+                return Response.from(AiMessage.from(CLIENT.send(request,
+                        HttpResponse.BodyHandlers.ofString()).body()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static StreamingChatLanguageModel streamingHttpModel(String baseUrl) {
+        return (messages, handler) -> CLIENT.sendAsync(chatRequest(baseUrl, messages),
+                        HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        handler.onError(error);
+                        return;
+                    }
+                    handler.onNext(response.body());
+                    handler.onComplete(Response.from(AiMessage.from(response.body())));
+                });
+    }
+
+    private OllamaBackendPool pool(int size) throws IOException {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            StubOllama stub = new StubOllama("node-" + i);
+            stubs.add(stub);
+            urls.add(stub.url());
+        }
+        return new OllamaBackendPool(urls);
+    }
+
+    private static String ask(ChatLanguageModel model, String sessionId, String prompt) {
+        return OllamaBackendPool.withSession(sessionId, () -> model.generate(
+                List.of(UserMessage.from(prompt))).content().text());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < end, "Condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static int outstanding(OllamaBackendPool pool) {
+        return pool.status().stream().mapToInt(OllamaBackendPool.BackendStatus::outstanding)
+                .sum();
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowRequests.countDown();
+        stubs.forEach(StubOllama::kill);
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Sends a request to the backend with the fewest requests in flight")
+    void routesToLeastOutstanding() throws Exception {
+        OllamaBackendPool pool = pool(2);
+        ChatLanguageModel model = pool.chatModel(OllamaBackendPoolTest::httpModel);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(
+                () -> ask(model, null, "slow"), executor);
+        waitUntil(() -> outstanding(pool) == 1);
+        String busy = pool.status().get(0).outstanding() == 1 ? "node-0" : "node-1";
+
+        String fast = ask(model, null, "fast");
+
+        Assertions.assertNotEquals(busy, fast);
+        slowRequests.countDown();
+        Assertions.assertEquals(busy, slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Keeps the requests of a session on one backend, spreading the sessions")
+    void sticksSessionsToABackend() throws Exception {
+        ChatLanguageModel model = pool(2).chatModel(OllamaBackendPoolTest::httpModel);
+
+        String alice = ask(model, "alice", "Hello");
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(alice, ask(model, "alice", "Turn " + i));
+        }
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            used.add(ask(model, "player-" + i, "Hello"));
+        }
+        Assertions.assertEquals(Set.of("node-0", "node-1"), used);
+    }
+
+    @Test
+    @DisplayName("Moves a session away from its backend when that one is much busier")
+    void leavesOverloadedStickyBackend() throws Exception {
+        OllamaBackendPool pool = pool(2);
+        ChatLanguageModel model = pool.chatModel(OllamaBackendPoolTest::httpModel);
+        String home = ask(model, "alice", "Hello");
+        List<CompletableFuture<String>> slow = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            slow.add(CompletableFuture.supplyAsync(() -> ask(model, "alice", "slow"),
+                    executor));
+            int expected = i + 1;
+            waitUntil(() -> outstanding(pool) == expected);
+        }
+
+        Assertions.assertNotEquals(home, ask(model, "alice", "Hurry"));
+        slowRequests.countDown();
+        for (CompletableFuture<String> request : slow) {
+            Assertions.assertEquals(home, request.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("Fails over to another backend when one is dead")
+    void failsOverDeadBackend() throws Exception {
+        OllamaBackendPool pool = pool(2);
+        ChatLanguageModel model = pool.chatModel(OllamaBackendPoolTest::httpModel);
+        stubs.get(0).kill();
+
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals("node-1", ask(model, "player-" + i, "Hello"));
+        }
+        Assertions.assertFalse(pool.status().get(0).healthy());
+        Assertions.assertTrue(pool.status().get(1).healthy());
+        Assertions.assertEquals(0, outstanding(pool));
+    }
+
+    @Test
+    @DisplayName("Fails over a stream whose backend is dead before the first token")
+    void failsOverDeadBackendWhenStreaming() throws Exception {
+        OllamaBackendPool pool = pool(2);
+        StreamingChatLanguageModel model = pool.streamingChatModel(
+                OllamaBackendPoolTest::streamingHttpModel);
+        stubs.get(1).kill();
+
+        for (int i = 0; i < 20; i++) {
+            CompletableFuture<String> answer = new CompletableFuture<>();
+            OllamaBackendPool.withSession("player-" + i, () -> {
+                model.generate(List.of(UserMessage.from("Hello")),
+                        new StreamingResponseHandler<AiMessage>() {
+                            @Override
+                            public void onNext(String token) {
+                            }
+
+                            @Override
+                            public void onComplete(Response<AiMessage> response) {
+                                answer.complete(response.content().text());
+                            }
+
+                            @Override
+                            public void onError(Throwable error) {
+                                answer.completeExceptionally(error);
+                            }
+                        });
+                return null;
+            });
+            Assertions.assertEquals("node-0", answer.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertFalse(pool.status().get(1).healthy());
+    }
+
+    @Test
+    @DisplayName("Does not send again a request timing out while its backend generates")
+    void keepsRequestTimingOutWhileGenerating() throws Exception {
+        OllamaBackendPool pool = pool(2);
+        ChatLanguageModel model = pool.chatModel(OllamaBackendPoolTest::timingOutHttpModel);
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> ask(model, null, "slow"));
+        Assertions.assertEquals(1, stubs.get(0).chats.get() + stubs.get(1).chats.get());
+        Assertions.assertTrue(pool.status().get(0).healthy());
+        Assertions.assertTrue(pool.status().get(1).healthy());
+        Assertions.assertEquals(0, outstanding(pool));
+    }
+
+    @Test
+    @DisplayName("Brings a lone backend back up once it answers again")
+    void bringsLoneBackendBackUp() throws Exception {
+        OllamaBackendPool pool = pool(1);
+        AtomicBoolean refuse = new AtomicBoolean(true);
+        ChatLanguageModel model = pool.chatModel(url -> messages -> {
+            if (refuse.getAndSet(false)) {
+                throw new UncheckedIOException(new ConnectException("Connection refused"));
+            }
+            return httpModel(url).generate(messages);
+        });
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> ask(model, null, "Hello"));
+        Assertions.assertFalse(pool.status().get(0).healthy());
+        Assertions.assertEquals("node-0", ask(model, null, "Hello"));
+        Assertions.assertTrue(pool.status().get(0).healthy());
+    }
+
+    @Test
+    @DisplayName("Health checks take a backend out and bring it back")
+    void checksHealth() throws Exception {
+        OllamaBackendPool pool = pool(2);
+        ChatLanguageModel model = pool.chatModel(OllamaBackendPoolTest::httpModel);
+
+        stubs.get(0).healthy = false;
+        pool.checkHealth();
+        Assertions.assertFalse(pool.status().get(0).healthy());
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals("node-1", ask(model, "player-" + i, "Hello"));
+        }
+
+        stubs.get(0).healthy = true;
+        pool.checkHealth();
+        Assertions.assertTrue(pool.status().get(0).healthy());
+    }
+
+    @Test
+    @DisplayName("Preloads a model on every backend, keeping it loaded")
+    void preloadsModel() throws Exception {
+        OllamaBackendPool pool = pool(2);
+
+        pool.preload("llama3.1", "30m").get(5, TimeUnit.SECONDS);
+
+        for (StubOllama stub : stubs) {
+            Assertions.assertEquals(List.of("{\"model\":\"llama3.1\",\"keep_alive\":\"30m\"}"),
+                    stub.preloads);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package agent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelToolCallModelTest {
+
+    private static final String MONSTER_JSON = """
+            {"index": "%1$s", "name": "%1$s", "type": "humanoid", "size": "Small",
+             "challenge_rating": 1, "hit_points": 7, "armor_class": [{"value": 12}]}
+            """;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger documentRequests = new AtomicInteger();
+    private final AtomicBoolean servedTogether = new AtomicBoolean(true);
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a stand-in for the D&D 5E API that answers monster documents only once
+     * the expected number of them has been requested at the same time.
+     */
+    private String startStubApi(int expectedTogether) throws IOException {
+        CountDownLatch arrivals = new CountDownLatch(expectedTogether);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/api", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/api/monsters/")) {
+                documentRequests.incrementAndGet();
+                arrivals.countDown();
+                try {
+                    if (!arrivals.await(2, TimeUnit.SECONDS)) {
+                        servedTogether.set(false);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, MONSTER_JSON.formatted(path.substring(14)));
+            } else {
+                respond(exchange, 404, "{\"error\": \"Not found\"}");
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ToolExecutionRequest request(String id, String tool, String arguments) {
+        return ToolExecutionRequest.builder().id(id).name(tool).arguments(arguments).build();
+    }
+
+    /**
+     * A model always answering with the given tool execution requests.
+     */
+    private static ChatLanguageModel modelCalling(List<ToolExecutionRequest> requests) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                return Response.from(AiMessage.from(requests));
+            }
+
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages,
+                                                List<ToolSpecification> toolSpecifications) {
+                return generate(messages);
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("Runs the tool calls of one response concurrently, results unchanged")
+    void runsToolCallsConcurrently() throws Exception {
+        DndLoreTool tool = new DndLoreTool(startStubApi(3), null, false);
+        List<ToolExecutionRequest> requests = List.of(
+                request("1", "searchMonster", "{\"monsterName\": \"goblin\"}"),
+                request("2", "searchMonster", "{\"arg0\": \"orc\"}"),
+                request("3", "searchLoreBatch", "{\"monsters\": [\"kobold\", \"goblin\"]}"));
+        ParallelToolCallModel model = new ParallelToolCallModel(modelCalling(requests), tool,
+                Duration.ofSeconds(10));
+
+        Response<AiMessage> response = model.generate(List.of(UserMessage.from("Fight!")),
+                List.of());
+
+        Assertions.assertEquals(requests, response.content().toolExecutionRequests());
+        Assertions.assertTrue(servedTogether.get());
+        Assertions.assertEquals(3, documentRequests.get());
+        String orc = tool.searchMonster("orc");
+        Assertions.assertTrue(orc.contains("D&D MONSTER: orc"));
+        Assertions.assertEquals(3, documentRequests.get());
+    }
+
+    @Test
+    @DisplayName("Leaves a single tool call to AiServices")
+    void leavesSingleToolCall() throws Exception {
+        DndLoreTool tool = new DndLoreTool(startStubApi(1), null, false);
+        List<ToolExecutionRequest> requests =
+                List.of(request("1", "searchMonster", "{\"monsterName\": \"goblin\"}"));
+        ParallelToolCallModel model = new ParallelToolCallModel(modelCalling(requests), tool,
+                Duration.ofSeconds(10));
+
+        model.generate(List.of(UserMessage.from("Look around")));
+
+        Assertions.assertEquals(0, documentRequests.get());
+    }
+
+    @Test
+    @DisplayName("Stops waiting at the turn deadline and ignores other tools")
+    void stopsWaitingAtDeadline() throws Exception {
+        DndLoreTool tool = new DndLoreTool(startStubApi(3), null, false);
+        List<ToolExecutionRequest> requests = List.of(
+                request("1", "searchMonster", "{\"monsterName\": \"goblin\"}"),
+                request("2", "searchMonster", "{\"monsterName\": \"orc\"}"),
+                request("3", "rollDice", "{\"sides\": 20}"),
+                request("4", "searchSpell", "not json"));
+        ParallelToolCallModel model = new ParallelToolCallModel(modelCalling(requests), tool,
+                Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+        model.generate(List.of(UserMessage.from("Fight!")), List.of());
+        long elapsed = System.nanoTime() - start;
+
+        Assertions.assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,183 @@
+package agent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelToolCallStreamingModelTest {
+
+    private static final String MONSTER_JSON = """
+            {"index": "%1$s", "name": "%1$s", "type": "humanoid", "size": "Small",
+             "challenge_rating": 1, "hit_points": 7, "armor_class": [{"value": 12}]}
+            """;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger documentRequests = new AtomicInteger();
+    private final AtomicBoolean servedTogether = new AtomicBoolean(true);
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a stand-in for the D&D 5E API that answers monster documents only once
+     * the expected number of them has been requested at the same time.
+     */
+    private String startStubApi(int expectedTogether) throws IOException {
+        CountDownLatch arrivals = new CountDownLatch(expectedTogether);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.createContext("/api", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/api/monsters/")) {
+                documentRequests.incrementAndGet();
+                arrivals.countDown();
+                try {
+                    if (!arrivals.await(2, TimeUnit.SECONDS)) {
+                        servedTogether.set(false);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, MONSTER_JSON.formatted(path.substring(14)));
+            } else {
+                respond(exchange, 404, "{\"error\": \"Not found\"}");
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ToolExecutionRequest request(String id, String tool, String arguments) {
+        return ToolExecutionRequest.builder().id(id).name(tool).arguments(arguments).build();
+    }
+
+    /**
+     * A model streaming one token, then completing on its own thread with the given tool
+     * execution requests, like a model client.
+     */
+    private static StreamingChatLanguageModel modelCalling(List<ToolExecutionRequest> requests) {
+        return new StreamingChatLanguageModel() {
+            @Override
+            public void generate(List<ChatMessage> messages,
+                                 StreamingResponseHandler<AiMessage> handler) {
+                CompletableFuture.runAsync(() -> {
+                    handler.onNext("Hmm");
+                    handler.onComplete(Response.from(AiMessage.from(requests)));
+                });
+            }
+
+            @Override
+            public void generate(List<ChatMessage> messages,
+                                 List<ToolSpecification> toolSpecifications,
+                                 StreamingResponseHandler<AiMessage> handler) {
+                generate(messages, handler);
+            }
+        };
+    }
+
+    /**
+     * Collects the stream events of one request.
+     */
+    private static final class Recorder implements StreamingResponseHandler<AiMessage> {
+        private final List<String> tokens = new ArrayList<>();
+        private final CompletableFuture<Response<AiMessage>> response = new CompletableFuture<>();
+
+        @Override
+        public void onNext(String token) {
+            tokens.add(token);
+        }
+
+        @Override
+        public void onComplete(Response<AiMessage> complete) {
+            response.complete(complete);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            response.completeExceptionally(error);
+        }
+    }
+
+    @Test
+    @DisplayName("Runs the tool calls of a streamed response concurrently before handing it on")
+    void runsToolCallsConcurrently() throws Exception {
+        DndLoreTool tool = new DndLoreTool(startStubApi(3), null, false);
+        List<ToolExecutionRequest> requests = List.of(
+                request("1", "searchMonster", "{\"monsterName\": \"goblin\"}"),
+                request("2", "searchMonster", "{\"arg0\": \"orc\"}"),
+                request("3", "searchLoreBatch", "{\"monsters\": [\"kobold\", \"goblin\"]}"));
+        ParallelToolCallStreamingModel model = new ParallelToolCallStreamingModel(
+                modelCalling(requests), tool, Duration.ofSeconds(10));
+        Recorder recorder = new Recorder();
+
+        model.generate(List.of(UserMessage.from("Fight!")), List.of(), recorder);
+        Response<AiMessage> response = recorder.response.get(5, TimeUnit.SECONDS);
+
+        Assertions.assertEquals(List.of("Hmm"), recorder.tokens);
+        Assertions.assertEquals(requests, response.content().toolExecutionRequests());
+        Assertions.assertTrue(servedTogether.get());
+        Assertions.assertEquals(3, documentRequests.get()); // Done before the hand-over
+        Assertions.assertTrue(tool.searchMonster("orc").contains("D&D MONSTER: orc"));
+        Assertions.assertEquals(3, documentRequests.get());
+    }
+
+    @Test
+    @DisplayName("Hands a streamed response on at the deadline")
+    void stopsWaitingAtDeadline() throws Exception {
+        DndLoreTool tool = new DndLoreTool(startStubApi(3), null, false);
+        List<ToolExecutionRequest> requests = List.of(
+                request("1", "searchMonster", "{\"monsterName\": \"goblin\"}"),
+                request("2", "searchMonster", "{\"monsterName\": \"orc\"}"));
+        ParallelToolCallStreamingModel model = new ParallelToolCallStreamingModel(
+                modelCalling(requests), tool, Duration.ofMillis(100));
+        Recorder recorder = new Recorder();
+
+        long start = System.nanoTime();
+        model.generate(List.of(UserMessage.from("Fight!")), List.of(), recorder);
+        recorder.response.get(5, TimeUnit.SECONDS);
+
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+}
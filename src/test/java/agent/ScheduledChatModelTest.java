@@ -0,0 +1,80 @@
+package agent;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class ScheduledChatModelTest {
+
+    private static final Duration LONG_WAIT = Duration.ofSeconds(5);
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    /**
+     * A model which answers only once its thread is interrupted.
+     */
+    private final ChatLanguageModel slowModel = new ChatLanguageModel() {
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Request interrupted");
+            }
+            return Response.from(AiMessage.from("Too late"));
+        }
+    };
+
+    @Test
+    @DisplayName("Frees the slot and interrupts a request once its signal is given")
+    void freesSlotOnAbort() throws Exception {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 0);
+        ScheduledChatModel model = new ScheduledChatModel(slowModel, scheduler,
+                InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        AbortSignal signal = new AbortSignal();
+
+        CompletableFuture<Response<AiMessage>> request = CompletableFuture.supplyAsync(
+                () -> AbortSignal.withSignal(signal,
+                        () -> model.generate(List.of(UserMessage.from("Create a goblin")))));
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, scheduler.stats().running());
+
+        signal.abort();
+
+        Assertions.assertEquals(0, scheduler.stats().running());
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class,
+                () -> request.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("Request interrupted", failure.getCause().getMessage());
+    }
+
+    @Test
+    @DisplayName("Does not send a request once its signal is given")
+    void refusesAbortedRequest() {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 0);
+        ScheduledChatModel model = new ScheduledChatModel(slowModel, scheduler,
+                InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        AbortSignal signal = new AbortSignal();
+        signal.abort();
+
+        Assertions.assertThrows(CancellationException.class, () -> AbortSignal.withSignal(signal,
+                () -> model.generate(List.of(UserMessage.from("Create a goblin")))));
+        Assertions.assertEquals(1, started.getCount());
+        Assertions.assertEquals(0, scheduler.stats().running());
+        Assertions.assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
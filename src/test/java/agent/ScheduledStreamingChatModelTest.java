@@ -0,0 +1,129 @@
+package agent;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ScheduledStreamingChatModelTest {
+
+    private static final Duration LONG_WAIT = Duration.ofSeconds(5);
+
+    private final AtomicReference<StreamingResponseHandler<AiMessage>> stream =
+            new AtomicReference<>();
+
+    /**
+     * A model which accepts the request and then sends nothing, until the test does.
+     */
+    private final StreamingChatLanguageModel silentModel = new StreamingChatLanguageModel() {
+        @Override
+        public void generate(List<ChatMessage> messages,
+                             StreamingResponseHandler<AiMessage> handler) {
+            stream.set(handler);
+        }
+    };
+
+    /**
+     * Records the events reaching the caller.
+     */
+    private static class Recorder implements StreamingResponseHandler<AiMessage> {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onNext(String token) {
+            events.add("next " + token);
+        }
+
+        @Override
+        public void onComplete(Response<AiMessage> response) {
+            events.add("complete");
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            events.add("error " + error.getClass().getSimpleName());
+        }
+    }
+
+    @Test
+    @DisplayName("Frees the slot of a silent stream once its signal is given")
+    void freesSlotOnAbort() {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 0);
+        ScheduledStreamingChatModel model = new ScheduledStreamingChatModel(silentModel,
+                scheduler, InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        AbortSignal signal = new AbortSignal();
+        Recorder recorder = new Recorder();
+
+        AbortSignal.withSignal(signal, () -> {
+            model.generate(List.of(UserMessage.from("Go on")), recorder);
+            return null;
+        });
+        Assertions.assertEquals(1, scheduler.stats().running());
+
+        signal.abort();
+        Assertions.assertEquals(0, scheduler.stats().running());
+
+        // The late events of the aborted stream are dropped
+        Assertions.assertThrows(CancellationException.class, () -> stream.get().onNext("Late"));
+        stream.get().onComplete(Response.from(AiMessage.from("Late")));
+        Assertions.assertEquals(List.of(), recorder.events);
+        Assertions.assertEquals(0, scheduler.stats().running());
+    }
+
+    @Test
+    @DisplayName("Aborts the requests started from the events of an aborted stream")
+    void abortsFollowUpRequests() {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 0);
+        ScheduledStreamingChatModel model = new ScheduledStreamingChatModel(silentModel,
+                scheduler, InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        AbortSignal signal = new AbortSignal();
+        Recorder followUp = new Recorder();
+
+        // Like AiServices after a tool call: the next request starts in onComplete
+        AbortSignal.withSignal(signal, () -> {
+            model.generate(List.of(UserMessage.from("Go on")), new Recorder() {
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    model.generate(List.of(UserMessage.from("Tool result")), followUp);
+                }
+            });
+            return null;
+        });
+        stream.get().onComplete(Response.from(AiMessage.from("Calling a tool")));
+        Assertions.assertEquals(1, scheduler.stats().running());
+
+        signal.abort();
+        Assertions.assertEquals(0, scheduler.stats().running());
+    }
+
+    @Test
+    @DisplayName("Does not start a request once its signal is given")
+    void refusesAbortedRequest() {
+        InferenceScheduler scheduler = new InferenceScheduler(1, 0);
+        ScheduledStreamingChatModel model = new ScheduledStreamingChatModel(silentModel,
+                scheduler, InferenceScheduler.Priority.INTERACTIVE, LONG_WAIT);
+        AbortSignal signal = new AbortSignal();
+        Recorder recorder = new Recorder();
+        signal.abort();
+
+        AbortSignal.withSignal(signal, () -> {
+            model.generate(List.of(UserMessage.from("Go on")), recorder);
+            return null;
+        });
+
+        Assertions.assertNull(stream.get());
+        Assertions.assertEquals(List.of("error CancellationException"), recorder.events);
+        Assertions.assertEquals(0, scheduler.stats().running());
+    }
+}
@@ -0,0 +1,181 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SessionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger summaryCalls = new AtomicInteger();
+
+    /**
+     * A model numbering its summaries.
+     */
+    private final ChatLanguageModel model = new ChatLanguageModel() {
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return Response.from(AiMessage.from("summary " + summaryCalls.incrementAndGet()));
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages,
+                                            List<ToolSpecification> toolSpecifications) {
+            return generate(messages);
+        }
+    };
+
+    private SummarizingChatMemory summarizingMemory(int maxTokens) {
+        return new SummarizingChatMemory("test", maxTokens, new ConversationSummarizer(model, 50),
+                Runnable::run);
+    }
+
+    private static void addTurn(SessionJournal journal, int number, String filler) {
+        journal.add(UserMessage.from("Player move number " + number + filler));
+        journal.add(AiMessage.from("Narration of the move number " + number + filler));
+    }
+
+    @Test
+    @DisplayName("Rebuilds the conversation after a restart, tool calls included")
+    void rebuildsConversation() throws IOException {
+        Path file = dir.resolve("session.journal");
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id("1").name("searchMonster").arguments("{\"monsterName\": \"goblin\"}").build();
+        List<ChatMessage> conversation = List.of(
+                UserMessage.from("A goblin appears"),
+                AiMessage.from(List.of(request)),
+                ToolExecutionResultMessage.from(request, "D&D MONSTER: Goblin"),
+                AiMessage.from("The goblin snarls – what do you do?"));
+        try (SessionJournal journal = new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null)) {
+            journal.add(SystemMessage.from("Rules"));
+            conversation.forEach(journal::add);
+        }
+
+        MessageWindowChatMemory rebuilt = MessageWindowChatMemory.withMaxMessages(50);
+        try (SessionJournal journal = new SessionJournal(file, rebuilt, null)) {
+            Assertions.assertEquals(conversation, journal.messages());
+        }
+    }
+
+    @Test
+    @DisplayName("Restores the summary and the recent turns without calling the model")
+    void restoresSummaryWithoutModel() throws IOException {
+        Path file = dir.resolve("session.journal");
+        SummarizingChatMemory before = summarizingMemory(60);
+        try (SessionJournal journal = new SessionJournal(file, before, before)) {
+            for (int i = 0; i < 20; i++) {
+                addTurn(journal, i, "");
+            }
+        }
+        int calls = summaryCalls.get();
+
+        SummarizingChatMemory after = summarizingMemory(60);
+        try (SessionJournal journal = new SessionJournal(file, after, after)) {
+            Assertions.assertEquals(calls, summaryCalls.get());
+            Assertions.assertEquals(before.summary(), after.summary());
+            Assertions.assertEquals(before.messages(), journal.messages());
+        }
+    }
+
+    @Test
+    @DisplayName("Compacts the messages covered by the summary")
+    void compactsFoldedMessages() throws IOException {
+        Path file = dir.resolve("session.journal");
+        String filler = " ".repeat(1000);
+        SummarizingChatMemory before = summarizingMemory(1000);
+        try (SessionJournal journal = new SessionJournal(file, before, before)) {
+            for (int i = 0; i < 100; i++) {
+                addTurn(journal, i, filler);
+            }
+        }
+        long sizeBefore = Files.size(file);
+
+        SummarizingChatMemory after = summarizingMemory(1000);
+        try (SessionJournal journal = new SessionJournal(file, after, after)) {
+            Assertions.assertEquals(before.messages(), journal.messages());
+            addTurn(journal, 100, "");
+        }
+        Assertions.assertTrue(Files.size(file) < sizeBefore / 10);
+
+        SummarizingChatMemory reopened = summarizingMemory(1000);
+        try (SessionJournal journal = new SessionJournal(file, reopened, reopened)) {
+            Assertions.assertEquals(after.messages(), journal.messages());
+        }
+    }
+
+    @Test
+    @DisplayName("Drops a torn record at the end of the journal")
+    void dropsTornRecord() throws IOException {
+        Path file = dir.resolve("session.journal");
+        try (SessionJournal journal = new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null)) {
+            journal.add(UserMessage.from("I open the door"));
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(12).putInt(0, 100).putInt(4, 42), size);
+        }
+
+        try (SessionJournal journal = new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null)) {
+            Assertions.assertEquals(List.of(UserMessage.from("I open the door")),
+                    journal.messages());
+            journal.add(UserMessage.from("I step in"));
+        }
+        try (SessionJournal journal = new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null)) {
+            Assertions.assertEquals(2, journal.messages().size());
+        }
+    }
+
+    @Test
+    @DisplayName("A cleared session resumes empty")
+    void clearedSessionResumesEmpty() throws IOException {
+        Path file = dir.resolve("session.journal");
+        try (SessionJournal journal = new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null)) {
+            journal.add(UserMessage.from("I open the door"));
+            journal.clear();
+            journal.add(UserMessage.from("A new adventure"));
+        }
+
+        try (SessionJournal journal = new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null)) {
+            Assertions.assertEquals(List.of(UserMessage.from("A new adventure")),
+                    journal.messages());
+        }
+    }
+
+    @Test
+    @DisplayName("Refuses a file which is not a session journal")
+    void refusesForeignFile() throws IOException {
+        Path file = dir.resolve("session.journal");
+        Files.writeString(file, "not a journal");
+
+        Assertions.assertThrows(IOException.class, () -> new SessionJournal(file,
+                MessageWindowChatMemory.withMaxMessages(50), null));
+    }
+}
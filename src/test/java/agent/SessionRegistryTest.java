@@ -0,0 +1,268 @@
+package agent;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class SessionRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<String> created = new ArrayList<>();
+    private final List<String> closed = new ArrayList<>();
+
+    /**
+     * An in-memory chat memory recording when it is closed.
+     */
+    private class ClosableMemory implements ChatMemory, Closeable {
+        private final String id;
+        private final ChatMemory messages = MessageWindowChatMemory.withMaxMessages(100);
+
+        private ClosableMemory(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object id() {
+            return id;
+        }
+
+        @Override
+        public void add(ChatMessage message) {
+            messages.add(message);
+        }
+
+        @Override
+        public List<ChatMessage> messages() {
+            return messages.messages();
+        }
+
+        @Override
+        public void clear() {
+            messages.clear();
+        }
+
+        @Override
+        public void close() {
+            synchronized (closed) {
+                closed.add(id);
+            }
+        }
+    }
+
+    private SessionRegistry registry(int maxResident) {
+        return new SessionRegistry(id -> {
+            synchronized (created) {
+                created.add(id);
+            }
+            return new ClosableMemory(id);
+        }, maxResident, Duration.ofMinutes(10), now::get);
+    }
+
+    @Test
+    @DisplayName("Keeps one memory per session")
+    void isolatesSessions() {
+        SessionRegistry registry = registry(10);
+        registry.get("alice").add(UserMessage.from("I open the door"));
+        registry.get("bob").add(UserMessage.from("I climb the tower"));
+
+        Assertions.assertEquals(List.of(UserMessage.from("I open the door")),
+                registry.get("alice").messages());
+        Assertions.assertEquals(List.of(UserMessage.from("I climb the tower")),
+                registry.get("bob").messages());
+        Assertions.assertEquals("alice", registry.get("alice").id());
+        Assertions.assertEquals(List.of("alice", "bob"), created);
+    }
+
+    @Test
+    @DisplayName("Holds back the messages of a turn until it is committed")
+    void holdsTurnUntilCommitted() throws InterruptedException {
+        SessionRegistry registry = registry(10);
+        ChatMemory alice = registry.get("alice");
+        registry.beginTurn("alice");
+        alice.add(UserMessage.from("I open the door"));
+
+        Assertions.assertEquals(List.of(UserMessage.from("I open the door")), alice.messages());
+        registry.restartTurn("alice"); // Retry
+        alice.add(UserMessage.from("I open the door (again)"));
+        alice.add(AiMessage.from("It creaks."));
+        registry.evictIdle();
+        registry.commitTurn("alice", message -> message instanceof UserMessage
+                ? UserMessage.from("I open the door") : message);
+
+        Assertions.assertEquals(List.of(UserMessage.from("I open the door"),
+                AiMessage.from("It creaks.")), alice.messages());
+    }
+
+    @Test
+    @DisplayName("Drops the messages of a turn rolled back")
+    void dropsRolledBackTurn() throws InterruptedException {
+        SessionRegistry registry = registry(10);
+        ChatMemory alice = registry.get("alice");
+        alice.add(UserMessage.from("I open the door"));
+        registry.beginTurn("alice");
+        alice.add(UserMessage.from("I climb the tower"));
+        registry.rollbackTurn("alice");
+        alice.add(UserMessage.from("I climb the wall"));
+
+        Assertions.assertEquals(List.of(UserMessage.from("I open the door"),
+                UserMessage.from("I climb the wall")), alice.messages());
+    }
+
+    @Test
+    @DisplayName("Starts a turn once the turn in progress in the session has ended")
+    void runsTurnsOfSessionOneAfterTheOther() throws Exception {
+        SessionRegistry registry = registry(10);
+        ChatMemory alice = registry.get("alice");
+        registry.beginTurn("alice");
+        registry.beginTurn("bob"); // Other sessions do not wait
+        alice.add(UserMessage.from("I open the door"));
+
+        CompletableFuture<List<ChatMessage>> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                registry.beginTurn("alice");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            alice.add(UserMessage.from("I climb the tower"));
+            List<ChatMessage> seen = alice.messages();
+            registry.commitTurn("alice", message -> message);
+            return seen;
+        });
+        Thread.sleep(50);
+        Assertions.assertFalse(second.isDone());
+        alice.add(AiMessage.from("It creaks."));
+        registry.commitTurn("alice", message -> message);
+
+        // The second turn saw the first one whole, and added its messages after it
+        Assertions.assertEquals(List.of(UserMessage.from("I open the door"),
+                AiMessage.from("It creaks."), UserMessage.from("I climb the tower")),
+                second.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(second.get(), alice.messages());
+        registry.rollbackTurn("bob");
+    }
+
+    @Test
+    @DisplayName("Evicts the least recently used session above the resident limit")
+    void evictsLeastRecentlyUsed() {
+        SessionRegistry registry = registry(2);
+        registry.get("alice").messages();
+        registry.get("bob").messages();
+        registry.get("alice").messages();
+        registry.get("carol").messages();
+
+        Assertions.assertEquals(List.of("bob"), closed);
+        Assertions.assertEquals(2, registry.residentSessions());
+    }
+
+    @Test
+    @DisplayName("Evicts idle sessions and rebuilds them on the next use")
+    void evictsIdleSessions() {
+        SessionRegistry registry = registry(10);
+        ChatMemory alice = registry.get("alice");
+        alice.messages();
+        registry.get("bob").messages();
+
+        now.addAndGet(Duration.ofMinutes(11).toNanos());
+        registry.evictIdle();
+        Assertions.assertEquals(List.of("alice", "bob"), closed);
+        Assertions.assertEquals(0, registry.residentSessions());
+
+        alice.messages();
+        Assertions.assertEquals(List.of("alice", "bob", "alice"), created);
+    }
+
+    @Test
+    @DisplayName("Never evicts a session during an operation on it")
+    void keepsSessionInUse() {
+        List<SessionRegistry> holder = new ArrayList<>();
+        SessionRegistry registry = new SessionRegistry(id -> new ClosableMemory(id) {
+            @Override
+            public void add(ChatMessage message) {
+                super.add(message);
+                if (id.equals("alice")) {
+                    holder.get(0).get("bob").messages(); // Pushes alice above the limit
+                }
+            }
+        }, 1, Duration.ofMinutes(10), now::get);
+        holder.add(registry);
+
+        registry.get("alice").add(UserMessage.from("Hello"));
+
+        Assertions.assertEquals(List.of(), closed);
+        registry.get("carol").messages();
+        Assertions.assertTrue(closed.contains("alice"));
+    }
+
+    @Test
+    @DisplayName("Rejects session ids unusable as file names")
+    void rejectsInvalidIds() {
+        SessionRegistry registry = registry(10);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.get("../etc"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> registry.get(""));
+    }
+
+    @Test
+    @DisplayName("Brings an evicted session back from its journal")
+    void reloadsEvictedSessionFromJournal() {
+        SessionRegistry registry = new SessionRegistry(id -> {
+            try {
+                return new SessionJournal(dir.resolve(id + ".journal"),
+                        MessageWindowChatMemory.withMaxMessages(100), null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, 1, Duration.ofMinutes(10), now::get);
+
+        registry.get("alice").add(UserMessage.from("I open the door"));
+        registry.get("bob").add(UserMessage.from("I climb the tower"));
+
+        Assertions.assertEquals(List.of(UserMessage.from("I open the door")),
+                registry.get("alice").messages());
+        registry.close();
+    }
+
+    @Test
+    @DisplayName("Serves many sessions concurrently without mixing them")
+    void servesSessionsConcurrently() {
+        SessionRegistry registry = registry(8);
+        ExecutorService executor = VirtualThreads.newExecutor("test-session");
+        List<CompletableFuture<Void>> players = new ArrayList<>();
+        for (int p = 0; p < 32; p++) {
+            String id = "player-" + p;
+            players.add(CompletableFuture.runAsync(() -> {
+                for (int turn = 0; turn < 20; turn++) {
+                    registry.get(id).add(UserMessage.from(id + " turn " + turn));
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(players.toArray(new CompletableFuture<?>[0])).join();
+        executor.shutdown();
+
+        for (ChatMessage message : registry.get("player-7").messages()) {
+            Assertions.assertTrue(((UserMessage) message).singleText().startsWith("player-7 "));
+        }
+        Assertions.assertTrue(registry.residentSessions() <= 8);
+    }
+}
@@ -6,8 +6,23 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import sun.reflect.ReflectionFactory;
 
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.service.TokenStream;
+
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 class StoryAgentTest {
 
@@ -21,6 +36,7 @@ class StoryAgentTest {
 
         var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
         injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
 
         var result = storyAgent.narrate(input);
 
@@ -28,6 +44,84 @@ class StoryAgentTest {
         Mockito.verify(mockAssistant, Mockito.times(1)).narrate(input);
     }
 
+    @Test
+    void narratesInTheGivenSession() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var input = "Describe the tavern scene";
+
+        Mockito.when(mockAssistant.narrate("alice", input)).thenReturn("The tavern is quiet.");
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
+
+        Assertions.assertEquals("The tavern is quiet.", storyAgent.narrate("alice", input));
+        Mockito.verify(mockAssistant, Mockito.never()).narrate(input);
+    }
+
+    @Test
+    void answersBusyMessageWhenTheModelIsOverloaded() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var input = "Describe the tavern scene";
+
+        Mockito.when(mockAssistant.narrate(input)).thenThrow(
+                new InferenceScheduler.RejectedException("Inference request shed: queue full"));
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
+
+        Assertions.assertEquals("The narrator is telling many tales at once... "
+                + "Catch your breath and try again in a moment.", storyAgent.narrate(input));
+    }
+
+    @Test
+    void leavesShedTurnOutOfMemory() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var input = "Describe the tavern scene";
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        var sessions = sessionsOf(memory);
+
+        // The input is recorded by AiServices before the model sheds the request
+        Mockito.when(mockAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            throw new InferenceScheduler.RejectedException("Inference request shed: queue full");
+        });
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessions);
+
+        Assertions.assertTrue(storyAgent.narrate("alice", input).startsWith("The narrator is telling"));
+        Assertions.assertEquals(List.of(), memory.messages());
+    }
+
+    @Test
+    void leavesShedStreamedTurnOutOfMemory() {
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Describe the tavern scene";
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        var sessions = sessionsOf(memory);
+
+        Mockito.when(mockStreamingAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            return tokenStream(List.of(),
+                    new InferenceScheduler.RejectedException("Inference request shed: queue full"));
+        });
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessions);
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming("alice", input, tokens::add).join();
+
+        // The player is told to try again, but the conversation has no such narration
+        Assertions.assertTrue(result.startsWith("The narrator is telling"));
+        Assertions.assertEquals(List.of(result), tokens);
+        Assertions.assertEquals(List.of(), memory.messages());
+    }
+
     @Test
     void blocksStructuredResponseContainingJson() {
         var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
@@ -38,6 +132,7 @@ class StoryAgentTest {
 
         var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
         injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
 
         var result = storyAgent.narrate(input);
 
@@ -55,6 +150,7 @@ class StoryAgentTest {
 
         var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
         injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
 
         var result = storyAgent.narrate(input);
 
@@ -70,6 +166,7 @@ class StoryAgentTest {
 
         var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
         injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
 
         Assertions.assertThrows(NullPointerException.class, () -> storyAgent.narrate(null));
         Mockito.verify(mockAssistant, Mockito.times(1)).narrate(null);
@@ -85,6 +182,7 @@ class StoryAgentTest {
 
         var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
         injectAssistant(storyAgent, mockAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
 
         var result = storyAgent.narrate(input);
 
@@ -92,6 +190,302 @@ class StoryAgentTest {
         Mockito.verify(mockAssistant, Mockito.times(1)).narrate(input);
     }
 
+    @Test
+    void streamsTokensAndReturnsWholeNarration() {
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Describe the tavern scene";
+        var stream = tokenStream(List.of("The Black Dragon tavern", " is smoky and loud,",
+                " an old man", " waves at you."), null);
+
+        Mockito.when(mockStreamingAssistant.narrate(input)).thenReturn(stream);
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming(input, tokens::add).join();
+
+        // The first words are held back until they are clearly prose
+        Assertions.assertEquals(List.of("The Black Dragon tavern is smoky and loud,", " an old man",
+                " waves at you."), tokens);
+        Assertions.assertEquals("The Black Dragon tavern is smoky and loud, an old man waves at you.",
+                result);
+    }
+
+    @Test
+    void blocksStreamedStructuredResponse() {
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Describe the dragon";
+        var leak = List.of("{\"name\": \"describeScene\"", ", \"parameters\": {}}");
+
+        Mockito.when(mockStreamingAssistant.narrate(Mockito.anyString()))
+                .thenReturn(tokenStream(leak, null), tokenStream(leak, null));
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming(input, tokens::add).join();
+
+        Assertions.assertEquals("The narrator hesitates for a moment... Rephrase your request so I can better guide you in the adventure.", result);
+        Assertions.assertEquals(List.of(), tokens);
+        Mockito.verify(mockStreamingAssistant, Mockito.times(2)).narrate(Mockito.anyString());
+    }
+
+    @Test
+    void abortsLeakingStreamAndRetriesWithNudge() {
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Describe the dragon";
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        var sessions = sessionsOf(memory);
+
+        // Each attempt records its input in the session, like AiServices
+        Mockito.when(mockStreamingAssistant.narrate(Mockito.eq("alice"), Mockito.anyString()))
+                .thenAnswer(invocation -> {
+                    String prompt = invocation.getArgument(1);
+                    sessions.get("alice").add(UserMessage.from(prompt));
+                    return prompt.equals(input)
+                            ? tokenStream(List.of("{", "\"na", "me\":", " \"describeScene\"", "never read"), null)
+                            : tokenStream(List.of("A red dragon", " circles above."), null);
+                });
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessions);
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming("alice", input, tokens::add).join();
+
+        Assertions.assertEquals("A red dragon circles above.", result);
+        Assertions.assertEquals(List.of("A red dragon circles above."), tokens);
+        Mockito.verify(mockStreamingAssistant).narrate(Mockito.eq("alice"),
+                Mockito.startsWith(input + "\n\n(Reminder"));
+        // The aborted exchange is gone, and the nudge is not kept
+        Assertions.assertEquals(List.of(UserMessage.from(input)), memory.messages());
+    }
+
+    @Test
+    void endsShownAnswerWhereLateLeakBegins() {
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Talk to the dragon";
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        var sessions = sessionsOf(memory);
+        var prose = "The dragon lands before the ruined watchtower and speaks:";
+
+        Mockito.when(mockStreamingAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            return tokenStream(List.of("The dragon lands before the ruined watchtower",
+                    " and speaks:", " {\"name\": \"describeScene\"}"), null);
+        });
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessions);
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming("alice", input, tokens::add).join();
+
+        // Not narrated twice: the player keeps what was shown
+        Assertions.assertEquals(prose, result);
+        Assertions.assertEquals(prose, String.join("", tokens));
+        Mockito.verify(mockStreamingAssistant, Mockito.times(1))
+                .narrate(Mockito.anyString(), Mockito.anyString());
+        Assertions.assertEquals(List.of(UserMessage.from(input), AiMessage.from(prose)),
+                memory.messages());
+    }
+
+    @Test
+    void fallsBackToBlockingNarrationWhenStreamingFailsAtOnce() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Explore the cave";
+        var stream = tokenStream(List.of(), new IllegalArgumentException("Tools are not supported"));
+
+        Mockito.when(mockStreamingAssistant.narrate(input)).thenReturn(stream);
+        Mockito.when(mockAssistant.narrate(input)).thenReturn("The cave is dark.");
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming(input, tokens::add).join();
+
+        Assertions.assertEquals(List.of("The cave is dark."), tokens);
+        Assertions.assertEquals("The cave is dark.", result);
+    }
+
+    @Test
+    void fallsBackToBlockingNarrationWhenStreamIsRefused() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Explore the cave";
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        var sessions = sessionsOf(memory);
+        var stream = tokenStream(List.of(), null);
+
+        // The model refuses tools in streaming mode as soon as the stream starts
+        Mockito.when(mockStreamingAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            return stream;
+        });
+        Mockito.doThrow(new IllegalArgumentException("Tools are not supported")).when(stream).start();
+        Mockito.when(mockAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            sessions.get("alice").add(AiMessage.from("The cave is dark."));
+            return "The cave is dark.";
+        });
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessions);
+
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming("alice", input, tokens::add).join();
+
+        Assertions.assertEquals("The cave is dark.", result);
+        Assertions.assertEquals(List.of("The cave is dark."), tokens);
+    }
+
+    @Test
+    void recordsInputOnceWhenFallingBack() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Explore the cave";
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+        var sessions = sessionsOf(memory);
+
+        // Both assistants record the exchange in the session, like AiServices
+        Mockito.when(mockStreamingAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            return tokenStream(List.of(), new IllegalArgumentException("Tools are not supported"));
+        });
+        Mockito.when(mockAssistant.narrate("alice", input)).thenAnswer(invocation -> {
+            sessions.get("alice").add(UserMessage.from(input));
+            sessions.get("alice").add(AiMessage.from("The cave is dark."));
+            return "The cave is dark.";
+        });
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessions);
+
+        var result = storyAgent.narrateStreaming("alice", input, token -> { }).join();
+
+        Assertions.assertEquals("The cave is dark.", result);
+        Assertions.assertEquals(List.of(UserMessage.from(input), AiMessage.from("The cave is dark.")),
+                memory.messages());
+    }
+
+    @Test
+    void failsWhenStreamBreaksAfterFirstToken() {
+        var mockAssistant = Mockito.mock(StoryAgent.StoryAssistant.class);
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Explore the cave";
+        var stream = tokenStream(List.of("The cave beneath the ruined watchtower"),
+                new RuntimeException("Connection reset"));
+
+        Mockito.when(mockStreamingAssistant.narrate(input)).thenReturn(stream);
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectAssistant(storyAgent, mockAssistant);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(MessageWindowChatMemory.withMaxMessages(10)));
+
+        var result = storyAgent.narrateStreaming(input, token -> { });
+
+        Assertions.assertThrows(CompletionException.class, result::join);
+        Mockito.verify(mockAssistant, Mockito.never()).narrate(Mockito.anyString());
+    }
+
+    @Test
+    void stopsCancelledTurnAndKeepsStreamedText() throws Exception {
+        var mockStreamingAssistant = Mockito.mock(StoryAgent.StreamingStoryAssistant.class);
+        var input = "Explore the cave";
+        var stream = tokenStream(List.of("The cave beneath the ruined watchtower", " is dark",
+                " and cold."), null);
+        var memory = MessageWindowChatMemory.withMaxMessages(10);
+
+        Mockito.when(mockStreamingAssistant.narrate("alice", input)).thenReturn(stream);
+
+        var storyAgent = instantiateWithoutConstructor(StoryAgent.class);
+        injectStreamingAssistant(storyAgent, mockStreamingAssistant);
+        injectField(storyAgent, "sessions", sessionsOf(memory));
+
+        // The player gives up on the turn as soon as it starts
+        CompletableFuture<CompletableFuture<String>> turn = new CompletableFuture<>();
+        List<String> tokens = new ArrayList<>();
+        var result = storyAgent.narrateStreaming("alice", input, token -> {
+            tokens.add(token);
+            turn.join().cancel(true);
+        });
+        turn.complete(result);
+
+        Assertions.assertThrows(CancellationException.class, result::join);
+        for (int i = 0; i < 100 && memory.messages().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(List.of("The cave beneath the ruined watchtower"), tokens);
+        Assertions.assertEquals("The cave beneath the ruined watchtower",
+                ((AiMessage) memory.messages().get(0)).text());
+    }
+
+    /**
+     * A token stream emitting the given tokens when started, then completing or failing.
+     */
+    @SuppressWarnings("unchecked")
+    private static TokenStream tokenStream(List<String> tokens, Throwable error) {
+        TokenStream stream = Mockito.mock(TokenStream.class);
+        AtomicReference<Consumer<String>> onNext = new AtomicReference<>();
+        AtomicReference<Consumer<Response<AiMessage>>> onComplete = new AtomicReference<>();
+        AtomicReference<Consumer<Throwable>> onError = new AtomicReference<>();
+
+        Mockito.when(stream.onNext(Mockito.any())).thenAnswer(invocation -> {
+            onNext.set(invocation.getArgument(0));
+            return stream;
+        });
+        Mockito.when(stream.onComplete(Mockito.any())).thenAnswer(invocation -> {
+            onComplete.set(invocation.getArgument(0));
+            return stream;
+        });
+        Mockito.when(stream.onError(Mockito.any())).thenAnswer(invocation -> {
+            onError.set(invocation.getArgument(0));
+            return stream;
+        });
+        Mockito.doAnswer(invocation -> {
+            for (String token : tokens) {
+                try {
+                    onNext.get().accept(token);
+                } catch (RuntimeException e) { // Like the client, report handler failures
+                    onError.get().accept(e);
+                    return null;
+                }
+            }
+            if (error != null) {
+                onError.get().accept(error);
+            } else {
+                onComplete.get().accept(Response.from(AiMessage.from(String.join("", tokens))));
+            }
+            return null;
+        }).when(stream).start();
+        return stream;
+    }
+
+    private static void injectStreamingAssistant(StoryAgent storyAgent, StoryAgent.StreamingStoryAssistant assistant) {
+        try {
+            Field assistantField = StoryAgent.class.getDeclaredField("streamingAssistant");
+            assistantField.setAccessible(true);
+            assistantField.set(storyAgent, assistant);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject streaming assistant", e);
+        }
+    }
+
     private static StoryAgent instantiateWithoutConstructor(Class<StoryAgent> clazz) {
         try {
             Constructor<?> objCtor = Object.class.getDeclaredConstructor();
@@ -115,4 +509,17 @@ class StoryAgentTest {
         }
     }
 
-}
\ No newline at end of file
+    private static SessionRegistry sessionsOf(ChatMemory memory) {
+        return new SessionRegistry(sessionId -> memory, 4, Duration.ofMinutes(1));
+    }
+
+    private static void injectField(StoryAgent storyAgent, String name, Object value) {
+        try {
+            Field field = StoryAgent.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(storyAgent, value);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inject " + name, e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package agent;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+class SummarizingChatMemoryTest {
+
+    private final List<String> prompts = new ArrayList<>();
+    private final List<Runnable> pending = new ArrayList<>();
+    private int shedRequests;
+
+    /**
+     * A model summarizing by counting the summaries asked so far, after shedding the
+     * number of requests given by shedRequests.
+     */
+    private final ChatLanguageModel model = new ChatLanguageModel() {
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            if (shedRequests > 0) {
+                shedRequests--;
+                throw new InferenceScheduler.RejectedException("Inference request shed");
+            }
+            prompts.add(((UserMessage) messages.get(1)).singleText());
+            return Response.from(AiMessage.from("summary " + prompts.size()));
+        }
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages,
+                                            List<ToolSpecification> toolSpecifications) {
+            return generate(messages);
+        }
+    };
+
+    /**
+     * Queues the summaries until the test runs them.
+     */
+    private final Executor deferred = pending::add;
+
+    private SummarizingChatMemory memory(int maxTokens, Executor executor) {
+        return new SummarizingChatMemory("test", maxTokens,
+                new ConversationSummarizer(model, 50), executor);
+    }
+
+    private static void addTurn(SummarizingChatMemory memory, String input, String narration) {
+        memory.add(UserMessage.from(input));
+        memory.add(AiMessage.from(narration));
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+    }
+
+    @Test
+    @DisplayName("Keeps every turn while under the budget")
+    void keepsTurnsUnderBudget() {
+        SummarizingChatMemory memory = memory(1000, Runnable::run);
+        memory.add(SystemMessage.from("Rules"));
+        addTurn(memory, "I enter the tavern", "The tavern is smoky.");
+        addTurn(memory, "I order an ale", "The innkeeper nods.");
+
+        Assertions.assertEquals(5, memory.messages().size());
+        Assertions.assertNull(memory.summary());
+        Assertions.assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Folds the oldest turns into a summary once over the budget")
+    void foldsOldTurnsIntoSummary() {
+        SummarizingChatMemory memory = memory(60, Runnable::run);
+        memory.add(SystemMessage.from("Rules"));
+        for (int i = 0; i < 10; i++) {
+            addTurn(memory, "Player move number " + i, "Narration of the move number " + i);
+        }
+
+        List<ChatMessage> messages = memory.messages();
+        Assertions.assertTrue(memory.estimatedTokens() <= 60);
+        Assertions.assertEquals("Rules", ((SystemMessage) messages.get(0)).text());
+        Assertions.assertTrue(((SystemMessage) messages.get(1)).text().endsWith(memory.summary()));
+        UserMessage last = (UserMessage) messages.get(messages.size() - 2);
+        Assertions.assertEquals("Player move number 9", last.singleText());
+        Assertions.assertTrue(prompts.get(0).contains("Player: Player move number 0"));
+        Assertions.assertTrue(prompts.get(0).contains("Narrator: Narration of the move number 0"));
+        Assertions.assertTrue(prompts.get(1).contains("summary 1"));
+    }
+
+    @Test
+    @DisplayName("Evicts a turn with its tool calls and results, never half of it")
+    void evictsWholeTurns() {
+        SummarizingChatMemory memory = memory(60, Runnable::run);
+        ToolExecutionRequest request = ToolExecutionRequest.builder()
+                .id("1").name("searchMonster").arguments("{\"monsterName\": \"goblin\"}").build();
+        memory.add(UserMessage.from("A goblin appears"));
+        memory.add(AiMessage.from(List.of(request)));
+        memory.add(ToolExecutionResultMessage.from(request, "D&D MONSTER: goblin"));
+        memory.add(AiMessage.from("The goblin snarls."));
+        addTurn(memory, "I draw my sword and strike the goblin down",
+                "Your blade flashes and the goblin falls to the ground.");
+
+        List<ChatMessage> messages = memory.messages();
+        Assertions.assertFalse(messages.stream()
+                .anyMatch(m -> m instanceof ToolExecutionResultMessage));
+        Assertions.assertFalse(messages.stream()
+                .anyMatch(m -> m instanceof AiMessage ai && ai.hasToolExecutionRequests()));
+        Assertions.assertFalse(prompts.get(0).contains("D&D MONSTER"));
+    }
+
+    @Test
+    @DisplayName("Always keeps the latest turn, even above the budget")
+    void keepsLatestTurn() {
+        SummarizingChatMemory memory = memory(10, Runnable::run);
+        addTurn(memory, "x".repeat(200), "y".repeat(200));
+
+        Assertions.assertEquals(2, memory.messages().size());
+        Assertions.assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Evicts without waiting for the summary, generated one at a time")
+    void summarizesInBackground() {
+        SummarizingChatMemory memory = memory(40, deferred);
+        for (int i = 0; i < 6; i++) {
+            addTurn(memory, "Player move number " + i, "Narration of the move number " + i);
+        }
+
+        Assertions.assertTrue(memory.estimatedTokens() <= 40);
+        Assertions.assertNull(memory.summary());
+        Assertions.assertEquals(1, pending.size());
+
+        runPending();
+
+        Assertions.assertEquals(2, prompts.size());
+        Assertions.assertTrue(prompts.get(1).contains("summary 1"));
+        Assertions.assertTrue(prompts.get(0).contains("move number 0"));
+        Assertions.assertFalse(prompts.get(0).contains("move number 4"));
+        Assertions.assertTrue(prompts.get(1).contains("move number 4"));
+        Assertions.assertEquals("summary 2", memory.summary());
+    }
+
+    @Test
+    @DisplayName("Clear drops the turns and a summary still being generated")
+    void clearDiscardsLateSummary() {
+        SummarizingChatMemory memory = memory(40, deferred);
+        for (int i = 0; i < 6; i++) {
+            addTurn(memory, "Player move number " + i, "Narration of the move number " + i);
+        }
+        memory.clear();
+        runPending();
+
+        Assertions.assertTrue(memory.messages().isEmpty());
+        Assertions.assertNull(memory.summary());
+    }
+
+    @Test
+    @DisplayName("Keeps the turns of a shed summary and folds them on the next change")
+    void retriesShedSummary() {
+        SummarizingChatMemory memory = memory(40, Runnable::run);
+        shedRequests = Integer.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            addTurn(memory, "Player move number " + i, "Narration of the move number " + i);
+        }
+        Assertions.assertNull(memory.summary());
+        Assertions.assertTrue(prompts.isEmpty());
+
+        shedRequests = 0;
+        memory.add(UserMessage.from("Player move number 3"));
+
+        Assertions.assertTrue(prompts.get(0).contains("move number 0"));
+        Assertions.assertTrue(prompts.get(0).contains("move number 1"));
+        Assertions.assertNotNull(memory.summary());
+    }
+}
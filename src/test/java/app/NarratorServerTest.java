@@ -0,0 +1,256 @@
+package app;
+
+import agent.InferenceScheduler;
+import agent.LoreCache;
+import agent.MasterAgent;
+import agent.ModelTiers;
+import agent.OllamaBackendPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import sun.reflect.ReflectionFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class NarratorServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private NarratorServer server;
+
+    /**
+     * A master agent narrating "Hello" then the action, per session, without a model.
+     */
+    static class FakeMaster extends MasterAgent {
+        List<String> sessions; // Set by startServer: field initializers are skipped
+        CountDownLatch together;
+        CountDownLatch release;
+
+        @Override
+        public CompletableFuture<String> processInputStreaming(String sessionId, String input,
+                                                               Consumer<String> onToken) {
+            sessions.add(sessionId);
+            if (input.equals("fail")) {
+                return CompletableFuture.failedFuture(new IllegalStateException("model down"));
+            }
+            if (release != null) {
+                try {
+                    release.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (together != null) {
+                together.countDown();
+                try {
+                    together.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            onToken.accept("Hello ");
+            onToken.accept(sessionId + ",\n" + input);
+            return CompletableFuture.completedFuture("Hello " + sessionId + ",\n" + input);
+        }
+
+        @Override
+        public Map<ModelTiers.Tier, InferenceScheduler.Stats> inferenceStats() {
+            return Map.of(ModelTiers.Tier.LARGE, new InferenceScheduler.Stats(2, 1, 3, 0, 40, 5,
+                    1_500_000_000L, -1, 4_000_000_000L));
+        }
+
+        @Override
+        public long tierFallbackCount() {
+            return 7;
+        }
+
+        @Override
+        public LoreCache.Stats loreCacheStats() {
+            return new LoreCache.Stats(12, 4, 1, 3, 250_000_000L);
+        }
+
+        @Override
+        public List<OllamaBackendPool.BackendStatus> backendStatus() {
+            return List.of(new OllamaBackendPool.BackendStatus("http://gpu-1:11434", true, 1),
+                    new OllamaBackendPool.BackendStatus("http://gpu-2:11434", false, 0));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private FakeMaster startServer() throws Exception {
+        Constructor<?> objCtor = Object.class.getDeclaredConstructor();
+        @SuppressWarnings("unchecked")
+        Constructor<FakeMaster> ctor = (Constructor<FakeMaster>) ReflectionFactory
+                .getReflectionFactory().newConstructorForSerialization(FakeMaster.class, objCtor);
+        ctor.setAccessible(true);
+        FakeMaster master = ctor.newInstance();
+        master.sessions = new CopyOnWriteArrayList<>();
+        server = new NarratorServer(master, 0);
+        server.start();
+        return master;
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException,
+            InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create("http://127.0.0.1:" + server.port() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    @DisplayName("Streams the narration of a session as server-sent events")
+    void streamsNarration() throws Exception {
+        startServer();
+
+        HttpResponse<String> response = post("/sessions/alice/actions", "I open the door");
+
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertTrue(response.headers().firstValue("Content-Type").orElse("")
+                .startsWith("text/event-stream"));
+        Assertions.assertEquals("""
+                event: token
+                data: Hello\s
+
+                event: token
+                data: alice,
+                data: I open the door
+
+                event: done
+                data: Hello alice,
+                data: I open the door
+
+                """, response.body());
+    }
+
+    @Test
+    @DisplayName("Sends an error event when the turn fails")
+    void sendsErrorEvent() throws Exception {
+        startServer();
+
+        HttpResponse<String> response = post("/sessions/alice/actions", "fail");
+
+        Assertions.assertEquals("event: error\ndata: The narrator failed: model down\n\n",
+                response.body());
+    }
+
+    @Test
+    @DisplayName("Serves several sessions at the same time")
+    void servesSessionsConcurrently() throws Exception {
+        FakeMaster master = startServer();
+        master.together = new CountDownLatch(3);
+
+        List<CompletableFuture<HttpResponse<String>>> responses = List.of("a", "b", "c").stream()
+                .map(id -> client.sendAsync(HttpRequest.newBuilder(URI.create(
+                                "http://127.0.0.1:" + server.port() + "/sessions/" + id
+                                        + "/actions"))
+                        .POST(HttpRequest.BodyPublishers.ofString("Go")).build(),
+                        HttpResponse.BodyHandlers.ofString()))
+                .toList();
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assertions.assertTrue(response.get(5, TimeUnit.SECONDS).body().contains("event: done"));
+        }
+        Assertions.assertEquals(0, master.together.getCount());
+    }
+
+    @Test
+    @DisplayName("Answers 409 to an action sent while its session has a turn in progress")
+    void rejectsConcurrentActionInSession() throws Exception {
+        FakeMaster master = startServer();
+        master.release = new CountDownLatch(1);
+
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(HttpRequest.newBuilder(
+                        URI.create("http://127.0.0.1:" + server.port() + "/sessions/alice/actions"))
+                .POST(HttpRequest.BodyPublishers.ofString("I open the door")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        for (int i = 0; i < 200 && master.sessions.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        HttpResponse<String> second = post("/sessions/alice/actions", "I climb the tower");
+        master.release.countDown();
+
+        Assertions.assertEquals(409, second.statusCode());
+        Assertions.assertTrue(first.get(5, TimeUnit.SECONDS).body().contains("event: done"));
+        Assertions.assertEquals(List.of("alice"), master.sessions);
+        // Once the turn is over, the session takes actions again
+        Assertions.assertEquals(200, post("/sessions/alice/actions", "I climb the tower")
+                .statusCode());
+    }
+
+    @Test
+    @DisplayName("Rejects invalid requests")
+    void rejectsInvalidRequests() throws Exception {
+        FakeMaster master = startServer();
+
+        Assertions.assertEquals(400, post("/sessions/al%20ice/actions", "Go").statusCode());
+        Assertions.assertEquals(400, post("/sessions/alice/actions", "  ").statusCode());
+        Assertions.assertEquals(413, post("/sessions/alice/actions", "x".repeat(5000))
+                .statusCode());
+        Assertions.assertEquals(404, post("/sessions/alice", "Go").statusCode());
+        HttpResponse<String> get = client.send(HttpRequest.newBuilder(URI.create(
+                        "http://127.0.0.1:" + server.port() + "/sessions/alice/actions")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(405, get.statusCode());
+        Assertions.assertTrue(master.sessions.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Answers health checks")
+    void answersHealthChecks() throws Exception {
+        startServer();
+
+        HttpResponse<String> health = client.send(HttpRequest.newBuilder(URI.create(
+                        "http://127.0.0.1:" + server.port() + "/health")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, health.statusCode());
+        Assertions.assertEquals("ok", health.body());
+    }
+
+    @Test
+    @DisplayName("Exposes the inference scheduler metrics")
+    void exposesMetrics() throws Exception {
+        startServer();
+
+        HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create(
+                        "http://127.0.0.1:" + server.port() + "/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assertions.assertEquals(200, metrics.statusCode());
+        Assertions.assertTrue(metrics.body().contains(
+                "inference_queued{tier=\"large\",priority=\"interactive\"} 3\n"));
+        Assertions.assertTrue(metrics.body().contains("inference_shed_total{tier=\"large\"} 5\n"));
+        Assertions.assertTrue(metrics.body().contains(
+                "inference_wait_p95_seconds{tier=\"large\",priority=\"interactive\"} 1.500\n"));
+        Assertions.assertTrue(metrics.body().contains(
+                "inference_wait_p95_seconds{tier=\"large\",priority=\"background\"} NaN\n"));
+        Assertions.assertTrue(metrics.body().contains("inference_tier_fallback_total 7\n"));
+        Assertions.assertTrue(metrics.body().contains(
+                "inference_backend_up{backend=\"http://gpu-2:11434\"} 0\n"));
+        Assertions.assertTrue(metrics.body().contains(
+                "inference_backend_outstanding{backend=\"http://gpu-1:11434\"} 1\n"));
+        Assertions.assertTrue(metrics.body().contains("lore_cache_hits_total 12\n"));
+        Assertions.assertTrue(metrics.body().contains("lore_cache_misses_total 4\n"));
+        Assertions.assertTrue(metrics.body().contains("lore_cache_load_average_seconds 0.250\n"));
+    }
+}